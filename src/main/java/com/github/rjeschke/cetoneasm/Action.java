@@ -48,5 +48,14 @@ public abstract class Action
         return new ArrayList<Action>();
     }
 
+    /**
+     * Lowers this action into bytecode, the default just calls {@link #run}
+     * from the interpreter.
+     */
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitAction(this);
+    }
+
     public abstract void run(Assembler assembler) throws AssemblerException;
 }
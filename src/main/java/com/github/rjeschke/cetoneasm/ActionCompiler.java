@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import com.github.rjeschke.cetoneasm.actions.DefineMacroAction;
+
+/**
+ * Lowers the flat action list (after pass 3) into {@link Bytecode}.
+ * <p>
+ * Shared macro bodies (each starting with a {@code MacroBodyAction}) follow
+ * the main code, local names inside of them get compiled into frame accesses.
+ * </p>
+ */
+public class ActionCompiler
+{
+    private final SymbolTable                   symbols;
+    private int                                 parentSlot      = -1;
+    private int                                 macroParentSlot = -1;
+    private int[]                               code            = new int[1024];
+    private int                                 size            = 0;
+    private final ArrayList<Long>               constants       = new ArrayList<Long>();
+    private final HashMap<Long, Integer>        constMap        = new HashMap<Long, Integer>();
+    private final ArrayList<String>             names           = new ArrayList<String>();
+    private final HashMap<String, Integer>      nameMap         = new HashMap<String, Integer>();
+    private final ArrayList<Action>             actions         = new ArrayList<Action>();
+    private final ArrayList<int[]>              fixups          = new ArrayList<int[]>();
+    private final ArrayList<ByteArrayOutputStream> blocks       = new ArrayList<ByteArrayOutputStream>();
+    private final BitSet                        targets         = new BitSet();
+    private int                                 index           = 0;
+    private int                                 lastOp          = -1;
+    private int                                 prevOp          = -1;
+    private int                                 openBlock       = -1;
+    private final ArrayList<int[]>              frames          = new ArrayList<int[]>();
+    private DefineMacroAction                   body            = null;
+    private int                                 exitFixup       = -1;
+
+    ActionCompiler(final Assembler assembler)
+    {
+        this.symbols = assembler.getSymbols();
+    }
+
+    public static Bytecode compile(final Assembler assembler, final List<Action> actions, final int[] jumpTable)
+    {
+        return new ActionCompiler(assembler).lower(actions, jumpTable);
+    }
+
+    private Bytecode lower(final List<Action> list, final int[] jumpTable)
+    {
+        final int[] offsets = new int[list.size() + 1];
+        final FileLocation[] locations = new FileLocation[list.size()];
+        for (final int target : jumpTable)
+        {
+            this.targets.set(target);
+        }
+        for (int i = 0; i < list.size(); i++)
+        {
+            final Action action = list.get(i);
+            this.index = i;
+            offsets[i] = this.size;
+            locations[i] = action.getLocation();
+            action.compile(this);
+        }
+        offsets[list.size()] = this.size;
+        if (this.body != null)
+        {
+            this.emit(Bytecode.RET);
+            this.code[this.exitFixup] = this.size;
+        }
+
+        for (final int[] fixup : this.fixups)
+        {
+            this.code[fixup[0]] = offsets[jumpTable[fixup[1]]];
+        }
+
+        final long[] consts = new long[this.constants.size()];
+        for (int i = 0; i < consts.length; i++)
+        {
+            consts[i] = this.constants.get(i).longValue();
+        }
+
+        final byte[][] data = new byte[this.blocks.size()][];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = this.blocks.get(i).toByteArray();
+        }
+
+        return new Bytecode(Arrays.copyOf(this.code, this.size), consts,
+                this.names.toArray(new String[this.names.size()]),
+                this.actions.toArray(new Action[this.actions.size()]), data,
+                this.frames.toArray(new int[this.frames.size()][]), Arrays.copyOf(offsets, list.size()), locations);
+    }
+
+    private void put(final int value)
+    {
+        if (this.size == this.code.length)
+        {
+            this.code = Arrays.copyOf(this.code, this.code.length * 2);
+        }
+        this.code[this.size++] = value;
+    }
+
+    private void op(final int opcode)
+    {
+        this.prevOp = this.lastOp;
+        this.lastOp = this.size;
+        this.put(opcode);
+    }
+
+    private int constant(final long value)
+    {
+        final Long key = Long.valueOf(value);
+        Integer idx = this.constMap.get(key);
+        if (idx == null)
+        {
+            idx = Integer.valueOf(this.constants.size());
+            this.constants.add(key);
+            this.constMap.put(key, idx);
+        }
+        return idx.intValue();
+    }
+
+    /**
+     * Statically resolves the slot of the given symbol using the parent labels
+     * seen so far, {@code -1} if unresolvable.
+     */
+    private int slot(final String name)
+    {
+        if (name.startsWith("_"))
+        {
+            final int parent = name.startsWith("__") ? this.macroParentSlot : this.parentSlot;
+            return parent < 0 ? -1 : this.symbols.indexOf(this.symbols.getName(parent) + "$$" + name);
+        }
+        return this.symbols.indexOf(name);
+    }
+
+    private int name(final String name)
+    {
+        Integer idx = this.nameMap.get(name);
+        if (idx == null)
+        {
+            idx = Integer.valueOf(this.names.size());
+            this.names.add(name);
+            this.nameMap.put(name, idx);
+        }
+        return idx.intValue();
+    }
+
+    public void emit(final int opcode)
+    {
+        this.op(opcode);
+    }
+
+    public void emit(final int opcode, final int operand)
+    {
+        this.op(opcode);
+        this.put(operand);
+    }
+
+    public void emit(final int opcode, final int operand0, final int operand1)
+    {
+        this.op(opcode);
+        this.put(operand0);
+        this.put(operand1);
+    }
+
+    public void emitLoad(final long value)
+    {
+        this.emit(Bytecode.LOAD, this.constant(value));
+    }
+
+    private int frameIndex(final String name)
+    {
+        return this.body == null ? -1 : this.body.getFrameIndex(name);
+    }
+
+    public void emitGet(final String name)
+    {
+        final int idx = this.frameIndex(name);
+        if (idx >= 0)
+        {
+            this.emit(Bytecode.FGET, idx, this.name(name));
+        }
+        else
+        {
+            this.emit(Bytecode.GET, this.slot(name), this.name(name));
+        }
+    }
+
+    public void emitSet(final String name)
+    {
+        final int idx = this.frameIndex(name);
+        if (idx >= 0)
+        {
+            this.emit(Bytecode.FSET, idx, this.name(name));
+        }
+        else
+        {
+            this.emit(Bytecode.SET, this.slot(name), this.name(name));
+        }
+    }
+
+    public void emitLabel(final String name, final boolean isMacroLabel)
+    {
+        final int idx = this.frameIndex(name);
+        if (idx >= 0)
+        {
+            this.op(Bytecode.FLABEL);
+            this.put(idx);
+            this.put(this.name(name));
+            this.put(isMacroLabel ? 1 : 0);
+            return;
+        }
+        final int slot = this.slot(name);
+        if (slot >= 0 && this.symbols.getParent(slot) < 0)
+        {
+            if (this.symbols.isMacroScope(slot))
+            {
+                this.macroParentSlot = slot;
+            }
+            else
+            {
+                this.parentSlot = slot;
+            }
+        }
+        this.op(Bytecode.LABEL);
+        this.put(slot);
+        this.put(this.name(name));
+        this.put(isMacroLabel ? 1 : 0);
+    }
+
+    public void emitJump(final int opcode, final int jumpId)
+    {
+        this.op(opcode);
+        this.fixups.add(new int[] { this.size, jumpId });
+        this.put(0);
+    }
+
+    public void emitCounterJump(final int opcode, final int counterId, final int jumpId)
+    {
+        this.op(opcode);
+        this.put(counterId);
+        this.fixups.add(new int[] { this.size, jumpId });
+        this.put(0);
+    }
+
+    /**
+     * Emits a {@code CALL} of the given macro's shared body (starting at jump
+     * target {@code entryId}), the frame gets resolved using the parent labels
+     * seen so far.
+     */
+    public void emitMacroCall(final DefineMacroAction macro, final int entryId)
+    {
+        final List<String> frameNames = macro.getFrameNames();
+        final int[] frame = new int[frameNames.size()];
+        for (int i = 0; i < frame.length; i++)
+        {
+            frame[i] = this.slot(frameNames.get(i));
+        }
+        this.op(Bytecode.CALL);
+        this.fixups.add(new int[] { this.size, entryId });
+        this.put(0);
+        this.put(this.frames.size());
+        this.frames.add(frame);
+    }
+
+    /**
+     * Starts the shared body of the given macro, ending the main code or the
+     * previous body.
+     */
+    public void beginMacroBody(final DefineMacroAction macro)
+    {
+        if (this.body != null)
+        {
+            this.emit(Bytecode.RET);
+        }
+        else
+        {
+            // The main code jumps behind the last body
+            this.op(Bytecode.JMP);
+            this.exitFixup = this.size;
+            this.put(0);
+        }
+        this.body = macro;
+    }
+
+    public void emitAction(final Action action)
+    {
+        this.emit(Bytecode.ACTION, this.actions.size());
+        this.actions.add(action);
+    }
+
+    /**
+     * Emits {@code .DB}/{@code .DW} data. A constant operand (i.e. the
+     * preceding {@code LOAD}) gets folded into a {@code DATA_BLOCK}.
+     */
+    public void emitData(final boolean isWord)
+    {
+        if (this.lastOp < 0 || this.code[this.lastOp] != Bytecode.LOAD || this.targets.get(this.index))
+        {
+            this.emit(isWord ? Bytecode.DATA_WORD : Bytecode.DATA_BYTE);
+            return;
+        }
+        final int value = (int)this.constants.get(this.code[this.lastOp + 1]).longValue() & 0xffff;
+        // Drop the LOAD, it is the last instruction so no fixups are affected
+        this.size = this.lastOp;
+        this.lastOp = this.prevOp;
+        if (isWord)
+        {
+            this.appendData(new byte[] { (byte)value, (byte)(value >> 8) }, this.index - 1);
+        }
+        else
+        {
+            this.appendData(new byte[] { (byte)value }, this.index - 1);
+        }
+    }
+
+    /**
+     * Emits a block of constant data, appending to the previous
+     * {@code DATA_BLOCK} when possible.
+     */
+    public void emitDataBlock(final byte[] data)
+    {
+        this.appendData(data, this.index);
+    }
+
+    private void appendData(final byte[] data, final int firstAction)
+    {
+        if (this.lastOp < 0 || this.lastOp != this.openBlock || this.targets.get(firstAction))
+        {
+            this.emit(Bytecode.DATA_BLOCK, this.blocks.size());
+            this.openBlock = this.lastOp;
+            this.blocks.add(new ByteArrayOutputStream());
+        }
+        final ByteArrayOutputStream block = this.blocks.get(this.code[this.openBlock + 1]);
+        block.write(data, 0, data.length);
+    }
+}
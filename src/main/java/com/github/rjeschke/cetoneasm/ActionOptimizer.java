@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import com.github.rjeschke.cetoneasm.actions.BinaryOperatorAction;
+import com.github.rjeschke.cetoneasm.actions.ConditionalJumpAction;
+import com.github.rjeschke.cetoneasm.actions.CounterCompareAction;
+import com.github.rjeschke.cetoneasm.actions.CounterDecrementAction;
+import com.github.rjeschke.cetoneasm.actions.ExpandMacroAction;
+import com.github.rjeschke.cetoneasm.actions.GetVariableAction;
+import com.github.rjeschke.cetoneasm.actions.JumpIdAction;
+import com.github.rjeschke.cetoneasm.actions.JumpToIdAction;
+import com.github.rjeschke.cetoneasm.actions.LoadNumberAction;
+import com.github.rjeschke.cetoneasm.actions.SetLabelAction;
+import com.github.rjeschke.cetoneasm.actions.SetVariableAction;
+import com.github.rjeschke.cetoneasm.actions.UnaryOperatorAction;
+
+/**
+ * Constant propagation and folding on the flat action list after variable
+ * and label gathering (pass 3), the list still contains its
+ * {@link JumpIdAction}s.
+ * <p>
+ * Variables that get assigned exactly once, unconditionally and with a
+ * constant value are substituted into all reads, the resulting constant
+ * expressions get folded and conditions (.IF, .ELIF, .WHILE) that became
+ * constant get resolved, removing the dead code.
+ * </p>
+ * <p>
+ * Local names are resolved like {@link ActionCompiler} does and only
+ * substituted where no jump target lies between the parent label and the
+ * access, so the static resolution is the one used at runtime.
+ * </p>
+ */
+public class ActionOptimizer
+{
+    private final SymbolTable            symbols;
+    private final ArrayList<Action>      actions;
+    private final int[]                  slots;
+    private final BitSet                 stable     = new BitSet();
+    private final HashMap<Integer, Long> constants  = new HashMap<Integer, Long>();
+    private int                          reads      = 0;
+    private int                          folded     = 0;
+    private int                          conditions = 0;
+
+    private ActionOptimizer(final Assembler assembler, final List<Action> actions)
+    {
+        this.symbols = assembler.getSymbols();
+        this.actions = new ArrayList<Action>(actions);
+        this.slots = new int[actions.size()];
+    }
+
+    /**
+     * Optimizes the given action list in place.
+     */
+    public static void optimize(final Assembler assembler, final List<Action> actions)
+    {
+        final ActionOptimizer opt = new ActionOptimizer(assembler, actions);
+        final int before = countActions(actions);
+        opt.resolveSlots();
+        opt.findConstants();
+        final ArrayList<Action> result = opt.removeDeadCode(opt.substitute());
+        actions.clear();
+        actions.addAll(result);
+        assembler.info("  %d constant variable(s) substituted into %d read(s), %d expression(s) folded",
+                opt.constants.size(), opt.reads, opt.folded);
+        assembler.info("  %d constant condition(s) resolved, %d action(s) eliminated", opt.conditions,
+                before - countActions(actions));
+    }
+
+    private static int countActions(final List<Action> actions)
+    {
+        int count = 0;
+        for (final Action action : actions)
+        {
+            if (!(action instanceof JumpIdAction))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The jump ID referenced by the given action or -1.
+     */
+    private static int getJumpId(final Action action)
+    {
+        if (action instanceof JumpToIdAction)
+        {
+            return ((JumpToIdAction)action).getID();
+        }
+        if (action instanceof ConditionalJumpAction)
+        {
+            return ((ConditionalJumpAction)action).getID();
+        }
+        if (action instanceof CounterCompareAction)
+        {
+            return ((CounterCompareAction)action).getJID();
+        }
+        if (action instanceof CounterDecrementAction)
+        {
+            return ((CounterDecrementAction)action).getJID();
+        }
+        return -1;
+    }
+
+    private static String getName(final Action action)
+    {
+        if (action instanceof GetVariableAction)
+        {
+            return ((GetVariableAction)action).getVariableName();
+        }
+        if (action instanceof SetVariableAction)
+        {
+            return ((SetVariableAction)action).getVariableName();
+        }
+        return null;
+    }
+
+    private int slot(final String name, final int parent, final int macroParent)
+    {
+        if (name.startsWith("_"))
+        {
+            final int p = name.startsWith("__") ? macroParent : parent;
+            return p < 0 ? -1 : this.symbols.indexOf(this.symbols.getName(p) + "$$" + name);
+        }
+        return this.symbols.indexOf(name);
+    }
+
+    /**
+     * Statically resolves all variable accesses and marks those whose
+     * resolution can not change at runtime as stable.
+     */
+    private void resolveSlots()
+    {
+        int parent = -1, macroParent = -1;
+        int parentIndex = -1, macroParentIndex = -1;
+        int lastTarget = -1;
+        for (int i = 0; i < this.actions.size(); i++)
+        {
+            final Action action = this.actions.get(i);
+            this.slots[i] = -1;
+            if (action instanceof JumpIdAction)
+            {
+                lastTarget = i;
+            }
+            else if (action instanceof SetLabelAction)
+            {
+                final int slot = this.slot(((SetLabelAction)action).getLabelName(), parent, macroParent);
+                if (slot >= 0 && this.symbols.getParent(slot) < 0)
+                {
+                    if (this.symbols.isMacroScope(slot))
+                    {
+                        macroParent = slot;
+                        macroParentIndex = i;
+                    }
+                    else
+                    {
+                        parent = slot;
+                        parentIndex = i;
+                    }
+                }
+            }
+            else
+            {
+                final String name = getName(action);
+                if (name != null)
+                {
+                    this.slots[i] = this.slot(name, parent, macroParent);
+                    final boolean local = name.startsWith("_");
+                    final int parentAt = name.startsWith("__") ? macroParentIndex : parentIndex;
+                    if (this.slots[i] >= 0 && (!local || parentAt > lastTarget))
+                    {
+                        this.stable.set(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A bit per action that is set if the action might get skipped
+     *         by a forward jump.
+     */
+    private BitSet findSkippable()
+    {
+        final HashMap<Integer, Integer> targets = new HashMap<Integer, Integer>();
+        for (int i = 0; i < this.actions.size(); i++)
+        {
+            final Action action = this.actions.get(i);
+            if (action instanceof JumpIdAction)
+            {
+                targets.put(Integer.valueOf(((JumpIdAction)action).getID()), Integer.valueOf(i));
+            }
+        }
+        final int[] delta = new int[this.actions.size() + 1];
+        for (int i = 0; i < this.actions.size(); i++)
+        {
+            final int id = getJumpId(this.actions.get(i));
+            final Integer target = id < 0 ? null : targets.get(Integer.valueOf(id));
+            if (target != null && target.intValue() > i)
+            {
+                delta[i + 1]++;
+                delta[target.intValue()]--;
+            }
+        }
+        final BitSet skippable = new BitSet();
+        int depth = 0;
+        for (int i = 0; i < this.actions.size(); i++)
+        {
+            depth += delta[i];
+            if (depth > 0)
+            {
+                skippable.set(i);
+            }
+        }
+        return skippable;
+    }
+
+    private void findConstants()
+    {
+        final HashMap<Integer, Integer> writes = new HashMap<Integer, Integer>();
+        final HashSet<Integer> rejected = new HashSet<Integer>();
+        final HashSet<String> unstableNames = new HashSet<String>();
+        final BitSet skippable = this.findSkippable();
+        for (int i = 0; i < this.actions.size(); i++)
+        {
+            // Shared macro bodies are not part of the list, their writes are
+            // treated as unstable
+            if (this.actions.get(i) instanceof ExpandMacroAction)
+            {
+                unstableNames.addAll(((ExpandMacroAction)this.actions.get(i)).getMacro().getLocalWrites());
+                continue;
+            }
+            if (!(this.actions.get(i) instanceof SetVariableAction))
+            {
+                continue;
+            }
+            if (!this.stable.get(i))
+            {
+                unstableNames.add(getName(this.actions.get(i)));
+                continue;
+            }
+            final Integer slot = Integer.valueOf(this.slots[i]);
+            if (writes.containsKey(slot) || skippable.get(i) || this.slots[i] == this.symbols.indexOf("@"))
+            {
+                rejected.add(slot);
+            }
+            writes.put(slot, Integer.valueOf(i));
+        }
+        for (final Integer slot : rejected)
+        {
+            writes.remove(slot);
+        }
+        // An unstable write might hit any local of the same name
+        if (!unstableNames.isEmpty())
+        {
+            for (final Integer slot : new ArrayList<Integer>(writes.keySet()))
+            {
+                final String name = this.symbols.getName(slot.intValue());
+                final int sep = name.indexOf("$$");
+                if (sep >= 0 && unstableNames.contains(name.substring(sep + 2)))
+                {
+                    writes.remove(slot);
+                }
+            }
+        }
+
+        // Iterate, values may depend on constants assigned later
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (final Integer slot : writes.keySet())
+            {
+                if (this.constants.containsKey(slot))
+                {
+                    continue;
+                }
+                final int end = writes.get(slot).intValue();
+                final Long value = this.evaluate(this.findExpressionStart(end), end);
+                if (value != null)
+                {
+                    this.constants.put(slot, value);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The index of the first action of the expression ending before
+     *         {@code end} or -1 if it is not a plain expression.
+     */
+    private int findExpressionStart(final int end)
+    {
+        int need = 1;
+        for (int i = end - 1; i >= 0; i--)
+        {
+            final Action action = this.actions.get(i);
+            if (action instanceof LoadNumberAction || action instanceof GetVariableAction)
+            {
+                need--;
+            }
+            else if (action instanceof BinaryOperatorAction)
+            {
+                need++;
+            }
+            else if (!(action instanceof UnaryOperatorAction))
+            {
+                return -1;
+            }
+            if (need == 0)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Long evaluate(final int start, final int end)
+    {
+        if (start < 0)
+        {
+            return null;
+        }
+        final long[] stack = new long[end - start];
+        int sp = 0;
+        try
+        {
+            for (int i = start; i < end; i++)
+            {
+                final Action action = this.actions.get(i);
+                if (action instanceof LoadNumberAction)
+                {
+                    stack[sp++] = ((LoadNumberAction)action).getValue();
+                }
+                else if (action instanceof GetVariableAction)
+                {
+                    final Long value = this.stable.get(i) ? this.constants.get(Integer.valueOf(this.slots[i])) : null;
+                    if (value == null)
+                    {
+                        return null;
+                    }
+                    stack[sp++] = value.longValue();
+                }
+                else if (action instanceof UnaryOperatorAction)
+                {
+                    stack[sp - 1] = ((UnaryOperatorAction)action).getOperator().apply(stack[sp - 1]);
+                }
+                else
+                {
+                    sp--;
+                    stack[sp - 1] = ((BinaryOperatorAction)action).getOperator().apply(stack[sp - 1], stack[sp]);
+                }
+            }
+        }
+        catch (final ArithmeticException e)
+        {
+            // Keep the division by zero for the assembly passes
+            return null;
+        }
+        return Long.valueOf(stack[0]);
+    }
+
+    private static boolean isLoad(final List<Action> list, final int index)
+    {
+        return index >= 0 && list.get(index) instanceof LoadNumberAction;
+    }
+
+    private static long getLoad(final List<Action> list, final int index)
+    {
+        return ((LoadNumberAction)list.get(index)).getValue();
+    }
+
+    /**
+     * Substitutes constant reads, folds constant operators and resolves
+     * constant conditions.
+     */
+    private ArrayList<Action> substitute()
+    {
+        final ArrayList<Action> out = new ArrayList<Action>(this.actions.size());
+        for (int i = 0; i < this.actions.size(); i++)
+        {
+            final Action action = this.actions.get(i);
+            final int last = out.size() - 1;
+            if (action instanceof GetVariableAction && this.stable.get(i)
+                    && this.constants.containsKey(Integer.valueOf(this.slots[i])))
+            {
+                out.add(new LoadNumberAction(action.getLocation(), this.constants.get(Integer.valueOf(this.slots[i]))
+                        .longValue()));
+                this.reads++;
+            }
+            else if (action instanceof UnaryOperatorAction && isLoad(out, last))
+            {
+                final Action a = out.get(last);
+                out.set(last, new LoadNumberAction(a.getLocation(), ((UnaryOperatorAction)action).getOperator()
+                        .apply(getLoad(out, last))));
+                this.folded++;
+            }
+            else if (action instanceof BinaryOperatorAction && isLoad(out, last) && isLoad(out, last - 1))
+            {
+                final Action a = out.get(last - 1);
+                try
+                {
+                    final long value = ((BinaryOperatorAction)action).getOperator().apply(getLoad(out, last - 1),
+                            getLoad(out, last));
+                    out.remove(last);
+                    out.set(last - 1, new LoadNumberAction(a.getLocation(), value));
+                    this.folded++;
+                }
+                catch (final ArithmeticException e)
+                {
+                    out.add(action);
+                }
+            }
+            else if (action instanceof ConditionalJumpAction && isLoad(out, last))
+            {
+                final long condition = getLoad(out, last);
+                out.remove(last);
+                if (condition == 0)
+                {
+                    out.add(new JumpToIdAction(action.getLocation(), ((ConditionalJumpAction)action).getID()));
+                }
+                this.conditions++;
+            }
+            else
+            {
+                out.add(action);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Removes everything after unconditional jumps up to the next referenced
+     * jump target and jumps to the directly following target, until nothing
+     * changes anymore.
+     */
+    private ArrayList<Action> removeDeadCode(final ArrayList<Action> list)
+    {
+        ArrayList<Action> current = list;
+        for (;;)
+        {
+            final HashSet<Integer> referenced = new HashSet<Integer>();
+            for (final Action action : current)
+            {
+                final int id = getJumpId(action);
+                if (id >= 0)
+                {
+                    referenced.add(Integer.valueOf(id));
+                }
+            }
+            final ArrayList<Action> out = new ArrayList<Action>(current.size());
+            boolean dead = false;
+            for (int i = 0; i < current.size(); i++)
+            {
+                final Action action = current.get(i);
+                if (action instanceof JumpIdAction)
+                {
+                    if (referenced.contains(Integer.valueOf(((JumpIdAction)action).getID())))
+                    {
+                        dead = false;
+                        out.add(action);
+                    }
+                    continue;
+                }
+                if (dead)
+                {
+                    continue;
+                }
+                if (action instanceof JumpToIdAction && this.isNextTarget(current, i + 1,
+                        ((JumpToIdAction)action).getID()))
+                {
+                    continue;
+                }
+                out.add(action);
+                dead = action instanceof JumpToIdAction;
+            }
+            if (out.size() == current.size())
+            {
+                return out;
+            }
+            current = out;
+        }
+    }
+
+    /**
+     * @return {@code true} if the jump target {@code id} follows at
+     *         {@code index}, only preceded by other jump targets.
+     */
+    private boolean isNextTarget(final List<Action> list, final int index, final int id)
+    {
+        for (int i = index; i < list.size() && list.get(i) instanceof JumpIdAction; i++)
+        {
+            if (((JumpIdAction)list.get(i)).getID() == id)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -16,22 +16,33 @@
 
 package com.github.rjeschke.cetoneasm;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
 
 import com.github.rjeschke.cetoneasm.actions.CallMacroAction;
 import com.github.rjeschke.cetoneasm.actions.CounterSetAction;
 import com.github.rjeschke.cetoneasm.actions.DefineMacroAction;
+import com.github.rjeschke.cetoneasm.actions.ExpandMacroAction;
 import com.github.rjeschke.cetoneasm.actions.IncludeAction;
 import com.github.rjeschke.cetoneasm.actions.JumpIdAction;
 import com.github.rjeschke.cetoneasm.actions.JumpToIdAction;
+import com.github.rjeschke.cetoneasm.actions.MacroBodyAction;
 import com.github.rjeschke.cetoneasm.actions.MetaGotoAction;
 import com.github.rjeschke.cetoneasm.actions.MetaLabelAction;
 import com.github.rjeschke.cetoneasm.actions.SetLabelAction;
@@ -40,63 +51,187 @@ import com.github.rjeschke.neetutils.collections.Colls;
 
 public class Assembler
 {
-    private final static int                         FINAL_PASS         = 5;
     private final ArrayList<String>                  includePaths       = new ArrayList<String>();
-    private final HashMap<String, Variable>          variables          = new HashMap<String, Variable>();
-    private final HashMap<String, Variable>          labels             = new HashMap<String, Variable>();
+    private final LinkedHashSet<String>              resolvedFiles      = new LinkedHashSet<String>();
+    private final static int                         PC_SLOT            = 0;
+    private final SymbolTable                        symbols            = new SymbolTable();
     private final HashMap<String, DefineMacroAction> definedMacros      = new HashMap<String, DefineMacroAction>();
     private int[]                                    jumpTable;
-    private int[]                                    jumpCount;
     private int[]                                    counterTable;
     private final long[]                             arithStack         = new long[1024];
     private int                                      arithSp;
-    private Variable                                 pcVariable         = null;
     private final ArrayList<CodeContainer>           codeContainers     = new ArrayList<CodeContainer>();
+    private int                                      containersCreated  = 0;
     private int                                      passNumber         = 0;
     private int                                      jumpId             = -1;
     private boolean                                  throwIfUnitialized = false;
-    private String                                   parentLabel        = null;
-    private String                                   macroParentLabel   = null;
+    private int                                      parentSlot         = -1;
+    private int                                      macroParentSlot    = -1;
+    private final ArrayList<Message>                 messages           = new ArrayList<Message>();
     private final Config                             config;
+    private final ParseCache                         parseCache;
+    private final BinaryCache                        binaryCache;
+    private final ParseScheduler                     parseScheduler;
+    private final FileProvider                       files;
+    private final Log                                log;
+    private final CounterState                       counters           = new CounterState();
+    private final int[]                              opcodeIps;
+    private Bytecode                                 bytecode           = null;
+    private List<Action>                             frontActions       = null;
+    private List<Action>                             macroBodies        = null;
+
+    private final static UnaryOperator[]             UNARY_OPERATORS    = UnaryOperator.values();
+    private final static BinaryOperator[]            BINARY_OPERATORS   = BinaryOperator.values();
 
     private static String[]                          PASS_NAMES         = Colls.objArray(
                                                                                 "Resolve and import include files",
                                                                                 "Macro expansion",
                                                                                 "Variable and label gathering",
                                                                                 "Assembly warm up",
-                                                                                "First assembly pass",
-                                                                                "Final assembly pass");
+                                                                                "Assembly pass");
 
     public Assembler(final Config config)
+    {
+        this(config, null, FileProvider.DISK, Log.CONSOLE);
+    }
+
+    /**
+     * @param memory
+     *            Parse results kept across builds, may be {@code null}
+     * @param files
+     *            Supplies all source and binary files
+     * @param log
+     *            Receives statistics, warnings and .INFO/.WARN messages
+     */
+    public Assembler(final Config config, final ParseCache.Memory memory, final FileProvider files, final Log log)
+    {
+        this.init();
+        this.config = config;
+        this.files = files;
+        this.log = log;
+        this.binaryCache = new BinaryCache(files);
+        this.parseCache = new ParseCache(config, memory, files, log);
+        this.parseScheduler = new ParseScheduler(config, this.parseCache, this.counters, files);
+        this.opcodeIps = config.profileHotSpots > 0 || config.detectLoops ? new int[65536] : null;
+    }
+
+    /**
+     * Used by {@link #fork(Config, Log)}, forks never parse.
+     */
+    private Assembler(final Config config, final FileProvider files, final Log log)
     {
         this.init();
         this.config = config;
+        this.files = files;
+        this.log = log;
+        this.binaryCache = new BinaryCache(files);
+        this.parseCache = null;
+        this.parseScheduler = null;
+        this.opcodeIps = config.profileHotSpots > 0 || config.detectLoops ? new int[65536] : null;
+    }
+
+    /**
+     * Creates an assembler continuing after {@link #prepare(List)} of this
+     * one, e.g. for another set of defines. The prepared actions are shared,
+     * everything changed by the later passes is copied, so both assemblers can
+     * {@link #compile(List)} concurrently.
+     */
+    public Assembler fork(final Config config, final Log log)
+    {
+        final Assembler assembler = new Assembler(config, this.files, log);
+        assembler.includePaths.addAll(this.includePaths);
+        assembler.resolvedFiles.addAll(this.resolvedFiles);
+        assembler.symbols.copyFrom(this.symbols);
+        assembler.definedMacros.putAll(this.definedMacros);
+        assembler.jumpTable = new int[this.jumpTable.length];
+        assembler.counterTable = new int[this.counterTable.length];
+        assembler.frontActions = this.frontActions;
+        assembler.macroBodies = this.macroBodies;
+        return assembler;
+    }
+
+    /**
+     * Parses comma separated {@code NAME=VALUE} pairs (a {@code NAME} alone
+     * means {@code NAME=1}) into variable assignments, values can be any
+     * expression. A later define of the same name replaces the earlier one, so
+     * every define stays a constant for the optimizer.
+     */
+    public static List<Action> parseDefines(final Config config, final String defines) throws AssemblerException
+    {
+        final LinkedHashMap<String, List<Action>> assignments = new LinkedHashMap<String, List<Action>>();
+        for (final String d : defines.split(","))
+        {
+            final String define = d.trim();
+            if (define.isEmpty())
+            {
+                continue;
+            }
+            final Tokenizer tokenizer = new Tokenizer(config, "<define>");
+            try
+            {
+                tokenizer.open(new ByteArrayInputStream((define.indexOf('=') < 0 ? define + " = 1\n" : define + "\n")
+                        .getBytes("UTF-8")));
+                final List<Action> parsed = Parser.parse(tokenizer);
+                if (parsed.size() < 2 || !(parsed.get(parsed.size() - 1) instanceof SetVariableAction))
+                {
+                    throw new AssemblerException(null, "Invalid define '" + define + "'");
+                }
+                assignments.put(((SetVariableAction)parsed.get(parsed.size() - 1)).getVariableName(), parsed);
+            }
+            catch (final TokenizerException e)
+            {
+                throw new AssemblerException(null, "Invalid define '" + define + "'", e);
+            }
+            catch (final UnsupportedEncodingException e)
+            {
+                throw new AssemblerException(null, "Invalid define '" + define + "'", e);
+            }
+            finally
+            {
+                tokenizer.close();
+            }
+        }
+        final ArrayList<Action> actions = new ArrayList<Action>();
+        for (final List<Action> assignment : assignments.values())
+        {
+            actions.addAll(assignment);
+        }
+        return actions;
     }
 
     public void init()
     {
-        this.variables.clear();
-        this.labels.clear();
+        this.symbols.clear();
+        this.symbols.intern("@", false, -1, false);
         this.jumpTable = null;
-        this.jumpCount = null;
         this.counterTable = null;
         this.codeContainers.clear();
+        this.containersCreated = 0;
         this.definedMacros.clear();
-        this.variables.put("@", this.pcVariable = new Variable());
         this.arithSp = 0;
         this.jumpId = -1;
-        this.parentLabel = null;
-        this.macroParentLabel = null;
+        this.parentSlot = -1;
+        this.macroParentSlot = -1;
+    }
+
+    void info(final String fmt, final Object... args)
+    {
+        this.log.print(Con.Type.INFO, null, args.length > 0 ? String.format(fmt, args) : fmt);
+    }
+
+    void warn(final String fmt, final Object... args)
+    {
+        this.log.print(Con.Type.WARNING, null, args.length > 0 ? String.format(fmt, args) : fmt);
     }
 
     private void startPass(final int index)
     {
-        Con.info(" Pass #%d = %s", index + 1, PASS_NAMES[index]);
+        this.info(" Pass #%d = %s", index + 1, PASS_NAMES[Math.min(index, PASS_NAMES.length - 1)]);
 
         this.passNumber = index;
         this.jumpId = -1;
-        this.parentLabel = null;
-        this.macroParentLabel = null;
+        this.parentSlot = -1;
+        this.macroParentSlot = -1;
 
         switch (index)
         {
@@ -107,21 +242,19 @@ public class Assembler
         case 2: // Gather variables/labels
             break;
         case 3: // Initial compile
-            Arrays.fill(this.jumpCount, 0);
+            this.clearSourceMap();
             this.codeContainers.clear();
-            this.pcVariable.reset();
+            this.symbols.reset(PC_SLOT);
             this.arithSp = 0;
             this.throwIfUnitialized = false;
             break;
-        case 4: // First real compilation
-            Arrays.fill(this.jumpCount, 0);
-            //$FALL-THROUGH$
-        case 5: // Final compilation
-            Arrays.fill(this.jumpCount, 0);
+        default: // Compile until converged
+            this.clearSourceMap();
             this.codeContainers.clear();
-            this.pcVariable.reset();
+            this.symbols.reset(PC_SLOT);
             this.arithSp = 0;
             this.throwIfUnitialized = true;
+            this.messages.clear();
             break;
         }
     }
@@ -129,7 +262,19 @@ public class Assembler
     public void addIncludeFromFilename(final String filename)
     {
         final String norm = new File(U.normalizePath(new File(filename).getAbsolutePath())).getParent();
-        if (!this.includePaths.contains(filename))
+        if (!this.includePaths.contains(norm))
+        {
+            this.includePaths.add(norm);
+        }
+    }
+
+    /**
+     * Adds a directory that gets searched for included files.
+     */
+    public void addIncludePath(final String directory)
+    {
+        final String norm = U.normalizePath(new File(directory).getAbsolutePath());
+        if (!this.includePaths.contains(norm))
         {
             this.includePaths.add(norm);
         }
@@ -138,34 +283,88 @@ public class Assembler
     public String resolveFilename(final String originalFilename, final boolean addExtension)
     {
         final String filename = addExtension ? U.addCasmFileExtension(originalFilename) : originalFilename;
-        File f = new File(filename);
-        if (f.exists())
+        String norm = U.normalizePath(new File(filename).getAbsolutePath());
+        if (this.files.exists(norm))
         {
-            final String norm = U.normalizePath(f.getAbsolutePath());
             this.addIncludeFromFilename(norm);
+            this.resolvedFiles.add(norm);
             return norm;
         }
         for (final String inc : this.includePaths)
         {
-            f = new File(inc, filename);
-            if (f.exists())
+            norm = U.normalizePath(new File(inc, filename).getAbsolutePath());
+            if (this.files.exists(norm))
             {
-                final String norm = U.normalizePath(f.getAbsolutePath());
                 this.addIncludeFromFilename(norm);
+                this.resolvedFiles.add(norm);
                 return norm;
             }
         }
         return null;
     }
 
+    /**
+     * @return All source and binary files found by
+     *         {@link #resolveFilename(String, boolean)} so far.
+     */
+    public Set<String> getResolvedFiles()
+    {
+        return Collections.unmodifiableSet(this.resolvedFiles);
+    }
+
     public Config getConfig()
     {
         return this.config;
     }
 
-    public boolean isFinalPass()
+    public BinaryCache getBinaryCache()
     {
-        return this.passNumber == FINAL_PASS;
+        return this.binaryCache;
+    }
+
+    public ParseCache getParseCache()
+    {
+        return this.parseCache;
+    }
+
+    public ParseScheduler getParseScheduler()
+    {
+        return this.parseScheduler;
+    }
+
+    /**
+     * @return {@code true} for the assembly passes after warm up, i.e. all
+     *         symbols must be initialized.
+     */
+    public boolean isCheckedPass()
+    {
+        return this.throwIfUnitialized;
+    }
+
+    /**
+     * Queues a .INFO/.WARN/.ERROR message, only the messages of the last
+     * (converged) pass get printed.
+     */
+    public void addMessage(final Con.Type type, final FileLocation location, final String message)
+    {
+        this.messages.add(new Message(type, location, message));
+    }
+
+    private void flushMessages() throws AssemblerException
+    {
+        for (final Message m : this.messages)
+        {
+            switch (m.type)
+            {
+            case INFO:
+            case WARNING:
+                this.log.print(m.type, m.location, m.message);
+                break;
+            case ERROR:
+                throw new AssemblerException(m.location, m.message);
+            }
+        }
+        this.messages.clear();
     }
 
     private CodeContainer getCurrentCodeContainer()
@@ -190,6 +389,7 @@ public class Assembler
                 || this.getCurrentCodeContainer().isDataContainer())
         {
             this.codeContainers.add(new CodeContainer(this.getPC(), false));
+            this.containersCreated++;
         }
         this.getCurrentCodeContainer().add(value);
         this.incPC();
@@ -208,6 +408,7 @@ public class Assembler
                 || !this.getCurrentCodeContainer().isDataContainer())
         {
             this.codeContainers.add(new CodeContainer(this.getPC(), true));
+            this.containersCreated++;
         }
         this.getCurrentCodeContainer().add(value);
         this.incPC();
@@ -219,6 +420,62 @@ public class Assembler
         this.emmitDataByte((value >> 8) & 255);
     }
 
+    /**
+     * Emits a block of data, behaves like {@link #emmitDataByte} for every
+     * byte but checks for wrapping only once.
+     */
+    public void emitDataBlock(final byte[] data, final int offset, final int length) throws AssemblerException
+    {
+        if (length == 0)
+        {
+            return;
+        }
+        final int count = this.beginDataBlock(length);
+        this.getCurrentCodeContainer().add(data, offset, count);
+        this.endDataBlock(count);
+    }
+
+    /**
+     * Emits the remaining bytes of the given buffer, see
+     * {@link #emitDataBlock(byte[], int, int)}.
+     */
+    public void emitDataBlock(final ByteBuffer data) throws AssemblerException
+    {
+        if (!data.hasRemaining())
+        {
+            return;
+        }
+        final int count = this.beginDataBlock(data.remaining());
+        final ByteBuffer b = data.duplicate();
+        b.limit(b.position() + count);
+        this.getCurrentCodeContainer().add(b);
+        this.endDataBlock(count);
+    }
+
+    private int beginDataBlock(final int length) throws AssemblerException
+    {
+        final int pc = this.getPC();
+        if (this.codeContainers.isEmpty()
+                || !this.getCurrentCodeContainer().isConsecutive(pc)
+                || !this.getCurrentCodeContainer().isDataContainer())
+        {
+            this.codeContainers.add(new CodeContainer(pc, true));
+            this.containersCreated++;
+        }
+        // Bytes up to $FFFF still get written before @ wraps
+        return Math.min(length, 65536 - pc);
+    }
+
+    private void endDataBlock(final int count) throws AssemblerException
+    {
+        final int pc = this.getPC() + count;
+        this.symbols.set(PC_SLOT, pc & 65535);
+        if (pc == 65536)
+        {
+            throw new AssemblerException(null, "@ wrapped from $FFFF->$0000");
+        }
+    }
+
     public void setCounter(final int id, final int value)
     {
         this.counterTable[id] = value;
@@ -232,7 +489,7 @@ public class Assembler
     private void incPC() throws AssemblerException
     {
         final int old = this.getPC();
-        this.pcVariable.set((this.getPC() + 1) & 65535);
+        this.symbols.set(PC_SLOT, (this.getPC() + 1) & 65535);
         if (old > this.getPC())
         {
             throw new AssemblerException(null, "@ wrapped from $FFFF->$0000");
@@ -241,109 +498,109 @@ public class Assembler
 
     public boolean isPcSet()
     {
-        return this.pcVariable.isInitialized();
+        return this.symbols.isInitialized(PC_SLOT);
     }
 
     public int getPC() throws AssemblerException
     {
-        if (!this.pcVariable.isInitialized())
+        if (!this.symbols.isInitialized(PC_SLOT))
         {
             throw new AssemblerException(null, "PC(@) not set");
         }
-        return (int)this.pcVariable.get() & 65535;
+        return (int)this.symbols.get(PC_SLOT) & 65535;
     }
 
-    public void setLabelAddress(final String labelName, final int pc) throws AssemblerException
+    /**
+     * Returns the slot of the given symbol. The slot resolved in pass 3 is used
+     * as long as the current parent label matches the one it was declared
+     * under, otherwise the name gets mangled and looked up.
+     */
+    private int resolve(final int slot, final String name, final String kind) throws AssemblerException
     {
-        Variable var = null;
-
-        if (labelName.startsWith("_"))
+        if (slot >= 0)
         {
-            final String parent = labelName.startsWith("__") ? this.macroParentLabel : this.parentLabel;
-            if (parent == null)
+            final int parent = this.symbols.getParent(slot);
+            if (parent < 0 || parent == (this.symbols.isMacroScope(slot) ? this.macroParentSlot : this.parentSlot))
             {
-                throw new AssemblerException(null, "Local label '" + labelName + "'without parent");
+                return slot;
             }
-            var = this.labels.get(parent + "$$" + labelName);
         }
-        else
+        if (name.startsWith("_"))
         {
-            var = this.labels.get(labelName);
+            final int parent = name.startsWith("__") ? this.macroParentSlot : this.parentSlot;
+            if (parent < 0)
+            {
+                throw new AssemblerException(null, "Local " + kind + " '" + name + "' without parent");
+            }
+            return this.symbols.indexOf(this.symbols.getName(parent) + "$$" + name);
         }
+        return this.symbols.indexOf(name);
+    }
 
-        if (var == null)
-        {
-            throw new AssemblerException(null, "Undefined label '" + labelName + "'");
-        }
+    SymbolTable getSymbols()
+    {
+        return this.symbols;
+    }
 
-        if (isMacroLabel(labelName))
-        {
-            this.macroParentLabel = labelName;
-        }
-        else if (!labelName.contains("$$") && !labelName.startsWith("_"))
-        {
-            this.parentLabel = labelName;
-        }
-        var.set(pc);
+    public void setLabelAddress(final String labelName, final int pc) throws AssemblerException
+    {
+        this.setLabelAddress(-1, labelName, pc);
     }
 
-    public Variable getVariable(final String name) throws AssemblerException
+    public void setLabelAddress(final int slot, final String labelName, final int pc) throws AssemblerException
     {
-        Variable var = null;
-        if (name.startsWith("_"))
+        final int s = this.resolve(slot, labelName, "label");
+        if (s < 0 || !this.symbols.isLabel(s))
         {
-            final String parent = name.startsWith("__") ? this.macroParentLabel : this.parentLabel;
-            if (parent == null)
-            {
-                throw new AssemblerException(null, "Local variable '" + name + "' without parent");
-            }
-            final String mangled = parent + "$$" + name;
-            var = this.variables.get(mangled);
-            if (var == null)
-            {
-                var = this.labels.get(mangled);
-            }
+            throw new AssemblerException(null, "Undefined label '" + labelName + "'");
         }
-        else
+
+        if (this.symbols.getParent(s) < 0)
         {
-            var = this.variables.get(name);
-            if (var == null)
+            if (this.symbols.isMacroScope(s))
+            {
+                this.macroParentSlot = s;
+            }
+            else
             {
-                var = this.labels.get(name);
+                this.parentSlot = s;
             }
         }
-        if (var == null)
+        this.symbols.set(s, pc);
+    }
+
+    public long getVariableValue(final String name) throws AssemblerException
+    {
+        return this.getVariableValue(-1, name);
+    }
+
+    public long getVariableValue(final int slot, final String name) throws AssemblerException
+    {
+        final int s = this.resolve(slot, name, "variable");
+        if (s < 0)
         {
             throw new AssemblerException(null, "Undefined variable or label '" + name + "'");
         }
-        if (this.throwIfUnitialized && !var.isInitialized())
+        if (this.throwIfUnitialized && !this.symbols.isInitialized(s))
         {
             throw new AssemblerException(null, "Read access to uninitialized variable '" + name + "'");
         }
-        return var;
+        return this.symbols.get(s);
     }
 
     public void setVariableValue(final String name, final long value) throws AssemblerException
     {
-        Variable var;
-        if (name.startsWith("_"))
-        {
-            final String parent = name.startsWith("__") ? this.macroParentLabel : this.parentLabel;
-            if (parent == null)
-            {
-                throw new AssemblerException(null, "Local variable '" + name + "' without parent");
-            }
-            var = this.variables.get(parent + "$$" + name);
-        }
-        else
-        {
-            var = this.variables.get(name);
-        }
-        if (var == null)
+        this.setVariableValue(-1, name, value);
+    }
+
+    public void setVariableValue(final int slot, final String name, final long value) throws AssemblerException
+    {
+        final int s = this.resolve(slot, name, "variable");
+        if (s < 0 || this.symbols.isLabel(s))
         {
             throw new AssemblerException(null, "Undefined variable '" + name + "'");
         }
-        var.set(value);
+        this.symbols.set(s, value);
     }
 
     public long pop() throws AssemblerException
@@ -373,7 +630,231 @@ public class Assembler
         return this.pop();
     }
 
+    private void clearSourceMap()
+    {
+        if (this.opcodeIps != null)
+        {
+            Arrays.fill(this.opcodeIps, -1);
+        }
+    }
+
+    private void mapSource(final int ip) throws AssemblerException
+    {
+        if (this.opcodeIps != null)
+        {
+            this.opcodeIps[this.getPC()] = ip;
+        }
+    }
+
+    /**
+     * @return The source location of every opcode emitted in the last pass,
+     *         indexed by address (all {@code null} unless hot spot profiling
+     *         or loop detection is enabled).
+     */
+    public FileLocation[] getSourceMap()
+    {
+        final FileLocation[] map = new FileLocation[65536];
+        if (this.opcodeIps != null && this.bytecode != null)
+        {
+            for (int pc = 0; pc < map.length; pc++)
+            {
+                if (this.opcodeIps[pc] >= 0)
+                {
+                    map[pc] = this.bytecode.getLocation(this.opcodeIps[pc]);
+                }
+            }
+        }
+        return map;
+    }
+
+    private void execute(final Bytecode bc) throws AssemblerException
+    {
+        final int[] code = bc.code;
+        int ip = 0;
+        int start = 0;
+        // Macro bodies do not nest, one frame is enough
+        int[] frame = null;
+        int ret = 0;
+        try
+        {
+            while (ip < code.length)
+            {
+                start = ip;
+                switch (code[ip])
+                {
+                case Bytecode.LOAD:
+                    this.push(bc.constants[code[ip + 1]]);
+                    ip += 2;
+                    break;
+                case Bytecode.GET:
+                    this.push(this.getVariableValue(code[ip + 1], bc.names[code[ip + 2]]));
+                    ip += 3;
+                    break;
+                case Bytecode.SET:
+                    this.setVariableValue(code[ip + 1], bc.names[code[ip + 2]], this.pop());
+                    ip += 3;
+                    break;
+                case Bytecode.FGET:
+                    this.push(this.getVariableValue(frame[code[ip + 1]], bc.names[code[ip + 2]]));
+                    ip += 3;
+                    break;
+                case Bytecode.FSET:
+                    this.setVariableValue(frame[code[ip + 1]], bc.names[code[ip + 2]], this.pop());
+                    ip += 3;
+                    break;
+                case Bytecode.FLABEL:
+                    this.setLabelAddress(frame[code[ip + 1]], bc.names[code[ip + 2]], code[ip + 3] != 0
+                            && !this.isPcSet() ? 0 : this.getPC());
+                    ip += 4;
+                    break;
+                case Bytecode.CALL:
+                    frame = bc.frames[code[ip + 2]];
+                    ret = ip + 3;
+                    ip = code[ip + 1];
+                    break;
+                case Bytecode.RET:
+                    ip = ret;
+                    break;
+                case Bytecode.LABEL:
+                    // Hack to allow .MACRO to set initial @
+                    this.setLabelAddress(code[ip + 1], bc.names[code[ip + 2]], code[ip + 3] != 0 && !this.isPcSet() ? 0
+                            : this.getPC());
+                    ip += 4;
+                    break;
+                case Bytecode.UNARY:
+                    this.push(UNARY_OPERATORS[code[ip + 1]].apply(this.pop()));
+                    ip += 2;
+                    break;
+                case Bytecode.BINARY:
+                {
+                    final long b = this.pop();
+                    final long a = this.pop();
+                    this.push(BINARY_OPERATORS[code[ip + 1]].apply(a, b));
+                    ip += 2;
+                    break;
+                }
+                case Bytecode.OPC_IMPLIED:
+                    this.mapSource(start);
+                    this.emmitByte(code[ip + 1]);
+                    ip += 2;
+                    break;
+                case Bytecode.OPC_BYTE:
+                {
+                    final int address = (int)this.pop() & 0xffff;
+                    this.mapSource(start);
+                    this.emmitByte(code[ip + 1]);
+                    this.emmitByte(address);
+                    ip += 2;
+                    break;
+                }
+                case Bytecode.OPC_WORD:
+                {
+                    final int address = (int)this.pop() & 0xffff;
+                    this.mapSource(start);
+                    this.emmitByte(code[ip + 1]);
+                    this.emmitWord(address);
+                    ip += 2;
+                    break;
+                }
+                case Bytecode.OPC_REL:
+                {
+                    final int address = (int)this.pop() & 0xffff;
+                    this.mapSource(start);
+                    this.emmitByte(code[ip + 1]);
+                    final int disp = this.passNumber > 3 ? address - (this.getPC() + 1) : 0;
+                    if (disp < -128 || disp > 127)
+                    {
+                        throw new AssemblerException(null, "Branch out of reach: " + disp);
+                    }
+                    this.emmitByte(disp);
+                    ip += 2;
+                    break;
+                }
+                case Bytecode.OPC_SIZED:
+                {
+                    final int address = (int)this.pop() & 0xffff;
+                    this.mapSource(start);
+                    if (address < 256)
+                    {
+                        this.emmitByte(code[ip + 1]);
+                        this.emmitByte(address);
+                    }
+                    else
+                    {
+                        this.emmitByte(code[ip + 2]);
+                        this.emmitWord(address);
+                    }
+                    ip += 3;
+                    break;
+                }
+                case Bytecode.DATA_BYTE:
+                    this.emmitDataByte((int)this.pop() & 0xffff);
+                    ip++;
+                    break;
+                case Bytecode.DATA_WORD:
+                    this.emmitDataWord((int)this.pop() & 0xffff);
+                    ip++;
+                    break;
+                case Bytecode.DATA_BLOCK:
+                {
+                    final byte[] block = bc.blocks[code[ip + 1]];
+                    this.emitDataBlock(block, 0, block.length);
+                    ip += 2;
+                    break;
+                }
+                case Bytecode.CODE_BYTE:
+                    this.emmitByte((int)this.pop() & 0xffff);
+                    ip++;
+                    break;
+                case Bytecode.JMP:
+                    ip = code[ip + 1];
+                    break;
+                case Bytecode.JZ:
+                    ip = this.pop() == 0 ? code[ip + 1] : ip + 2;
+                    break;
+                case Bytecode.CSET:
+                    this.counterTable[code[ip + 1]] = (int)this.pop();
+                    ip += 2;
+                    break;
+                case Bytecode.CJLE:
+                    ip = this.counterTable[code[ip + 1]] <= 0 ? code[ip + 2] : ip + 3;
+                    break;
+                case Bytecode.CDEC:
+                    this.counterTable[code[ip + 1]]--;
+                    ip = code[ip + 2];
+                    break;
+                case Bytecode.ACTION:
+                    bc.actions[code[ip + 1]].run(this);
+                    ip += 2;
+                    break;
+                default:
+                    throw new AssemblerException(null, "Internal error, illegal bytecode " + code[ip]);
+                }
+            }
+        }
+        catch (final AssemblerException ae)
+        {
+            if (ae.getLocation() == null)
+            {
+                throw new AssemblerException(bc.getLocation(start), ae.getMessage(),
+                        ae.getCause() != null ? ae.getCause() : ae);
+            }
+            throw ae;
+        }
+    }
+
     public List<CodeContainer> assemble(final Config config, final List<Action> iActions) throws AssemblerException
+    {
+        this.prepare(iActions);
+        return this.compile(parseDefines(config, config.defines));
+    }
+
+    /**
+     * Runs passes 1 to 3 (includes, macros, variable and label gathering).
+     * The resulting actions are never modified afterwards, so they can be
+     * shared with assemblers created by {@link #fork(Config, Log)}.
+     */
+    public void prepare(final List<Action> iActions) throws AssemblerException
     {
         Action currentAction = null;
         try
@@ -384,40 +865,59 @@ public class Assembler
             // ////////////////////////////////////////////////////////////////
             // Pass 1: .INCLUDE
             this.startPass(0);
-            for (int i = 0; i < actions.size(); i++)
+            // Included files get expanded in place (and may include further
+            // files), the stack holds the unfinished lists
+            final ArrayList<Action> includedActions = new ArrayList<Action>(actions.size());
+            final ArrayDeque<Iterator<Action>> includeStack = new ArrayDeque<Iterator<Action>>();
+            includeStack.push(actions.iterator());
+            while (!includeStack.isEmpty())
             {
-                final Action action = currentAction = actions.get(i);
+                final Iterator<Action> it = includeStack.peek();
+                if (!it.hasNext())
+                {
+                    includeStack.pop();
+                    continue;
+                }
+                final Action action = currentAction = it.next();
                 if (action instanceof IncludeAction)
                 {
                     final IncludeAction ia = (IncludeAction)action;
                     final String filename = this.resolveFilename(ia.getFileName(), true);
                     if (!includedFiles.contains(filename))
                     {
-                        Con.info("  Parsing include file '%s'", filename);
+                        this.info("  Parsing include file '%s'", filename);
                         includedFiles.add(filename);
                         if (filename == null)
                         {
                             throw new AssemblerException(action.getLocation(), "Can not find include file '"
                                     + ia.getFileName() + "'");
                         }
-                        actions.remove(i);
-                        actions.addAll(i, ia.doInclude(this, filename));
-                        i--;
+                        includeStack.push(ia.doInclude(this, filename).iterator());
                     }
                     else
                     {
-                        Con.info("  Skipping include file '%s', already included", filename);
-                        actions.remove(i--);
+                        this.info("  Skipping include file '%s', already included", filename);
                     }
                 }
+                else
+                {
+                    includedActions.add(action);
+                }
             }
+            actions.clear();
+            actions.addAll(includedActions);
+            if (this.parseScheduler.isParallel())
+            {
+                this.info("  %d file(s) parsed in parallel", this.parseScheduler.getPreParsedCount());
+            }
+            this.parseScheduler.shutdown();
 
             // ////////////////////////////////////////////////////////////////
             // Pass 2: :MACRO, .CALL
             this.startPass(1);
-            for (int i = 0; i < actions.size(); i++)
+            for (final Action action : actions)
             {
-                final Action action = currentAction = actions.get(i);
+                currentAction = action;
                 if (action instanceof DefineMacroAction)
                 {
                     final DefineMacroAction dma = (DefineMacroAction)action;
@@ -427,14 +927,19 @@ public class Assembler
                                 + dma.getName() + "'");
                     }
                     this.definedMacros.put(dma.getName(), dma);
-                    actions.remove(i--);
                 }
             }
-            Con.info("  %d macro definition(s)", this.definedMacros.size());
+            this.info("  %d macro definition(s)", this.definedMacros.size());
+            // Shareable macros only get their parent label and arguments
+            // inlined, the body is compiled once and called
+            final LinkedHashMap<DefineMacroAction, JumpIdAction> sharedMacros =
+                    new LinkedHashMap<DefineMacroAction, JumpIdAction>();
+            final ArrayList<Action> expandedActions = new ArrayList<Action>(actions.size());
             long id = 0;
-            for (int i = 0; i < actions.size(); i++)
+            int inlined = 0;
+            for (final Action action : actions)
             {
-                final Action action = currentAction = actions.get(i);
+                currentAction = action;
                 if (action instanceof CallMacroAction)
                 {
                     final CallMacroAction cma = (CallMacroAction)action;
@@ -443,12 +948,33 @@ public class Assembler
                     {
                         throw new AssemblerException(action.getLocation(), "Unknown macro '" + cma.getName() + "'");
                     }
-                    final List<Action> expanded = dma.getMangledActions(cma.getArguments(), ++id, action.getLocation());
-                    actions.remove(i);
-                    actions.addAll(i, expanded);
-                    i += expanded.size() - 1;
+                    if (dma.isShareable())
+                    {
+                        JumpIdAction entry = sharedMacros.get(dma);
+                        if (entry == null)
+                        {
+                            entry = new JumpIdAction(dma.getLocation(), this.counters);
+                            sharedMacros.put(dma, entry);
+                        }
+                        expandedActions.addAll(dma.getCallActions(cma.getArguments(), ++id, action.getLocation()));
+                        expandedActions.add(new ExpandMacroAction(action.getLocation(), dma, entry.getID()));
+                    }
+                    else
+                    {
+                        expandedActions.addAll(dma.getMangledActions(cma.getArguments(), ++id, action.getLocation(),
+                                this.counters));
+                        inlined++;
+                    }
+                }
+                else if (!(action instanceof DefineMacroAction))
+                {
+                    expandedActions.add(action);
                 }
             }
+            actions.clear();
+            actions.addAll(expandedActions);
+            this.info("  %d macro call(s), %d sharing %d body(s), %d inlined", id, id - inlined,
+                    sharedMacros.size(), inlined);
 
             // ////////////////////////////////////////////////////////////////
             // Pass 3: Gather variables/labels
@@ -462,39 +988,39 @@ public class Assembler
                 if (action instanceof MetaLabelAction)
                 {
                     final String name = ((MetaLabelAction)action).getName();
-                    final JumpIdAction jump = new JumpIdAction(action.getLocation());
+                    final JumpIdAction jump = new JumpIdAction(action.getLocation(), this.counters);
                     metaJumps.put(name, jump.getID());
                     actions.set(i, jump);
                 }
             }
+            // Shared macro bodies, appended after optimization
+            final ArrayList<Action> bodies = new ArrayList<Action>();
+            for (final Map.Entry<DefineMacroAction, JumpIdAction> e : sharedMacros.entrySet())
+            {
+                bodies.add(new MacroBodyAction(e.getKey()));
+                bodies.add(e.getValue());
+                bodies.addAll(e.getKey().getActions());
+            }
             // Find maximum jump/counter IDs
             int maxJumpId = 0;
             int maxCounterId = 0;
-            for (int i = 0; i < actions.size(); i++)
+            for (final List<Action> section : Arrays.asList(actions, bodies))
             {
-                final Action action = currentAction = actions.get(i);
-                if (action instanceof JumpIdAction)
+                for (final Action action : section)
                 {
-                    maxJumpId = Math.max(maxJumpId, ((JumpIdAction)action).getID());
-                }
-                else if (action instanceof CounterSetAction)
-                {
-                    maxCounterId = Math.max(maxCounterId, ((CounterSetAction)action).getID());
+                    currentAction = action;
+                    if (action instanceof JumpIdAction)
+                    {
+                        maxJumpId = Math.max(maxJumpId, ((JumpIdAction)action).getID());
+                    }
+                    else if (action instanceof CounterSetAction)
+                    {
+                        maxCounterId = Math.max(maxCounterId, ((CounterSetAction)action).getID());
+                    }
                 }
             }
             this.jumpTable = new int[maxJumpId + 1];
-            this.jumpCount = new int[this.jumpTable.length];
             this.counterTable = new int[maxCounterId + 1];
-            // Populate jumpTable
-            for (int i = 0; i < actions.size(); i++)
-            {
-                final Action action = currentAction = actions.get(i);
-                if (action instanceof JumpIdAction)
-                {
-                    this.jumpTable[((JumpIdAction)action).getID()] = i;
-                    actions.remove(i--);
-                }
-            }
             // Map .GOTO
             for (int i = 0; i < actions.size(); i++)
             {
@@ -510,102 +1036,287 @@ public class Assembler
                 }
             }
             // Gather all declared variables and labels
-            String lastLabel = null;
-            String lastMacroLabel = null;
+            this.declare(actions);
+            final int labelCount = this.symbols.getLabelCount();
+            this.info("  %d variable(s), %d label(s), %d .LABEL(s)", this.symbols.size() - labelCount - 1, labelCount,
+                    metaJumps.size());
+            this.frontActions = Collections.unmodifiableList(actions);
+            this.macroBodies = Collections.unmodifiableList(bodies);
+        }
+        catch (final AssemblerException ae)
+        {
+            throw locate(ae, currentAction);
+        }
+    }
+
+    /**
+     * Runs the optimizer, the lowering into bytecode and the assembly passes
+     * on the actions of {@link #prepare(List)}.
+     *
+     * @param defines
+     *            Actions assigning the command line defines (see
+     *            {@link #parseDefines(Config, String)}), executed before the
+     *            first source line
+     */
+    public List<CodeContainer> compile(final List<Action> defines) throws AssemblerException
+    {
+        Action currentAction = null;
+        try
+        {
+            this.declare(defines);
+            int defined = 0;
+            for (final Action action : defines)
+            {
+                if (action instanceof SetVariableAction)
+                {
+                    defined++;
+                }
+            }
+            if (defined > 0)
+            {
+                this.info("  %d define(s)", defined);
+            }
+            final ArrayList<Action> actions = new ArrayList<Action>(defines.size() + this.frontActions.size()
+                    + this.macroBodies.size());
+            actions.addAll(defines);
+            actions.addAll(this.frontActions);
+
+            if (!this.config.noOptimization)
+            {
+                ActionOptimizer.optimize(this, actions);
+            }
+            actions.addAll(this.macroBodies);
+            // Populate jumpTable, dropping the JumpIdActions
+            final ArrayList<Action> lowered = new ArrayList<Action>(actions.size());
             for (final Action action : actions)
             {
                 currentAction = action;
+                if (action instanceof JumpIdAction)
+                {
+                    this.jumpTable[((JumpIdAction)action).getID()] = lowered.size();
+                }
+                else
+                {
+                    lowered.add(action);
+                }
+            }
+
+            // Lower actions into bytecode
+            currentAction = null;
+            final Bytecode bytecode = ActionCompiler.compile(this, lowered, this.jumpTable);
+            this.bytecode = bytecode;
+            this.info("  %d action(s) compiled into %d bytecode word(s)", lowered.size(), bytecode.size());
+
+            // ////////////////////////////////////////////////////////////////
+            // Pass 4: Warm up
+            this.startPass(3);
+            long time = System.nanoTime();
+            this.execute(bytecode);
+            long totalTime = System.nanoTime() - time;
+            this.info("  %.3fs", totalTime / 1e9);
+
+            // ////////////////////////////////////////////////////////////////
+            // Pass 5+: Compile until no label changes anymore and variables
+            // that still change (e.g. counters) no longer change the code
+            long[] values = this.symbols.copyValues();
+            BitSet initialized = this.symbols.copyInitialized();
+            byte[] image = this.copyImage();
+            for (int pass = 1;; pass++)
+            {
+                this.startPass(3 + pass);
+                time = System.nanoTime();
+                this.execute(bytecode);
+                time = System.nanoTime() - time;
+                totalTime += time;
+
+                final List<Integer> changed = this.symbols.getChanged(values, initialized, PC_SLOT + 1);
+                boolean labelChanged = false;
+                for (final Integer slot : changed)
+                {
+                    labelChanged |= this.symbols.isLabel(slot.intValue());
+                }
+                final byte[] previousImage = image;
+                image = this.copyImage();
+                if (!labelChanged && (changed.isEmpty() || Arrays.equals(image, previousImage)))
+                {
+                    this.info("  Converged, %.3fs", time / 1e9);
+                    this.info("  %d assembly pass(es), %.3fs", pass + 1, totalTime / 1e9);
+                    break;
+                }
+                this.info("  %d symbol(s) changed, %.3fs", changed.size(), time / 1e9);
+
+                if (pass >= this.config.maxPasses)
+                {
+                    final StringBuilder names = new StringBuilder();
+                    for (final Integer slot : changed)
+                    {
+                        final int s = slot.intValue();
+                        this.warn("  Oscillating symbol '%s': $%04X -> $%04X", this.symbols.getName(s), values[s],
+                                this.symbols.get(s));
+                        if (names.length() > 0)
+                        {
+                            names.append(", ");
+                        }
+                        names.append(this.symbols.getName(s));
+                    }
+                    throw new AssemblerException(null, "No convergence after " + pass
+                            + " assembly pass(es), oscillating: " + names);
+                }
+
+                values = this.symbols.copyValues();
+                initialized = this.symbols.copyInitialized();
+            }
+            this.flushMessages();
+
+            int used = 0;
+            int allocated = 0;
+            for (final CodeContainer cc : this.codeContainers)
+            {
+                used += cc.getSize();
+                allocated += cc.getCapacity();
+            }
+            this.info("  %d code container(s), %d byte(s) used, %d byte(s) allocated", this.codeContainers.size(), used,
+                    allocated);
+            this.info("  %d code container(s) created in all passes", this.containersCreated);
+            if (this.binaryCache.getRequests() > 0)
+            {
+                this.info("  %d binary include(s) served from %d blob(s) in %d file(s), %d byte(s) read, %d byte(s) mapped",
+                        this.binaryCache.getRequests(), this.binaryCache.getBlobCount(),
+                        this.binaryCache.getFileCount(), this.binaryCache.getBytesRead(),
+                        this.binaryCache.getBytesMapped());
+            }
+
+            // ////////////////////////////////////////////////////////////////
+            // Finished
+            final ArrayList<CodeContainer> ret = new ArrayList<CodeContainer>(this.codeContainers);
+            Collections.sort(ret);
+            return ret;
+        }
+        catch (final AssemblerException ae)
+        {
+            throw locate(ae, currentAction);
+        }
+    }
+
+    /**
+     * @return The start addresses, sizes and contents of all code containers
+     *         of the current pass.
+     */
+    private byte[] copyImage()
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final CodeContainer cc : this.codeContainers)
+        {
+            out.write(cc.getStartAddress());
+            out.write(cc.getStartAddress() >> 8);
+            out.write(cc.getSize());
+            out.write(cc.getSize() >> 8);
+            out.write(cc.getSize() >> 16);
+            cc.writeTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Adds the location of the given action to errors without one.
+     */
+    private static AssemblerException locate(final AssemblerException ae, final Action currentAction)
+    {
+        if (ae.getLocation() == null && currentAction != null)
+        {
+            return new AssemblerException(currentAction.getLocation(), ae.getMessage(),
+                    ae.getCause() != null ? ae.getCause() : ae);
+        }
+        return ae;
+    }
+
+    /**
+     * Interns all variables and labels declared by the given actions.
+     */
+    private void declare(final List<Action> actions) throws AssemblerException
+    {
+        int lastLabel = -1;
+        int lastMacroLabel = -1;
+        for (final Action next : actions)
+        {
+            // Shared macro bodies declare their locals for every call
+            final List<Action> declaring = next instanceof ExpandMacroAction ? ((ExpandMacroAction)next)
+                    .getMacro().getActions() : Collections.singletonList(next);
+            for (final Action action : declaring)
+            {
                 if (action instanceof SetVariableAction)
                 {
                     String varName = ((SetVariableAction)action).getVariableName();
+                    int parent = -1;
+                    boolean macroScope = false;
                     if (varName.startsWith("_"))
                     {
-                        final String parent = varName.startsWith("__") ? lastMacroLabel : lastLabel;
-                        if (parent == null)
+                        macroScope = varName.startsWith("__");
+                        parent = macroScope ? lastMacroLabel : lastLabel;
+                        if (parent < 0)
                         {
                             throw new AssemblerException(action.getLocation(),
                                     "Macro label defined without parent label");
                         }
-                        varName = parent + "$$" + varName;
+                        varName = this.symbols.getName(parent) + "$$" + varName;
                     }
-                    if (this.labels.containsKey(varName))
+                    final int slot = this.symbols.indexOf(varName);
+                    if (slot >= 0 && this.symbols.isLabel(slot))
                     {
                         throw new AssemblerException(action.getLocation(),
                                 "Conflicting variable name '" + varName + "' (defined as label already)");
                     }
-                    if (!this.variables.containsKey(varName))
+                    if (slot < 0)
                     {
-                        this.variables.put(varName, new Variable());
+                        this.symbols.intern(varName, false, parent, macroScope);
                     }
                 }
                 else if (action instanceof SetLabelAction)
                 {
                     String labelName = ((SetLabelAction)action).getLabelName();
+                    int parent = -1;
+                    boolean macroScope;
 
                     if (labelName.startsWith("_"))
                     {
-                        final String parent = labelName.startsWith("__") ? lastMacroLabel : lastLabel;
-                        if (parent == null)
+                        macroScope = labelName.startsWith("__");
+                        parent = macroScope ? lastMacroLabel : lastLabel;
+                        if (parent < 0)
                         {
                             throw new AssemblerException(action.getLocation(),
                                     "Local label defined without parent label");
                         }
-                        labelName = parent + "$$" + labelName;
+                        labelName = this.symbols.getName(parent) + "$$" + labelName;
                     }
                     else
                     {
-                        if (isMacroLabel(labelName))
-                        {
-                            lastMacroLabel = labelName;
-                        }
-                        else
-                        {
-                            lastLabel = labelName;
-                        }
+                        macroScope = isMacroLabel(labelName);
                     }
 
-                    if (this.variables.containsKey(labelName))
+                    final int slot = this.symbols.indexOf(labelName);
+                    if (slot >= 0 && !this.symbols.isLabel(slot))
                     {
                         throw new AssemblerException(action.getLocation(),
                                 "Conflicting label name '" + labelName + "' (defined as variable already)");
                     }
-                    if (this.labels.containsKey(labelName))
+                    if (slot >= 0)
                     {
                         throw new AssemblerException(action.getLocation(), "Duplicate label '" + labelName + "'");
                     }
-                    this.labels.put(labelName, new Variable());
-                }
-            }
-            Con.info("  %d variable(s), %d label(s), %d .LABEL(s)", this.variables.size() - 1, this.labels.size(),
-                    metaJumps.size());
-
-            // ////////////////////////////////////////////////////////////////
-            // Pass 4-6: Compile
-            final ActionIterable iterable = new ActionIterable(actions, this);
-            for (int pnr = 3; pnr < 6; pnr++)
-            {
-                this.startPass(pnr);
-                for (final Action action : iterable)
-                {
-                    currentAction = action;
-                    action.run(this);
+                    final int s = this.symbols.intern(labelName, true, parent, macroScope);
+                    if (parent < 0)
+                    {
+                        if (macroScope)
+                        {
+                            lastMacroLabel = s;
+                        }
+                        else
+                        {
+                            lastLabel = s;
+                        }
+                    }
                 }
             }
-
-            // ////////////////////////////////////////////////////////////////
-            // Finished
-            final ArrayList<CodeContainer> ret = new ArrayList<CodeContainer>(this.codeContainers);
-            Collections.sort(ret);
-            return ret;
-        }
-        catch (final AssemblerException ae)
-        {
-            if (ae.getLocation() == null && currentAction != null)
-            {
-                throw new AssemblerException(currentAction.getLocation(), ae.getMessage(),
-                        ae.getCause() != null ? ae.getCause() : ae);
-            }
-            throw ae;
         }
     }
 
@@ -614,15 +1325,32 @@ public class Assembler
         return !label.contains("$$") && label.contains("$");
     }
 
+    /**
+     * @return The values of all initialized variables and labels (by their
+     *         mangled names), in order of definition.
+     */
+    public Map<String, Long> getSymbolValues()
+    {
+        final LinkedHashMap<String, Long> map = new LinkedHashMap<String, Long>();
+        for (int slot = 0; slot < this.symbols.size(); slot++)
+        {
+            if (this.symbols.isInitialized(slot))
+            {
+                map.put(this.symbols.getName(slot), Long.valueOf(this.symbols.get(slot)));
+            }
+        }
+        return map;
+    }
+
     public HashMap<Integer, String> getLabelMap()
     {
         final HashMap<Integer, String> map = new HashMap<Integer, String>();
-        for (final Entry<String, Variable> e : this.labels.entrySet())
+        for (int slot = 0; slot < this.symbols.size(); slot++)
         {
-            if (e.getValue().isInitialized())
+            if (this.symbols.isLabel(slot) && this.symbols.isInitialized(slot))
             {
-                final String name = e.getKey();
-                final Integer addr = Integer.valueOf((int)e.getValue().get() & 65535);
+                final String name = this.symbols.getName(slot);
+                final Integer addr = Integer.valueOf((int)this.symbols.get(slot) & 65535);
                 if (map.containsKey(addr))
                 {
                     final String aLabel = map.get(addr);
@@ -640,70 +1368,17 @@ public class Assembler
         return map;
     }
 
-    private static class ActionIterable implements Iterable<Action>
+    private static class Message
     {
-        private final List<Action> actions;
-        private final Assembler    assembler;
-
-        public ActionIterable(final List<Action> actions, final Assembler assembler)
-        {
-            this.actions = actions;
-            this.assembler = assembler;
-        }
+        final Con.Type     type;
+        final FileLocation location;
+        final String       message;
 
-        @Override
-        public Iterator<Action> iterator()
+        public Message(final Con.Type type, final FileLocation location, final String message)
         {
-            return new ActionIterator(this.actions, this.assembler);
-        }
-
-        private static class ActionIterator implements Iterator<Action>
-        {
-            private final List<Action> actions;
-            private final Assembler    assembler;
-            private int                index = 0;
-
-            public ActionIterator(final List<Action> actions, final Assembler assembler)
-            {
-                this.actions = actions;
-                this.assembler = assembler;
-            }
-
-            @Override
-            public boolean hasNext()
-            {
-                final int temp;
-                if (this.assembler.jumpId >= 0)
-                {
-                    temp = this.assembler.jumpTable[this.assembler.jumpId];
-                }
-                else
-                {
-                    temp = this.index;
-                }
-                return temp < this.actions.size();
-            }
-
-            @Override
-            public Action next()
-            {
-                if (this.assembler.jumpId >= 0)
-                {
-                    this.index = this.assembler.jumpTable[this.assembler.jumpId];
-                    if (++this.assembler.jumpCount[this.assembler.jumpId] > (1 << 24))
-                    {
-                        //
-                    }
-                    this.assembler.jumpId = -1;
-                }
-                return this.actions.get(this.index++);
-            }
-
-            @Override
-            public void remove()
-            {
-                throw new IllegalStateException("ActionIterator does not support remove()");
-            }
+            this.type = type;
+            this.location = location;
+            this.message = message;
         }
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Caches binary includes for the whole build.
+ * <p>
+ * Every file is read (or memory mapped, if large) only once through the
+ * {@link FileProvider}, the blobs for each distinct (path, skip, length) are
+ * zero copy, read only slices of it.
+ * </p>
+ */
+public class BinaryCache
+{
+    private final FileProvider                provider;
+    private final HashMap<String, ByteBuffer> files       = new HashMap<String, ByteBuffer>();
+    private final HashMap<String, ByteBuffer> blobs       = new HashMap<String, ByteBuffer>();
+    private final HashMap<String, String>     resolved    = new HashMap<String, String>();
+    private int                               requests    = 0;
+    private long                              bytesMapped = 0;
+    private long                              bytesRead   = 0;
+
+    public BinaryCache(final FileProvider provider)
+    {
+        this.provider = provider;
+    }
+
+    /**
+     * Resolves a .BINCLUDE file name through
+     * {@link Assembler#resolveFilename(String, boolean)}, once per name.
+     *
+     * @return The normalized path or {@code null} if the file can not be found
+     */
+    public String resolve(final Assembler assembler, final String filename)
+    {
+        String path = this.resolved.get(filename);
+        if (path == null)
+        {
+            path = assembler.resolveFilename(filename, false);
+            if (path != null)
+            {
+                this.resolved.put(filename, path);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Returns the (read only) contents of the given file, starting at
+     * {@code skip} with a maximum of {@code length} bytes ({@code -1} = all).
+     * Skip and length get clamped to the file's size.
+     */
+    public ByteBuffer get(final String path, final int skip, final int length) throws IOException
+    {
+        this.requests++;
+        final String key = path + "|" + skip + "|" + length;
+        ByteBuffer blob = this.blobs.get(key);
+        if (blob == null)
+        {
+            final ByteBuffer file = this.getFile(path);
+            final int start = Math.min(Math.max(skip, 0), file.capacity());
+            final int end = length < 0 ? file.capacity() : (int)Math.min((long)start + length, file.capacity());
+            final ByteBuffer b = file.duplicate();
+            b.limit(end);
+            b.position(start);
+            blob = b.slice();
+            this.blobs.put(key, blob);
+        }
+        return blob.duplicate();
+    }
+
+    private ByteBuffer getFile(final String path) throws IOException
+    {
+        ByteBuffer file = this.files.get(path);
+        if (file == null)
+        {
+            file = this.provider.read(path).slice();
+            if (file instanceof MappedByteBuffer)
+            {
+                this.bytesMapped += file.capacity();
+            }
+            else
+            {
+                this.bytesRead += file.capacity();
+            }
+            this.files.put(path, file);
+        }
+        return file;
+    }
+
+    public int getRequests()
+    {
+        return this.requests;
+    }
+
+    public int getFileCount()
+    {
+        return this.files.size();
+    }
+
+    public int getBlobCount()
+    {
+        return this.blobs.size();
+    }
+
+    public long getBytesMapped()
+    {
+        return this.bytesMapped;
+    }
+
+    public long getBytesRead()
+    {
+        return this.bytesRead;
+    }
+}
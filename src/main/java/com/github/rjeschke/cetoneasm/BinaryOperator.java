@@ -46,6 +46,44 @@ public enum BinaryOperator
         return this.priority;
     }
 
+    public long apply(final long a, final long b)
+    {
+        switch (this)
+        {
+        case ADD:
+            return a + b;
+        case SUB:
+            return a - b;
+        case MUL:
+            return a * b;
+        case DIV:
+            return a / b;
+        case AND:
+            return a & b;
+        case OR:
+            return a | b;
+        case XOR:
+            return a ^ b;
+        case SHIFT_LEFT:
+            return a << b;
+        case SHIFT_RIGHT:
+            return a >> b;
+        case EQUAL:
+            return a == b ? 1 : 0;
+        case NOT_EQUAL:
+            return a != b ? 1 : 0;
+        case LESS_THAN:
+            return a < b ? 1 : 0;
+        case LESS_EQUAL:
+            return a <= b ? 1 : 0;
+        case GREATER_THAN:
+            return a > b ? 1 : 0;
+        case GREATER_EQUAL:
+            return a >= b ? 1 : 0;
+        }
+        return 0;
+    }
+
     public static BinaryOperator fromToken(final Token token)
     {
         switch (token.getType())
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Embeddable entry point: assembles and links a program without any global
+ * state.
+ * <p>
+ * All files are read through a {@link FileProvider}, everything a command
+ * line build would print ends up in the {@link Result}. Builds are
+ * independent of each other, so any number of them can run concurrently (the
+ * {@link Config} is only read). When running builds on a thread pool
+ * {@link Config#parserThreads} should be 1, so every build parses its files on
+ * its own thread.
+ * </p>
+ */
+public class Build
+{
+    public static Result run(final Config config, final FileProvider files, final List<String> inputFiles)
+    {
+        return run(config, files, inputFiles, null);
+    }
+
+    /**
+     * @param memory
+     *            Parse results shared between builds (thread safe), may be
+     *            {@code null}
+     */
+    public static Result run(final Config config, final FileProvider files, final List<String> inputFiles,
+            final ParseCache.Memory memory)
+    {
+        final Result result = new Result();
+        final Assembler assembler = new Assembler(config, memory, files, result.log);
+        try
+        {
+            final List<String> names = new ArrayList<String>();
+            for (final String file : inputFiles)
+            {
+                final String name = U.normalizePath(U.addCasmFileExtension(new File(file).getAbsolutePath()));
+                assembler.getParseScheduler().submit(name);
+                names.add(name);
+            }
+            final List<Action> actions = new ArrayList<Action>();
+            for (final String name : names)
+            {
+                assembler.addIncludeFromFilename(name);
+                actions.addAll(assembler.getParseScheduler().parse(name));
+            }
+            result.link(config, assembler, assembler.assemble(config, actions));
+        }
+        catch (final TokenizerException e)
+        {
+            result.error(e);
+        }
+        catch (final AssemblerException e)
+        {
+            result.error(e);
+        }
+        catch (final LinkerException e)
+        {
+            result.error(e);
+        }
+        finally
+        {
+            assembler.getParseScheduler().shutdown();
+            result.files = assembler.getResolvedFiles();
+        }
+        return result;
+    }
+
+    /**
+     * Finishes the build prepared by {@link Assembler#prepare(List)} with the
+     * given defines (see {@link Assembler#parseDefines(Config, String)}) on a
+     * {@link Assembler#fork(Config, Log) fork} of the given assembler.
+     */
+    static Result fork(final Config config, final Assembler prepared, final String defines)
+    {
+        final Result result = new Result();
+        final Assembler assembler = prepared.fork(config, result.log);
+        try
+        {
+            result.link(config, assembler, assembler.compile(Assembler.parseDefines(config, defines)));
+        }
+        catch (final AssemblerException e)
+        {
+            result.error(e);
+        }
+        catch (final LinkerException e)
+        {
+            result.error(e);
+        }
+        finally
+        {
+            result.files = assembler.getResolvedFiles();
+        }
+        return result;
+    }
+
+    /**
+     * The outcome of a {@link Build}.
+     */
+    public static class Result
+    {
+        private final ArrayList<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+        private byte[]                      image       = null;
+        private Map<String, Long>           symbols     = Collections.emptyMap();
+        private Set<String>                 files       = Collections.emptySet();
+        private boolean                     failed      = false;
+        final Log                           log         = new Collector();
+
+        synchronized void add(final Diagnostic diagnostic)
+        {
+            this.diagnostics.add(diagnostic);
+            if (diagnostic.type == Con.Type.ERROR)
+            {
+                this.failed = true;
+            }
+        }
+
+        void link(final Config config, final Assembler assembler, final List<CodeContainer> containers)
+                throws LinkerException
+        {
+            this.symbols = assembler.getSymbolValues();
+            if (containers.isEmpty())
+            {
+                this.log.print(Con.Type.WARNING, null, "No code generated");
+            }
+            else
+            {
+                this.image = Linker.link(config, containers);
+            }
+        }
+
+        /**
+         * Adds the innermost assembler or tokenizer error of the given
+         * exception (like the command line does).
+         */
+        void error(final Exception e)
+        {
+            Throwable t = e;
+            while (t instanceof AssemblerException
+                    && (t.getCause() instanceof AssemblerException || t.getCause() instanceof TokenizerException))
+            {
+                t = t.getCause();
+            }
+            final FileLocation location;
+            if (t instanceof AssemblerException)
+            {
+                location = ((AssemblerException)t).getLocation();
+            }
+            else if (t instanceof TokenizerException)
+            {
+                location = ((TokenizerException)t).getLocation();
+            }
+            else
+            {
+                location = null;
+            }
+            this.add(new Diagnostic(Con.Type.ERROR, location, t.getCause() == null ? t.getMessage()
+                    : t.getMessage() + " (" + t.getCause().getMessage() + ")"));
+        }
+
+        /**
+         * @return {@code true} if no error occurred
+         */
+        public synchronized boolean isSuccess()
+        {
+            return !this.failed;
+        }
+
+        /**
+         * @return The linked PRG (load address followed by the program) or
+         *         {@code null} if the build failed or generated no code.
+         */
+        public byte[] getImage()
+        {
+            return this.image;
+        }
+
+        /**
+         * @return All variables and labels, see {@link Assembler#getSymbolValues()}
+         */
+        public Map<String, Long> getSymbols()
+        {
+            return this.symbols;
+        }
+
+        /**
+         * @return All files read by .INCLUDE and .BINCLUDE (without the input
+         *         files).
+         */
+        public Set<String> getFiles()
+        {
+            return this.files;
+        }
+
+        /**
+         * @return All statistics, warnings, messages and errors.
+         */
+        public synchronized List<Diagnostic> getDiagnostics()
+        {
+            return new ArrayList<Diagnostic>(this.diagnostics);
+        }
+
+        private class Collector implements Log
+        {
+            @Override
+            public void print(final Con.Type type, final FileLocation location, final String message)
+            {
+                Result.this.add(new Diagnostic(type, location, message));
+            }
+        }
+    }
+
+    public static class Diagnostic
+    {
+        final Con.Type             type;
+        private final FileLocation location;
+        private final String       message;
+
+        public Diagnostic(final Con.Type type, final FileLocation location, final String message)
+        {
+            this.type = type;
+            this.location = location;
+            this.message = message;
+        }
+
+        public Con.Type getType()
+        {
+            return this.type;
+        }
+
+        /**
+         * @return The source location or {@code null}
+         */
+        public FileLocation getLocation()
+        {
+            return this.location;
+        }
+
+        public String getMessage()
+        {
+            return this.message;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.location != null ? this.location + ": " + this.message : this.message;
+        }
+    }
+}
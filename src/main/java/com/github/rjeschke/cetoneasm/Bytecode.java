@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.util.Arrays;
+
+/**
+ * The lowered form of the (flat) action list, executed by the assembler in the
+ * compile passes.
+ * <p>
+ * Each instruction is an opcode followed by a fixed number of operand words.
+ * Jump targets are absolute offsets into {@code code}, symbols are referenced
+ * by their {@link SymbolTable} slot ({@code -1} if unresolved) plus their name.
+ * </p>
+ * <p>
+ * The shared macro bodies follow the main code (which then ends with a jump
+ * behind them), they address their local names through the frame of the
+ * current {@code CALL}.
+ * </p>
+ */
+public class Bytecode
+{
+    /** {@code LOAD const} */
+    public final static int          LOAD         = 0;
+    /** {@code GET slot, name} */
+    public final static int          GET          = 1;
+    /** {@code SET slot, name} */
+    public final static int          SET          = 2;
+    /** {@code LABEL slot, name, isMacroLabel} */
+    public final static int          LABEL        = 3;
+    /** {@code UNARY operator} */
+    public final static int          UNARY        = 4;
+    /** {@code BINARY operator} */
+    public final static int          BINARY       = 5;
+    /** {@code OPC_IMPLIED opcode} */
+    public final static int          OPC_IMPLIED  = 6;
+    /** {@code OPC_BYTE opcode} */
+    public final static int          OPC_BYTE     = 7;
+    /** {@code OPC_WORD opcode} */
+    public final static int          OPC_WORD     = 8;
+    /** {@code OPC_REL opcode} */
+    public final static int          OPC_REL      = 9;
+    /** {@code OPC_SIZED zpOpcode, absOpcode} */
+    public final static int          OPC_SIZED    = 10;
+    /** {@code DATA_BYTE} */
+    public final static int          DATA_BYTE    = 11;
+    /** {@code DATA_WORD} */
+    public final static int          DATA_WORD    = 12;
+    /** {@code CODE_BYTE} */
+    public final static int          CODE_BYTE    = 13;
+    /** {@code JMP target} */
+    public final static int          JMP          = 14;
+    /** {@code JZ target} */
+    public final static int          JZ           = 15;
+    /** {@code CSET counter} */
+    public final static int          CSET         = 16;
+    /** {@code CJLE counter, target} */
+    public final static int          CJLE         = 17;
+    /** {@code CDEC counter, target} */
+    public final static int          CDEC         = 18;
+    /** {@code ACTION action} */
+    public final static int          ACTION       = 19;
+    /** {@code DATA_BLOCK block} */
+    public final static int          DATA_BLOCK   = 20;
+    /** {@code CALL target, frame} */
+    public final static int          CALL         = 21;
+    /** {@code RET} */
+    public final static int          RET          = 22;
+    /** {@code FGET index, name} */
+    public final static int          FGET         = 23;
+    /** {@code FSET index, name} */
+    public final static int          FSET         = 24;
+    /** {@code FLABEL index, name, isMacroLabel} */
+    public final static int          FLABEL       = 25;
+
+    final int[]                      code;
+    final long[]                     constants;
+    final String[]                   names;
+    final Action[]                   actions;
+    final byte[][]                   blocks;
+    /** Symbol slots per {@code CALL}, indexed by the macro's frame index */
+    final int[][]                    frames;
+    private final int[]              starts;
+    private final FileLocation[]     locations;
+
+    Bytecode(final int[] code, final long[] constants, final String[] names, final Action[] actions,
+            final byte[][] blocks, final int[][] frames, final int[] starts, final FileLocation[] locations)
+    {
+        this.code = code;
+        this.frames = frames;
+        this.constants = constants;
+        this.names = names;
+        this.actions = actions;
+        this.blocks = blocks;
+        this.starts = starts;
+        this.locations = locations;
+    }
+
+    public int size()
+    {
+        return this.code.length;
+    }
+
+    public FileLocation getLocation(final int ip)
+    {
+        int idx = Arrays.binarySearch(this.starts, ip);
+        if (idx < 0)
+        {
+            idx = -idx - 2;
+        }
+        // Actions that emitted no code share their start with the next one
+        while (idx >= 0 && idx + 1 < this.starts.length && this.starts[idx + 1] == this.starts[idx])
+        {
+            idx++;
+        }
+        return idx < 0 ? null : this.locations[idx];
+    }
+}
@@ -17,16 +17,23 @@
 package com.github.rjeschke.cetoneasm;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import com.github.rjeschke.cetoneasm.Opcodes.Opcode;
 
+/**
+ * A consecutive block of code or data. The buffer starts small and grows on
+ * demand (up to the end of the address space).
+ */
 public class CodeContainer implements Comparable<CodeContainer>
 {
-    private final int     startAddress;
-    private final byte[]  buffer   = new byte[65536];
-    private int           position = 0;
-    private final boolean dataContainer;
+    private final static int INITIAL_CAPACITY = 256;
+    private final int        startAddress;
+    private byte[]           buffer           = new byte[INITIAL_CAPACITY];
+    private int              position         = 0;
+    private final boolean    dataContainer;
 
     public CodeContainer(final int address, final boolean dataContainer)
     {
@@ -54,6 +61,14 @@ public class CodeContainer implements Comparable<CodeContainer>
         return this.startAddress + this.position;
     }
 
+    /**
+     * @return The number of bytes currently allocated by this container.
+     */
+    public int getCapacity()
+    {
+        return this.buffer.length;
+    }
+
     public boolean isConsecutive(final int pc)
     {
         return this.position + this.startAddress == pc;
@@ -61,17 +76,58 @@ public class CodeContainer implements Comparable<CodeContainer>
 
     public void add(final int value) throws AssemblerException
     {
-        if (this.position + this.startAddress >= this.buffer.length)
+        if (this.position + this.startAddress >= 65536)
         {
             throw new AssemblerException(null, "Code container overflow");
         }
+        if (this.position == this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, Math.min(this.buffer.length * 2, 65536));
+        }
 
         this.buffer[this.position++] = (byte)value;
     }
 
+    public void add(final byte[] data, final int offset, final int length) throws AssemblerException
+    {
+        this.ensureCapacity(length);
+        System.arraycopy(data, offset, this.buffer, this.position, length);
+        this.position += length;
+    }
+
+    /**
+     * Adds the remaining bytes of the given buffer (without modifying its
+     * position).
+     */
+    public void add(final ByteBuffer data) throws AssemblerException
+    {
+        final int length = data.remaining();
+        this.ensureCapacity(length);
+        data.duplicate().get(this.buffer, this.position, length);
+        this.position += length;
+    }
+
+    private void ensureCapacity(final int length) throws AssemblerException
+    {
+        final int end = this.position + length;
+        if (end + this.startAddress > 65536)
+        {
+            throw new AssemblerException(null, "Code container overflow");
+        }
+        if (end > this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, Math.min(Math.max(this.buffer.length * 2, end), 65536));
+        }
+    }
+
+    private byte get(final int pc)
+    {
+        return pc < this.position ? this.buffer[pc] : 0;
+    }
+
     private int readWord(final int pc)
     {
-        return (this.buffer[pc] & 255) | ((this.buffer[pc + 1] & 255) << 8);
+        return (this.get(pc) & 255) | ((this.get(pc + 1) & 255) << 8);
     }
 
     @Override
@@ -96,7 +152,7 @@ public class CodeContainer implements Comparable<CodeContainer>
                 }
                 for (int n = 0; n < todo; n++)
                 {
-                    sb.append(String.format("%02X ", this.buffer[pc + n] & 255));
+                    sb.append(String.format("%02X ", this.get(pc + n) & 255));
                 }
                 for (int n = 0; n < 16 - todo - startSkip; n++)
                 {
@@ -109,7 +165,7 @@ public class CodeContainer implements Comparable<CodeContainer>
                 }
                 for (int n = 0; n < todo; n++)
                 {
-                    final int ch = this.buffer[pc + n] & 255;
+                    final int ch = this.get(pc + n) & 255;
                     sb.append(ch < 32 || ch > 127 ? '.' : (char)ch);
                 }
                 sb.append('\n');
@@ -122,7 +178,7 @@ public class CodeContainer implements Comparable<CodeContainer>
             for (int pc = 0; pc < this.position;)
             {
                 final String label = labelMap.get(Integer.valueOf(pc + this.startAddress));
-                final int opc = this.buffer[pc] & 255;
+                final int opc = this.get(pc) & 255;
                 final Opcode op = Opcodes.BY_CODE[opc];
                 line.setLength(0);
                 line.append(String.format(" %04X %02X ", pc + this.startAddress, opc));
@@ -136,7 +192,7 @@ public class CodeContainer implements Comparable<CodeContainer>
                 case ABSOLUTE_X:
                 case ABSOLUTE_Y:
                 case INDIRECT:
-                    line.append(String.format("%02X %02X ", this.buffer[pc + 1], this.buffer[pc + 2]));
+                    line.append(String.format("%02X %02X ", this.get(pc + 1), this.get(pc + 2)));
                     break;
                 case RELATIVE:
                 case IMMEDIATE:
@@ -145,7 +201,7 @@ public class CodeContainer implements Comparable<CodeContainer>
                 case ZEROPAGE_Y:
                 case INDEXED_INDIRECT:
                 case INDIRECT_INDEXED:
-                    line.append(String.format("%02X    ", this.buffer[pc + 1]));
+                    line.append(String.format("%02X    ", this.get(pc + 1)));
                     break;
                 }
 
@@ -174,31 +230,31 @@ public class CodeContainer implements Comparable<CodeContainer>
                     pc += 2;
                     break;
                 case IMMEDIATE:
-                    line.append(String.format(" #$%02X", this.buffer[pc] & 255));
+                    line.append(String.format(" #$%02X", this.get(pc) & 255));
                     pc++;
                     break;
                 case ZEROPAGE:
-                    line.append(String.format(" $%02X", this.buffer[pc] & 255));
+                    line.append(String.format(" $%02X", this.get(pc) & 255));
                     pc++;
                     break;
                 case ZEROPAGE_X:
-                    line.append(String.format(" $%02X,X", this.buffer[pc] & 255));
+                    line.append(String.format(" $%02X,X", this.get(pc) & 255));
                     pc++;
                     break;
                 case ZEROPAGE_Y:
-                    line.append(String.format(" $%02X,Y", this.buffer[pc] & 255));
+                    line.append(String.format(" $%02X,Y", this.get(pc) & 255));
                     pc++;
                     break;
                 case INDEXED_INDIRECT:
-                    line.append(String.format(" ($%02X),Y", this.buffer[pc] & 255));
+                    line.append(String.format(" ($%02X),Y", this.get(pc) & 255));
                     pc++;
                     break;
                 case INDIRECT_INDEXED:
-                    line.append(String.format(" ($%02X,X)", this.buffer[pc] & 255));
+                    line.append(String.format(" ($%02X,X)", this.get(pc) & 255));
                     pc++;
                     break;
                 case RELATIVE:
-                    line.append(String.format(" $%04X", this.buffer[pc] + pc + 1 + this.startAddress));
+                    line.append(String.format(" $%04X", this.get(pc) + pc + 1 + this.startAddress));
                     pc++;
                     break;
                 }
@@ -218,7 +274,7 @@ public class CodeContainer implements Comparable<CodeContainer>
                     if (op.adressingMode == AddressingMode.RELATIVE)
                     {
                         final int from = pc + this.startAddress;
-                        final int target = this.buffer[pc - 1] + from;
+                        final int target = this.get(pc - 1) + from;
                         if ((from & 0xff00) != (target & 0xff00))
                         {
                             line.append("2/4");
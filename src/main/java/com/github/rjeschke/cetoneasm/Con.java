@@ -22,7 +22,8 @@ import com.github.rjeschke.neetutils.Strings;
 
 public class Con
 {
-    private static long startTime = 0;
+    private static long   startTime = 0;
+    private static Output output    = null;
 
     public static void initialize()
     {
@@ -36,27 +37,55 @@ public class Con
         ERROR
     }
 
-    public static void print(final Type type, final String fmt, final Object... args)
+    /**
+     * Receives all printed lines (already formatted, without line separator).
+     */
+    public interface Output
+    {
+        public void line(Type type, String line);
+    }
+
+    /**
+     * Redirects all further output, {@code null} restores printing to
+     * {@code System.out}.
+     *
+     * @return The previous output
+     */
+    public synchronized static Output setOutput(final Output out)
+    {
+        final Output previous = output;
+        output = out;
+        return previous;
+    }
+
+    public synchronized static void print(final Type type, final String fmt, final Object... args)
     {
         final List<String> outs = Strings.split(args.length > 0 ? String.format(fmt, args) : fmt, '\n');
         for (final String s : outs)
         {
             final long time = System.currentTimeMillis() - startTime;
-            System.out.printf("[%2d.%03d] ", time / 1000, time % 1000);
+            final String tag;
             switch (type)
             {
-            case INFO:
-                System.out.print("[I]");
-                break;
             case WARNING:
-                System.out.print("[W]");
+                tag = "[W]";
                 break;
             case ERROR:
-                System.out.print("[E]");
+                tag = "[E]";
+                break;
+            default:
+                tag = "[I]";
                 break;
             }
-            System.out.print(" : ");
-            System.out.println(s);
+            final String line = String.format("[%2d.%03d] %s : %s", time / 1000, time % 1000, tag, s);
+            if (output != null)
+            {
+                output.line(type, line);
+            }
+            else
+            {
+                System.out.println(line);
+            }
         }
     }
 
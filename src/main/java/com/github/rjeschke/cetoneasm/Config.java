@@ -41,6 +41,102 @@ public class Config
     @CmdArgument(l = "emulate-xverbose", isSwitch = true, printDefault = false, desc = "Also prints CPU reads @PC, includes --emulate-verbose.")
     public boolean xverboseEmulation   = false;
 
+    @CmdArgument(l = "emulate-trace", printDefault = false, desc = "Records a binary trace of all opcodes and bus accesses during emulation into the given file, includes --emulate.")
+    public String  traceFile           = "";
+
+    @CmdArgument(l = "decode-trace", printDefault = false, desc = "Prints the given --emulate-trace file like --emulate-verbose (or --emulate-xverbose) and exits.")
+    public String  decodeTraceFile     = "";
+
+    @CmdArgument(l = "emulate-poll", printDefault = true, desc = "Number of clock cycles between checks for RETURN in (non verbose) emulation.")
+    public int     emulatePollCycles   = 1000000;
+
+    @CmdArgument(l = "emulate-max-cycles", printDefault = true, desc = "Stops and fails emulation after the given number of clock cycles (per call with --emulate-play), 0 = off.")
+    public int     emulateMaxCycles    = 0;
+
+    @CmdArgument(l = "emulate-detect-loops", isSwitch = true, printDefault = false, desc = "Stops and fails emulation as soon as the CPU is stuck in an endless loop (not used with IRQs/NMIs).")
+    public boolean detectLoops         = false;
+
+    @CmdArgument(l = "emulate-translate", isSwitch = true, printDefault = false, desc = "Executes straight-line code from a cache of pre-decoded blocks in (non verbose) emulation.")
+    public boolean translateEmulation  = false;
+
+    @CmdArgument(l = "emulate-play", printDefault = false, desc = "Address or label of a play routine, called once per frame after the init routine, reports clock cycles per frame, includes --emulate.")
+    public String  playAddress         = "";
+
+    @CmdArgument(l = "emulate-init", printDefault = false, desc = "Address or label of the init routine for --emulate-play, defaults to the start of the program.")
+    public String  initAddress         = "";
+
+    @CmdArgument(l = "emulate-frames", printDefault = true, desc = "Number of frames to run with --emulate-play.")
+    public int     emulateFrames       = 250;
+
+    @CmdArgument(l = "emulate-budget", printDefault = true, desc = "Fails if a call of the --emulate-play routine takes more than the given clock cycles, 0 = off.")
+    public int     frameBudget         = 0;
+
+    @CmdArgument(l = "emulate-ntsc", isSwitch = true, printDefault = false, desc = "Uses NTSC instead of PAL frame timing during emulation.")
+    public boolean ntsc                = false;
+
+    @CmdArgument(l = "emulate-profile", printDefault = true, desc = "Profiles (non verbose) emulation and reports the given number of hot spots per label and per source line, 0 = off.")
+    public int     profileHotSpots     = 0;
+
+    @CmdArgument(l = "emulate-raster-irq", printDefault = true, desc = "Triggers an IRQ every N raster lines during emulation, 0 = off.")
+    public int     rasterIrqLines      = 0;
+
+    @CmdArgument(l = "emulate-timer-irq", printDefault = true, desc = "Triggers an IRQ on every underflow of a CIA timer with the given latch value during emulation, 0 = off.")
+    public int     timerIrqLatch       = 0;
+
+    @CmdArgument(l = "emulate-nmi", printDefault = true, desc = "Triggers a single NMI at the given clock cycle during emulation, -1 = off.")
+    public int     nmiCycle            = -1;
+
+    @CmdArgument(l = "sweep", printDefault = false, desc = "Runs a routine for all combinations of the given inputs, e.g. 'A=0..255,X=0..255,$FB.W=0..999' (registers, addresses or labels, .W for words).")
+    public String  sweepInputs         = "";
+
+    @CmdArgument(l = "sweep-call", printDefault = false, desc = "Address or label of the routine to --sweep, defaults to the start of the program.")
+    public String  sweepCall           = "";
+
+    @CmdArgument(l = "sweep-out", printDefault = false, desc = "Comma separated memory outputs (addresses or labels, .W for words) available as OUT1, OUT2, ... in --sweep-check.")
+    public String  sweepOutputs        = "";
+
+    @CmdArgument(l = "sweep-check", printDefault = false, desc = "Expression that must be non-zero after each --sweep run, can use IN1, IN2, ..., A, X, Y, SR and OUT1, OUT2, ...")
+    public String  sweepCheck          = "";
+
+    @CmdArgument(l = "sweep-max-cycles", printDefault = true, desc = "Clock cycles after which a --sweep run is considered to be stuck.")
+    public int     sweepMaxCycles      = 1000000;
+
+    @CmdArgument(l = "sweep-threads", printDefault = true, desc = "Number of threads used for --sweep, 0 = one per CPU.")
+    public int     sweepThreads        = 0;
+
     @CmdArgument(s = 'x', l = "execute", isSwitch = true, printDefault = false, desc = "Runs the generated PRG inside an external emulator (currently VICE/x64).")
     public boolean runExternalEmulator = false;
+
+    @CmdArgument(l = "cache-dir", printDefault = false, desc = "Caches parsed source files in the given directory.")
+    public String  cacheDir            = "";
+
+    @CmdArgument(l = "no-optimize", isSwitch = true, printDefault = false, desc = "Disables constant propagation and dead code removal after variable gathering.")
+    public boolean noOptimization      = false;
+
+    @CmdArgument(l = "max-passes", printDefault = true, desc = "Maximum number of assembly passes (after warm up) before giving up on convergence.")
+    public int     maxPasses           = 10;
+
+    @CmdArgument(l = "parser-threads", printDefault = true, desc = "Number of threads used for parsing source files, 0 = one per CPU, 1 = sequential.")
+    public int     parserThreads       = 0;
+
+    @CmdArgument(l = "daemon", printDefault = false, desc = "Runs as a build daemon on the given loopback port, keeping parsed source files in memory between builds.")
+    public int     daemonPort          = 0;
+
+    @CmdArgument(l = "daemon-client", printDefault = false, desc = "Sends the build to the daemon on the given loopback port instead of assembling in this process.")
+    public int     daemonClientPort    = 0;
+
+    @CmdArgument(l = "daemon-stop", isSwitch = true, printDefault = false, desc = "Stops the daemon given by --daemon-client.")
+    public boolean stopDaemon          = false;
+
+    @CmdArgument(l = "watch", isSwitch = true, printDefault = false, desc = "Watches all source and binary files and assembles again on every change, keeping parsed source files in memory.")
+    public boolean watch               = false;
+
+    @CmdArgument(s = 'D', l = "define", printDefault = false, desc = "Comma separated variables assigned before the first source line, e.g. 'NTSC=1,MUSIC=0' (values are expressions, NAME alone means NAME=1).")
+    public String  defines             = "";
+
+    @CmdArgument(l = "variants", printDefault = false, desc = "Builds one PRG per variant from a single parse, e.g. 'pal:NTSC=0;ntsc:NTSC=1' (name and defines like -D), written to <output>-<name>.prg.")
+    public String  variants            = "";
+
+    @CmdArgument(l = "variant-threads", printDefault = true, desc = "Number of threads used for --variants, 0 = one per CPU.")
+    public int     variantThreads      = 0;
 }
@@ -18,38 +18,30 @@ package com.github.rjeschke.cetoneasm;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Allocates jump and counter ids. Every {@link Assembler} owns one, parsed
+ * files use their own and get remapped (see
+ * {@link com.github.rjeschke.cetoneasm.actions.IdRemapper}) into the
+ * assembler's.
+ */
 public class CounterState
 {
-    private final static ThreadLocal<CounterState> STATES       = new ThreadLocal<CounterState>()
-                                                                {
-                                                                    @Override
-                                                                    protected CounterState initialValue()
-                                                                    {
-                                                                        return new CounterState();
-                                                                    };
-                                                                };
-
-    private final AtomicInteger                    JUMP_COUNTER = new AtomicInteger(0);
-    private final AtomicInteger                    ID_COUNTER   = new AtomicInteger(0);
-
-    public static CounterState get()
-    {
-        return STATES.get();
-    }
+    private final AtomicInteger jumpCounter = new AtomicInteger(0);
+    private final AtomicInteger idCounter   = new AtomicInteger(0);
 
     public int newJumpId()
     {
-        return this.JUMP_COUNTER.incrementAndGet();
+        return this.jumpCounter.incrementAndGet();
     }
 
     public int newId()
     {
-        return this.ID_COUNTER.incrementAndGet();
+        return this.idCounter.incrementAndGet();
     }
 
     public void reset()
     {
-        this.JUMP_COUNTER.set(0);
-        this.ID_COUNTER.set(0);
+        this.jumpCounter.set(0);
+        this.idCounter.set(0);
     }
 }
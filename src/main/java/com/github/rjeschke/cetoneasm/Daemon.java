@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build daemon and its thin client.
+ * <p>
+ * The daemon listens on a loopback port and runs one build per connection
+ * (one after another), keeping parsed source files in a
+ * {@link ParseCache.Memory} so unchanged files never get parsed twice.
+ * </p>
+ * <p>
+ * Protocol (numbers big endian, strings as length and UTF-8 bytes): the client
+ * sends magic, version, token, command, working directory and the command line
+ * arguments, the daemon answers with a stream of records (log line, written
+ * file, exit code), the exit code record always comes last.
+ * </p>
+ * <p>
+ * The token is a random secret the daemon writes to a file only readable by
+ * its user ({@code ~/.cetoneasm-daemon-<port>}), requests without it get
+ * dropped.
+ * </p>
+ */
+public class Daemon
+{
+    private final static int MAGIC      = 0x43415344;
+    private final static int VERSION    = 2;
+    private final static int CMD_BUILD  = 1;
+    private final static int CMD_STOP   = 2;
+    private final static int REC_LOG    = 1;
+    private final static int REC_OUTPUT = 2;
+    private final static int REC_EXIT   = 3;
+
+    private static File getTokenFile(final int port)
+    {
+        return new File(System.getProperty("user.home"), ".cetoneasm-daemon-" + port);
+    }
+
+    /**
+     * Creates a new random token and writes it to a file only readable (and
+     * writable) by the current user.
+     */
+    private static String createToken(final int port) throws IOException
+    {
+        final byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b : random)
+        {
+            sb.append(String.format("%02x", b & 255));
+        }
+        final String token = sb.toString();
+
+        final Path path = getTokenFile(port).toPath();
+        Files.deleteIfExists(path);
+        try
+        {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch (final UnsupportedOperationException e)
+        {
+            // No POSIX permissions (e.g. Windows)
+            final File file = Files.createFile(path).toFile();
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+        return token;
+    }
+
+    /**
+     * @return The port given with {@code --daemon-client} or 0.
+     */
+    public static int getClientPort(final String[] args)
+    {
+        for (int i = 0; i + 1 < args.length; i++)
+        {
+            if (args[i].equals("--daemon-client"))
+            {
+                try
+                {
+                    return Integer.parseInt(args[i + 1]);
+                }
+                catch (final NumberFormatException e)
+                {
+                    // Let the command line parser report this
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sends the given command line (without the daemon options) to the
+     * daemon and prints its output.
+     *
+     * @return The exit code of the build
+     */
+    public static int request(final int port, final String[] args)
+    {
+        final ArrayList<String> forward = new ArrayList<String>();
+        boolean stop = false;
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--daemon-client"))
+            {
+                i++;
+            }
+            else if (args[i].equals("--daemon-stop"))
+            {
+                stop = true;
+            }
+            else
+            {
+                forward.add(args[i]);
+            }
+        }
+
+        final File tokenFile = getTokenFile(port);
+        final String token;
+        try
+        {
+            token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim();
+        }
+        catch (final NoSuchFileException e)
+        {
+            Con.initialize();
+            Con.error("No daemon token '%s', is the daemon on port %d running?", tokenFile, port);
+            return 12;
+        }
+        catch (final IOException e)
+        {
+            Con.initialize();
+            Con.error("Can not read daemon token '%s': %s", tokenFile, e.getMessage());
+            return 12;
+        }
+
+        try
+        {
+            final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            try
+            {
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, token);
+                out.writeByte(stop ? CMD_STOP : CMD_BUILD);
+                writeString(out, new File("").getAbsolutePath());
+                out.writeInt(forward.size());
+                for (final String arg : forward)
+                {
+                    writeString(out, arg);
+                }
+                out.flush();
+
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                for (;;)
+                {
+                    final int type = in.readUnsignedByte();
+                    switch (type)
+                    {
+                    case REC_LOG:
+                        System.out.println(readString(in));
+                        break;
+                    case REC_OUTPUT:
+                        // Already part of the log
+                        readString(in);
+                        break;
+                    case REC_EXIT:
+                        return in.readInt();
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                    }
+                }
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        catch (final EOFException e)
+        {
+            Con.initialize();
+            Con.error("Daemon on port %d closed the connection (outdated token?)", port);
+            return 12;
+        }
+        catch (final IOException e)
+        {
+            Con.initialize();
+            Con.error("Daemon on port %d failed: %s", port, e.getMessage());
+            return 12;
+        }
+    }
+
+    /**
+     * Runs the daemon until it receives a stop request.
+     *
+     * @return {@code false} on errors
+     */
+    public static boolean serve(final int port)
+    {
+        final ParseCache.Memory memory = new ParseCache.Memory();
+        final ServerSocket server;
+        try
+        {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        }
+        catch (final IOException e)
+        {
+            Con.error("Can not listen on port %d: %s", port, e.getMessage());
+            return false;
+        }
+        final byte[] token;
+        try
+        {
+            token = createToken(port).getBytes(StandardCharsets.UTF_8);
+        }
+        catch (final IOException e)
+        {
+            Con.error("Can not write daemon token '%s': %s", getTokenFile(port), e.getMessage());
+            try
+            {
+                server.close();
+            }
+            catch (final IOException e1)
+            {
+                // Ignore
+            }
+            return false;
+        }
+        Con.info("Daemon listening on %s, token in '%s'", server.getLocalSocketAddress(), getTokenFile(port));
+        try
+        {
+            try
+            {
+                for (boolean running = true; running;)
+                {
+                    final Socket socket = server.accept();
+                    try
+                    {
+                        running = handle(socket, token, memory);
+                    }
+                    catch (final IOException e)
+                    {
+                        Con.warn("Dropped request: %s", e.getMessage());
+                    }
+                    finally
+                    {
+                        socket.close();
+                    }
+                }
+            }
+            finally
+            {
+                server.close();
+                getTokenFile(port).delete();
+            }
+        }
+        catch (final IOException e)
+        {
+            Con.error("Daemon failed: %s", e.getMessage());
+            return false;
+        }
+        Con.info("Daemon stopped");
+        return true;
+    }
+
+    /**
+     * @return {@code false} if the daemon should stop
+     */
+    private static boolean handle(final Socket socket, final byte[] token, final ParseCache.Memory memory)
+            throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        {
+            throw new IOException("Protocol mismatch");
+        }
+        // Length checked before reading, the client is not trusted yet
+        final int length = in.readInt();
+        if (length != token.length)
+        {
+            throw new IOException("Invalid token");
+        }
+        final byte[] received = new byte[length];
+        in.readFully(received);
+        if (!MessageDigest.isEqual(token, received))
+        {
+            throw new IOException("Invalid token");
+        }
+        final int command = in.readUnsignedByte();
+        final File baseDir = new File(readString(in));
+        final String[] args = new String[in.readInt()];
+        final StringBuilder commandLine = new StringBuilder();
+        for (int i = 0; i < args.length; i++)
+        {
+            args[i] = readString(in);
+            commandLine.append(' ');
+            commandLine.append(args[i]);
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (command == CMD_STOP)
+        {
+            out.writeByte(REC_EXIT);
+            out.writeInt(0);
+            out.flush();
+            return false;
+        }
+        if (command != CMD_BUILD)
+        {
+            throw new IOException("Unknown command " + command);
+        }
+
+        Con.info("Build in '%s':%s", baseDir, commandLine);
+        final long start = System.nanoTime();
+        final List<String> outputs = new ArrayList<String>();
+        final Forward forward = new Forward(out);
+        final Con.Output previous = Con.setOutput(forward);
+        int code;
+        try
+        {
+            code = Main.build(args, baseDir, memory, outputs, null);
+        }
+        catch (final RuntimeException e)
+        {
+            Con.error("Internal error: %s", e);
+            code = 12;
+        }
+        finally
+        {
+            Con.setOutput(previous);
+        }
+        if (forward.error != null)
+        {
+            throw forward.error;
+        }
+        for (final String output : outputs)
+        {
+            out.writeByte(REC_OUTPUT);
+            writeString(out, output);
+        }
+        out.writeByte(REC_EXIT);
+        out.writeInt(code);
+        out.flush();
+        Con.info(" Exit code %d after %d ms, %d file(s) (%d bytes) in memory", code,
+                (System.nanoTime() - start) / 1000000, memory.size(), memory.getBytes());
+        return true;
+    }
+
+    private static void writeString(final DataOutputStream out, final String str) throws IOException
+    {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length < 0)
+        {
+            throw new IOException("Illegal string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends log lines to the client, the build keeps running if the client
+     * went away.
+     */
+    private static class Forward implements Con.Output
+    {
+        private final DataOutputStream out;
+        IOException                    error = null;
+
+        Forward(final DataOutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void line(final Con.Type type, final String line)
+        {
+            if (this.error == null)
+            {
+                try
+                {
+                    this.out.writeByte(REC_LOG);
+                    writeString(this.out, line);
+                    this.out.flush();
+                }
+                catch (final IOException e)
+                {
+                    this.error = e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.cetoneasm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads files from disk, large files get memory mapped.
+ */
+public class DiskFileProvider implements FileProvider
+{
+    private final static int MAP_THRESHOLD = 16384;
+
+    @Override
+    public boolean exists(final String filename)
+    {
+        return new File(filename).exists();
+    }
+
+    @Override
+    public ByteBuffer read(final String filename) throws IOException
+    {
+        final FileInputStream in = new FileInputStream(filename);
+        try
+        {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            if (size >= MAP_THRESHOLD)
+            {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1)
+            {
+                // read all
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
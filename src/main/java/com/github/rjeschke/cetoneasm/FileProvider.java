@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.cetoneasm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies source and binary files to an {@link Assembler}, file names are
+ * normalized absolute paths. Implementations must be thread safe.
+ */
+public interface FileProvider
+{
+    /** Reads files from disk. */
+    public final static FileProvider DISK = new DiskFileProvider();
+
+    public boolean exists(String filename);
+
+    /**
+     * @return The (read only) contents of the given file
+     */
+    public ByteBuffer read(String filename) throws IOException;
+}
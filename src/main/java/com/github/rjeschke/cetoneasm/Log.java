@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.cetoneasm;
+
+/**
+ * Receives the statistics, warnings and messages (.INFO, .WARN) of a build.
+ * Implementations must be thread safe.
+ */
+public interface Log
+{
+    /** Prints to the console using {@link Con}. */
+    public final static Log CONSOLE = new Log()
+                                    {
+                                        @Override
+                                        public void print(final Con.Type type, final FileLocation location,
+                                                final String message)
+                                        {
+                                            Con.print(type, location != null ? location + ": " + message
+                                                    : message);
+                                        }
+                                    };
+
+    /**
+     * @param location
+     *            The source location, may be {@code null}
+     */
+    public void print(Con.Type type, FileLocation location, String message);
+}
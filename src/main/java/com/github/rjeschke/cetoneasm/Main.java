@@ -19,16 +19,26 @@ package com.github.rjeschke.cetoneasm;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import com.github.rjeschke.cetoneasm.emu.FrameTimes;
+import com.github.rjeschke.cetoneasm.emu.InterruptScheduler;
+import com.github.rjeschke.cetoneasm.emu.LoopDetector;
 import com.github.rjeschke.cetoneasm.emu.Machine;
+import com.github.rjeschke.cetoneasm.emu.Profiler;
+import com.github.rjeschke.cetoneasm.emu.TraceDecoder;
+import com.github.rjeschke.cetoneasm.emu.TraceRecorder;
+import com.github.rjeschke.cetoneasm.emu.VideoStandard;
 import com.github.rjeschke.neetutils.cmd.CmdLineParser;
 import com.github.rjeschke.neetutils.collections.Colls;
 
@@ -44,7 +54,16 @@ public class Main
         {
             Con.error("FAILED.");
         }
-        System.exit(code);
+        throw new BuildExit(code);
+    }
+
+    /**
+     * Resolves a (relative) path given on the command line against the
+     * directory the build was requested from.
+     */
+    private static String resolve(final File baseDir, final String path)
+    {
+        return baseDir == null || new File(path).isAbsolute() ? path : new File(baseDir, path).getPath();
     }
 
     private static String getStackTrace(final Throwable t)
@@ -114,6 +133,66 @@ public class Main
         exit(2);
     }
 
+    private static void recordTrace(final Machine machine, final int address, final String file)
+    {
+        try
+        {
+            final TraceRecorder trace = new TraceRecorder(new FileOutputStream(file).getChannel(), 1 << 20);
+            try
+            {
+                machine.execute(address, trace);
+            }
+            finally
+            {
+                trace.close();
+            }
+            Con.info(" Trace: %d record(s), %d bytes written to %s", trace.getRecordCount(), trace.getBytesWritten(),
+                    file);
+        }
+        catch (final IOException e)
+        {
+            Con.error("Failed to write trace: " + e.getMessage());
+            exit(1);
+        }
+    }
+
+    private static boolean decodeTrace(final String file, final boolean showPcReads)
+    {
+        final TraceDecoder decoder = new TraceDecoder(showPcReads, new TraceDecoder.Output()
+        {
+            @Override
+            public void line(final String line)
+            {
+                Con.info(line);
+            }
+        });
+        try
+        {
+            final FileChannel in = new FileInputStream(file).getChannel();
+            try
+            {
+                final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+                while (in.read(buffer) != -1)
+                {
+                    buffer.flip();
+                    decoder.write(buffer);
+                    buffer.clear();
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            decoder.close();
+            return true;
+        }
+        catch (final IOException e)
+        {
+            Con.error("Failed to decode trace: " + e.getMessage());
+            return false;
+        }
+    }
+
     private static void startExternalEmulator(final String emulator, final List<String> commandLine, final String prg)
     {
         final ArrayList<String> command = new ArrayList<String>();
@@ -190,7 +269,44 @@ public class Main
         }
     }
 
-    public static void main(final String[] args) throws TokenizerException
+    public static void main(final String[] args)
+    {
+        final int port = Daemon.getClientPort(args);
+        System.exit(port > 0 ? Daemon.request(port, args) : build(args, null, null, null, null));
+    }
+
+    /**
+     * Runs a complete build for the given command line.
+     *
+     * @param baseDir
+     *            Directory relative paths get resolved against, {@code null}
+     *            for the current directory
+     * @param memory
+     *            Parse results kept across builds, may be {@code null}
+     * @param outputs
+     *            Receives the names of all written files, may be {@code null}
+     * @param inputs
+     *            Receives the names of all read source and binary files, may
+     *            be {@code null}
+     * @return The exit code
+     */
+    static int build(final String[] args, final File baseDir, final ParseCache.Memory memory,
+            final List<String> outputs, final List<String> inputs)
+    {
+        try
+        {
+            run(args, baseDir, memory, outputs != null ? outputs : new ArrayList<String>(),
+                    inputs != null ? inputs : new ArrayList<String>());
+        }
+        catch (final BuildExit e)
+        {
+            return e.code;
+        }
+        return 0;
+    }
+
+    private static void run(final String[] args, final File baseDir, final ParseCache.Memory memory,
+            final List<String> outputs, final List<String> inputs)
     {
         Con.initialize();
         Con.info("cetoneasm v1.0, (c) 2016 René 'Neotec/Cetone' Jeschke");
@@ -215,6 +331,45 @@ public class Main
             exit(0);
         }
 
+        if (config.maxPasses < 1)
+        {
+            Con.error("--max-passes must be at least 1\n");
+            printHelp();
+            exit(5);
+        }
+
+        if (config.emulateFrames < 0)
+        {
+            Con.error("--emulate-frames must not be negative\n");
+            printHelp();
+            exit(5);
+        }
+
+        if (config.daemonPort > 0)
+        {
+            if (memory != null)
+            {
+                Con.error("Already running as daemon\n");
+                exit(5);
+            }
+            exit(Daemon.serve(config.daemonPort) ? 0 : 12);
+        }
+
+        if (config.watch)
+        {
+            if (memory != null)
+            {
+                Con.error("--watch is not supported by the daemon\n");
+                exit(5);
+            }
+            exit(Watcher.watch(args));
+        }
+
+        if (!config.decodeTraceFile.isEmpty())
+        {
+            exit(decodeTrace(resolve(baseDir, config.decodeTraceFile), config.xverboseEmulation) ? 0 : 1);
+        }
+
         if (rest == null || rest.isEmpty())
         {
             Con.error("Missing input file(s)\n");
@@ -224,11 +379,19 @@ public class Main
 
         if (config.outputFile.isEmpty())
         {
-            config.outputFile = new File("a.prg").getAbsolutePath();
+            config.outputFile = new File(resolve(baseDir, "a.prg")).getAbsolutePath();
         }
         else
         {
-            config.outputFile = U.addPrgFileExtension(config.outputFile);
+            config.outputFile = resolve(baseDir, U.addPrgFileExtension(config.outputFile));
+        }
+        if (!config.traceFile.isEmpty())
+        {
+            config.traceFile = resolve(baseDir, config.traceFile);
+        }
+        if (!config.cacheDir.isEmpty())
+        {
+            config.cacheDir = resolve(baseDir, config.cacheDir);
         }
 
         if (config.xverboseEmulation)
@@ -236,26 +399,59 @@ public class Main
             config.verboseEmulation = true;
         }
 
-        if (config.verboseEmulation)
+        if (config.verboseEmulation || !config.traceFile.isEmpty() || !config.playAddress.isEmpty()
+                || config.profileHotSpots > 0)
         {
             config.emulate = true;
         }
 
-        CounterState.get().reset();
-        final Assembler assembler = new Assembler(config);
+        if (!config.variants.isEmpty()
+                && (config.createDisassembly || config.emulate || !config.sweepInputs.isEmpty()
+                        || config.runExternalEmulator))
+        {
+            Con.error("--variants can not be combined with -d, emulation, --sweep or -x\n");
+            exit(5);
+        }
+
+        final Assembler assembler = new Assembler(config, memory, FileProvider.DISK, Log.CONSOLE);
+        try
+        {
+            assemble(config, assembler, rest, baseDir, outputs, inputs);
+        }
+        finally
+        {
+            assembler.getParseScheduler().shutdown();
+            inputs.addAll(assembler.getResolvedFiles());
+        }
+    }
+
+    private static void assemble(final Config config, final Assembler assembler, final List<String> rest,
+            final File baseDir, final List<String> outputs, final List<String> inputs)
+    {
+        if (baseDir != null)
+        {
+            assembler.addIncludePath(baseDir.getPath());
+        }
 
         final List<Action> actions = Colls.list();
 
+        final List<String> inputFiles = Colls.list();
         for (final String file : rest)
         {
-            final String inputFile = U.normalizePath(U.addCasmFileExtension(new File(file).getAbsolutePath()));
-            final Tokenizer tok = new Tokenizer(config, inputFile);
+            final String inputFile = U.normalizePath(U.addCasmFileExtension(new File(resolve(baseDir, file))
+                    .getAbsolutePath()));
+            assembler.getParseScheduler().submit(inputFile);
+            inputFiles.add(inputFile);
+            inputs.add(inputFile);
+        }
+
+        for (final String inputFile : inputFiles)
+        {
             try
             {
-                tok.open();
                 assembler.addIncludeFromFilename(inputFile);
                 Con.info("Parsing '%s'...", inputFile);
-                actions.addAll(Parser.parse(tok));
+                actions.addAll(assembler.getParseScheduler().parse(inputFile));
             }
             catch (final TokenizerException te)
             {
@@ -265,10 +461,11 @@ public class Main
             {
                 reportAssemblerError(ae);
             }
-            finally
-            {
-                tok.close();
-            }
+        }
+
+        if (!config.variants.isEmpty())
+        {
+            exit(assembleVariants(config, assembler, actions, outputs, inputs));
         }
 
         try
@@ -307,11 +504,13 @@ public class Main
                     final String disFile = U.replaceExtension(config.outputFile, ".disasm");
                     Con.info(" Writing to '%s'", disFile);
                     writeString(disFile, disasm.toString());
+                    outputs.add(disFile);
                 }
                 Con.info("Linking");
                 final byte[] prg = Linker.link(config, containers);
                 Con.info(" Writing to '%s'", config.outputFile);
                 writeBinary(config.outputFile, prg);
+                outputs.add(config.outputFile);
                 Con.info(" Code size: $%1$04x(%1$d) bytes", codeSize);
                 Con.info(" Data size: $%1$04x(%1$d) bytes", dataSize);
                 Con.info(" Padding:   $%1$04x(%1$d) bytes", prg.length - 2 - codeSize - dataSize);
@@ -325,8 +524,84 @@ public class Main
                     final Machine machine = new Machine();
                     machine.reset();
                     final int loadAddress = machine.loadPrg(prg);
-                    machine.execute(loadAddress, config.verboseEmulation, config.xverboseEmulation);
+                    final VideoStandard standard = config.ntsc ? VideoStandard.NTSC : VideoStandard.PAL;
+                    if (config.rasterIrqLines > 0 || config.timerIrqLatch > 0 || config.nmiCycle >= 0)
+                    {
+                        final InterruptScheduler scheduler = new InterruptScheduler(standard);
+                        scheduler.setRasterIrq(config.rasterIrqLines);
+                        scheduler.setTimerIrq(config.timerIrqLatch);
+                        scheduler.setNmi(config.nmiCycle);
+                        machine.setInterruptScheduler(scheduler);
+                    }
+                    final Profiler profiler = config.profileHotSpots > 0 && !config.verboseEmulation
+                            && config.traceFile.isEmpty() ? new Profiler() : null;
+                    machine.setProfiler(profiler);
+                    final LoopDetector loops = config.detectLoops ? new LoopDetector() : null;
+                    machine.setLoopDetector(loops);
+                    machine.setMaxCycles(config.emulateMaxCycles);
+                    boolean overBudget = false;
+                    if (!config.playAddress.isEmpty())
+                    {
+                        final int init = config.initAddress.isEmpty() ? loadAddress
+                                : U.parseAddress(assembler, config.initAddress);
+                        final int play = U.parseAddress(assembler, config.playAddress);
+                        Con.info(" Init $%04x, play $%04x", init, play);
+                        final FrameTimes times = new FrameTimes(machine.executeFrames(init, play,
+                                config.emulateFrames, config.emulatePollCycles, config.translateEmulation), standard);
+                        times.report();
+                        if (config.frameBudget > 0)
+                        {
+                            final int over = times.countOver(config.frameBudget);
+                            if (over > 0)
+                            {
+                                Con.error(" %d frame(s) over budget of %d clock cycles", over, config.frameBudget);
+                                overBudget = true;
+                            }
+                            else
+                            {
+                                Con.info(" All frames within budget of %d clock cycles", config.frameBudget);
+                            }
+                        }
+                    }
+                    else if (!config.traceFile.isEmpty())
+                    {
+                        recordTrace(machine, loadAddress, config.traceFile);
+                        outputs.add(config.traceFile);
+                    }
+                    else if (config.verboseEmulation)
+                    {
+                        machine.execute(loadAddress, true, config.xverboseEmulation);
+                    }
+                    else
+                    {
+                        machine.executeFast(loadAddress, config.emulatePollCycles, config.translateEmulation);
+                    }
+                    if (profiler != null)
+                    {
+                        profiler.report(assembler.getLabelMap(), assembler.getSourceMap(), config.profileHotSpots);
+                    }
+                    if (loops != null)
+                    {
+                        loops.report(assembler.getLabelMap(), assembler.getSourceMap());
+                    }
                     Con.info("Finished emulation");
+                    if (overBudget)
+                    {
+                        exit(7);
+                    }
+                    if ((loops != null && loops.isLoopDetected()) || machine.isCycleLimitReached())
+                    {
+                        exit(9);
+                    }
+                }
+
+                if (!config.sweepInputs.isEmpty())
+                {
+                    Con.info("Sweeping inputs");
+                    if (!SweepRunner.run(config, assembler, prg))
+                    {
+                        exit(8);
+                    }
                 }
 
                 if (config.runExternalEmulator)
@@ -344,6 +619,87 @@ public class Main
         {
             reportLinkerError(le);
         }
+
+        reportParseCache(assembler);
         exit(0);
     }
+
+    /**
+     * Compiles all --variants on a single parse and writes one PRG per
+     * variant.
+     *
+     * @return The exit code
+     */
+    private static int assembleVariants(final Config config, final Assembler assembler, final List<Action> actions,
+            final List<String> outputs, final List<String> inputs)
+    {
+        boolean failed = false;
+        try
+        {
+            final List<Variants.Variant> variants = Variants.parse(config.variants);
+            Con.info("Generating code");
+            assembler.prepare(actions);
+            Con.info("Generating %d variant(s)", variants.size());
+            final long start = System.nanoTime();
+            final List<Build.Result> results = Variants.run(config, assembler, config.defines, variants,
+                    config.variantThreads);
+            final long time = System.nanoTime() - start;
+            for (int i = 0; i < variants.size(); i++)
+            {
+                final Variants.Variant variant = variants.get(i);
+                final Build.Result result = results.get(i);
+                Con.info("Variant '%s'", variant.getName());
+                for (final Build.Diagnostic d : result.getDiagnostics())
+                {
+                    Log.CONSOLE.print(d.getType(), d.getLocation(), d.getMessage());
+                }
+                inputs.addAll(result.getFiles());
+                if (!result.isSuccess())
+                {
+                    failed = true;
+                }
+                else if (result.getImage() != null)
+                {
+                    final byte[] prg = result.getImage();
+                    final String prgFile = U.replaceExtension(config.outputFile, "-" + variant.getName() + ".prg");
+                    Con.info(" Writing to '%s'", prgFile);
+                    writeBinary(prgFile, prg);
+                    outputs.add(prgFile);
+                    Con.info(" PRG size:  $%1$04x(%1$d) bytes, %2$d blocks", prg.length, (prg.length + 253) / 254);
+                }
+            }
+            Con.info("%d variant(s) compiled in %.3fs", variants.size(), time / 1e9);
+        }
+        catch (final AssemblerException ae)
+        {
+            reportAssemblerError(ae);
+        }
+
+        reportParseCache(assembler);
+        return failed ? 2 : 0;
+    }
+
+    private static void reportParseCache(final Assembler assembler)
+    {
+        if (assembler.getParseCache().isEnabled())
+        {
+            Con.info("Parse cache: %d hit(s), %d miss(es)", assembler.getParseCache().getHits(),
+                    assembler.getParseCache().getMisses());
+        }
+    }
+
+    /**
+     * Ends a build, thrown by {@link #exit(int)}.
+     */
+    private static class BuildExit extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+        final int                 code;
+
+        BuildExit(final int code)
+        {
+            super(null, null, false, false);
+            this.code = code;
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rjeschke.cetoneasm;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves files from memory, e.g. for builds embedded into other tools (see
+ * {@link Build}).
+ */
+public class MemoryFileProvider implements FileProvider
+{
+    private final ConcurrentHashMap<String, ByteBuffer> files = new ConcurrentHashMap<String, ByteBuffer>();
+
+    /**
+     * Adds (or replaces) a file, relative names get resolved against the
+     * current directory.
+     */
+    public void put(final String filename, final byte[] contents)
+    {
+        this.files.put(U.normalizePath(new File(filename).getAbsolutePath()),
+                ByteBuffer.wrap(contents.clone()).asReadOnlyBuffer());
+    }
+
+    @Override
+    public boolean exists(final String filename)
+    {
+        return this.files.containsKey(filename);
+    }
+
+    @Override
+    public ByteBuffer read(final String filename) throws IOException
+    {
+        final ByteBuffer file = this.files.get(filename);
+        if (file == null)
+        {
+            throw new FileNotFoundException(filename);
+        }
+        return file.duplicate();
+    }
+}
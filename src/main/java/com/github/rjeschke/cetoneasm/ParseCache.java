@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.rjeschke.cetoneasm.actions.ActionCodec;
+
+/**
+ * Parses source files (thread safe), optionally caching the resulting action
+ * lists on disk and/or in a {@link Memory} that outlives a single build.
+ * <p>
+ * Cache entries are keyed by the normalized file name and validated against a
+ * hash of the file content (and file encoding), so unchanged files get loaded
+ * without running the tokenizer and parser. Entries are kept in their encoded
+ * form, every hit decodes a fresh action list.
+ * </p>
+ */
+public class ParseCache
+{
+    private final static int    MAGIC   = 0x43414331;
+    private final static int    VERSION = 1;
+    private final Config        config;
+    private final File          directory;
+    private final Memory        memory;
+    private final FileProvider  files;
+    private final Log           log;
+    private final AtomicInteger hits    = new AtomicInteger();
+    private final AtomicInteger misses  = new AtomicInteger();
+
+    /**
+     * @param memory
+     *            The in-memory cache to use (in addition to
+     *            {@code --cache-dir}), may be {@code null}
+     */
+    public ParseCache(final Config config, final Memory memory, final FileProvider files, final Log log)
+    {
+        this.config = config;
+        this.directory = config.cacheDir.isEmpty() ? null : new File(config.cacheDir);
+        this.memory = memory;
+        this.files = files;
+        this.log = log;
+    }
+
+    public boolean isEnabled()
+    {
+        return this.directory != null || this.memory != null;
+    }
+
+    public int getHits()
+    {
+        return this.hits.get();
+    }
+
+    public int getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the actions of the given file, jump and counter ids are local to
+     * the file (see {@link com.github.rjeschke.cetoneasm.actions.IdRemapper}).
+     */
+    public List<Action> parse(final String filename) throws TokenizerException, AssemblerException
+    {
+        final Tokenizer tok = new Tokenizer(this.config, filename);
+        final byte[] source;
+        try
+        {
+            final ByteBuffer buffer = this.files.read(filename);
+            source = new byte[buffer.remaining()];
+            buffer.get(source);
+        }
+        catch (final IOException e)
+        {
+            throw new TokenizerException(tok, "Failed to open file '" + filename + "'", e);
+        }
+        if (!this.isEnabled())
+        {
+            return parse(tok, source);
+        }
+
+        final byte[] hash = this.hash(source);
+        final File cacheFile = this.directory == null ? null : new File(this.directory,
+                toHex(this.hash(filename.getBytes(StandardCharsets.UTF_8))) + ".cac");
+        byte[] entry = this.memory != null ? this.memory.entries.get(filename) : null;
+        List<Action> cached = entry != null ? decode(entry, hash, filename) : null;
+        if (cached == null && cacheFile != null && cacheFile.exists())
+        {
+            entry = readFile(cacheFile.getPath());
+            cached = entry != null ? decode(entry, hash, cacheFile.getPath()) : null;
+            if (cached != null && this.memory != null)
+            {
+                this.memory.entries.put(filename, entry);
+            }
+        }
+        if (cached != null)
+        {
+            this.hits.incrementAndGet();
+            return cached;
+        }
+
+        this.misses.incrementAndGet();
+        final List<Action> actions = parse(tok, source);
+        entry = this.encode(hash, actions, filename);
+        if (entry != null)
+        {
+            if (this.memory != null)
+            {
+                this.memory.entries.put(filename, entry);
+            }
+            if (cacheFile != null)
+            {
+                this.writeCached(cacheFile, entry);
+            }
+        }
+        return actions;
+    }
+
+    private static List<Action> parse(final Tokenizer tok, final byte[] source) throws TokenizerException,
+            AssemblerException
+    {
+        try
+        {
+            tok.open(new ByteArrayInputStream(source));
+            return Parser.parse(tok);
+        }
+        finally
+        {
+            tok.close();
+        }
+    }
+
+    /**
+     * @return The decoded actions or {@code null} if the entry is outdated or
+     *         corrupt.
+     */
+    private List<Action> decode(final byte[] entry, final byte[] hash, final String name)
+    {
+        try
+        {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                return null;
+            }
+            final byte[] h = new byte[in.readUnsignedByte()];
+            in.readFully(h);
+            if (!Arrays.equals(h, hash))
+            {
+                return null;
+            }
+            return ActionCodec.read(in);
+        }
+        catch (final IOException e)
+        {
+            this.log.print(Con.Type.WARNING, null,
+                    String.format("  Ignoring corrupt cache file '%s': %s", name, e.getMessage()));
+            return null;
+        }
+    }
+
+    private byte[] encode(final byte[] hash, final List<Action> actions, final String name)
+    {
+        try
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(hash.length);
+            out.write(hash);
+            ActionCodec.write(out, actions);
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (final IOException e)
+        {
+            this.log.print(Con.Type.WARNING, null, String.format("  Could not cache '%s': %s", name, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void writeCached(final File file, final byte[] entry)
+    {
+        try
+        {
+            if (!this.directory.isDirectory() && !this.directory.mkdirs() && !this.directory.isDirectory())
+            {
+                throw new IOException("Can not create directory");
+            }
+            final File temp = File.createTempFile("casm", ".tmp", this.directory);
+            try
+            {
+                final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+                try
+                {
+                    out.write(entry);
+                }
+                finally
+                {
+                    out.close();
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally
+            {
+                temp.delete();
+            }
+        }
+        catch (final IOException e)
+        {
+            this.log.print(Con.Type.WARNING, null,
+                    String.format("  Could not write cache file '%s': %s", file, e.getMessage()));
+        }
+    }
+
+    private static byte[] readFile(final String filename)
+    {
+        try
+        {
+            final InputStream in = new FileInputStream(filename);
+            try
+            {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buf = new byte[4096];
+                for (int r = in.read(buf); r != -1; r = in.read(buf))
+                {
+                    out.write(buf, 0, r);
+                }
+                return out.toByteArray();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            return null;
+        }
+    }
+
+    private byte[] hash(final byte[] data)
+    {
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(this.config.fileEncoding.getBytes(StandardCharsets.UTF_8));
+            md.update((byte)0);
+            return md.digest(data);
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("WTF", e);
+        }
+    }
+
+    private static String toHex(final byte[] data)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b : data)
+        {
+            sb.append(String.format("%02x", b & 255));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse results kept in memory across builds (e.g. by the {@link Daemon}),
+     * thread safe.
+     */
+    public static class Memory
+    {
+        final ConcurrentHashMap<String, byte[]> entries = new ConcurrentHashMap<String, byte[]>();
+
+        public int size()
+        {
+            return this.entries.size();
+        }
+
+        /**
+         * @return The number of bytes used by all entries.
+         */
+        public long getBytes()
+        {
+            long bytes = 0;
+            for (final byte[] entry : this.entries.values())
+            {
+                bytes += entry.length;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.rjeschke.cetoneasm.actions.IdRemapper;
+import com.github.rjeschke.cetoneasm.actions.IncludeAction;
+
+/**
+ * Parallel front end: tokenizes and parses source files on a
+ * {@link ForkJoinPool} ahead of time.
+ * <p>
+ * Every parsed file gets scanned for {@code .INCLUDE}s, which are resolved
+ * speculatively and scheduled as well. Pass 1 still splices includes one by
+ * one in source order and just picks up the pre-parsed results, jump and
+ * counter ids get remapped on the calling thread at that point, so the output
+ * is identical to the sequential path.
+ * </p>
+ */
+public class ParseScheduler
+{
+    private final ParseCache                 parseCache;
+    private final CounterState               counters;
+    private final FileProvider               files;
+    private final ForkJoinPool               pool;
+    private final HashMap<String, ParseTask> tasks        = new HashMap<String, ParseTask>();
+    private final HashSet<String>            submitted    = new HashSet<String>();
+    private final ArrayList<String>          includePaths = new ArrayList<String>();
+    private int                              preParsed    = 0;
+
+    /**
+     * @param counters
+     *            The ids all parsed files get remapped to
+     */
+    public ParseScheduler(final Config config, final ParseCache parseCache, final CounterState counters,
+            final FileProvider files)
+    {
+        this.parseCache = parseCache;
+        this.counters = counters;
+        this.files = files;
+        final int threads = config.parserThreads > 0 ? config.parserThreads : Runtime.getRuntime()
+                .availableProcessors();
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    public boolean isParallel()
+    {
+        return this.pool != null;
+    }
+
+    /**
+     * @return The number of files taken from the pre-parsed results.
+     */
+    public int getPreParsedCount()
+    {
+        return this.preParsed;
+    }
+
+    /**
+     * Schedules the given (normalized) file and all its includes for parsing.
+     */
+    public void submit(final String filename)
+    {
+        if (this.pool == null)
+        {
+            return;
+        }
+        synchronized (this.tasks)
+        {
+            if (this.submitted.add(filename))
+            {
+                final ParseTask task = new ParseTask(filename);
+                this.tasks.put(filename, task);
+                this.pool.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Returns the actions for the given (normalized) file, waiting for a
+     * scheduled parse or parsing it right away if it was not scheduled.
+     */
+    public List<Action> parse(final String filename) throws TokenizerException, AssemblerException
+    {
+        final ParseTask task;
+        synchronized (this.tasks)
+        {
+            task = this.tasks.remove(filename);
+        }
+        if (task == null)
+        {
+            return IdRemapper.remap(this.parseCache.parse(filename), this.counters);
+        }
+        task.join();
+        if (task.tokenizerException != null)
+        {
+            throw task.tokenizerException;
+        }
+        if (task.assemblerException != null)
+        {
+            throw task.assemblerException;
+        }
+        this.preParsed++;
+        return IdRemapper.remap(task.actions, this.counters);
+    }
+
+    public void shutdown()
+    {
+        if (this.pool != null)
+        {
+            this.pool.shutdownNow();
+        }
+    }
+
+    private String resolveInclude(final String includer, final String name)
+    {
+        final String filename = U.addCasmFileExtension(name);
+        String norm = U.normalizePath(new File(filename).getAbsolutePath());
+        if (this.files.exists(norm))
+        {
+            return norm;
+        }
+        norm = U.normalizePath(new File(new File(includer).getParent(), filename).getAbsolutePath());
+        if (this.files.exists(norm))
+        {
+            return norm;
+        }
+        synchronized (this.includePaths)
+        {
+            for (final String inc : this.includePaths)
+            {
+                norm = U.normalizePath(new File(inc, filename).getAbsolutePath());
+                if (this.files.exists(norm))
+                {
+                    return norm;
+                }
+            }
+        }
+        return null;
+    }
+
+    private class ParseTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        final String              filename;
+        List<Action>              actions;
+        TokenizerException        tokenizerException;
+        AssemblerException        assemblerException;
+
+        public ParseTask(final String filename)
+        {
+            this.filename = filename;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final String dir = new File(this.filename).getParent();
+            synchronized (ParseScheduler.this.includePaths)
+            {
+                if (dir != null && !ParseScheduler.this.includePaths.contains(dir))
+                {
+                    ParseScheduler.this.includePaths.add(dir);
+                }
+            }
+            try
+            {
+                this.actions = ParseScheduler.this.parseCache.parse(this.filename);
+            }
+            catch (final TokenizerException e)
+            {
+                this.tokenizerException = e;
+                return;
+            }
+            catch (final AssemblerException e)
+            {
+                this.assemblerException = e;
+                return;
+            }
+            for (final Action a : this.actions)
+            {
+                if (a instanceof IncludeAction)
+                {
+                    final String include = ParseScheduler.this.resolveInclude(this.filename,
+                            ((IncludeAction)a).getFileName());
+                    if (include != null)
+                    {
+                        ParseScheduler.this.submit(include);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -49,11 +49,12 @@ import com.github.rjeschke.cetoneasm.actions.WriteStringAction;
 
 public class Parser
 {
-    private final List<Token> tokens;
-    private int               position          = 0;
-    private final Assembler   evalRuntime       = new Assembler(new Config());
-    private boolean           topLevel          = true;
-    private boolean           inMacroDefinition = false;
+    private final List<Token>  tokens;
+    private int                position          = 0;
+    private final Assembler    evalRuntime       = new Assembler(new Config());
+    private final CounterState counters          = new CounterState();
+    private boolean            topLevel          = true;
+    private boolean            inMacroDefinition = false;
 
     private Parser(final List<Token> tokens)
     {
@@ -129,10 +130,10 @@ public class Parser
                 throw new AssemblerException(this.getFileLocation(), "',' expected");
             }
             this.consume();
-            cid = CounterState.get().newId();
+            cid = this.counters.newId();
             actions.add(new CounterSetAction(ds, cid));
-            start = new JumpIdAction(ds);
-            end = new JumpIdAction(ds);
+            start = new JumpIdAction(ds, this.counters);
+            end = new JumpIdAction(ds, this.counters);
             actions.add(start);
             actions.add(new CounterCompareAction(ds, cid, end.getID()));
         }
@@ -167,7 +168,7 @@ public class Parser
 
     private void parseConditionalBlock(final List<Action> actions) throws AssemblerException
     {
-        final JumpIdAction endLabel = new JumpIdAction(this.getFileLocation());
+        final JumpIdAction endLabel = new JumpIdAction(this.getFileLocation(), this.counters);
         boolean hasElse = false;
         for (;;)
         {
@@ -197,7 +198,7 @@ public class Parser
                 {
                     throw new AssemblerException(this.getFileLocation(), mc + " after ELSE");
                 }
-                final JumpIdAction endBlock = new JumpIdAction(this.getFileLocation());
+                final JumpIdAction endBlock = new JumpIdAction(this.getFileLocation(), this.counters);
                 actions.addAll(this.parseExpression());
                 actions.add(new ConditionalJumpAction(this.getFileLocation(), endBlock.getID()));
                 this.parse(actions, "ELIF", "ELSE", "ENDIF");
@@ -297,9 +298,9 @@ public class Parser
             actions.add(new SetVariableAction(fl, incVarName));
         }
 
-        final int cid = CounterState.get().newId();
-        final JumpIdAction start = new JumpIdAction(fl);
-        final JumpIdAction end = new JumpIdAction(fl);
+        final int cid = this.counters.newId();
+        final JumpIdAction start = new JumpIdAction(fl, this.counters);
+        final JumpIdAction end = new JumpIdAction(fl, this.counters);
         actions.add(new CounterSetAction(fl, cid));
         actions.add(start);
         actions.add(new CounterCompareAction(fl, cid, end.getID()));
@@ -325,8 +326,8 @@ public class Parser
     private void parseWhile(final List<Action> actions) throws AssemblerException
     {
         final FileLocation fl = this.getFileLocation();
-        final JumpIdAction start = new JumpIdAction(fl);
-        final JumpIdAction end = new JumpIdAction(fl);
+        final JumpIdAction start = new JumpIdAction(fl, this.counters);
+        final JumpIdAction end = new JumpIdAction(fl, this.counters);
         actions.add(start);
         actions.addAll(this.parseExpression());
         actions.add(new ConditionalJumpAction(fl, end.getID()));
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.rjeschke.cetoneasm.actions.SetVariableAction;
+import com.github.rjeschke.cetoneasm.emu.InputSweep;
+import com.github.rjeschke.cetoneasm.emu.Machine;
+
+/**
+ * Command line front end for {@link InputSweep}.
+ * <p>
+ * Inputs are given as a comma separated list of {@code location=from..to}
+ * (or {@code location=value}), where location is {@code A}, {@code X},
+ * {@code Y} or an address/label with an optional {@code .W} suffix for words.
+ * Results are checked using an assembler expression, which can use the
+ * inputs ({@code IN1}, {@code IN2}, ...), the registers after the call
+ * ({@code A}, {@code X}, {@code Y}, {@code SR}) and the memory outputs
+ * ({@code OUT1}, {@code OUT2}, ...).
+ * </p>
+ */
+public class SweepRunner
+{
+    /**
+     * @return {@code false} if any run failed or timed out.
+     */
+    public static boolean run(final Config config, final Assembler assembler, final byte[] prg)
+            throws AssemblerException
+    {
+        final int callAddress = config.sweepCall.isEmpty() ? (prg[0] & 255) | ((prg[1] & 255) << 8)
+                : U.parseAddress(assembler, config.sweepCall);
+        final InputSweep sweep = new InputSweep(prg, callAddress);
+        for (final String in : split(config.sweepInputs))
+        {
+            final int eq = in.indexOf('=');
+            if (eq < 0)
+            {
+                throw new AssemblerException(null, "Invalid sweep input '" + in + "', '=' expected");
+            }
+            final String range = in.substring(eq + 1).trim();
+            final int dots = range.indexOf("..");
+            final long from = U.parseAddress(assembler, dots < 0 ? range : range.substring(0, dots));
+            final long to = dots < 0 ? from : U.parseAddress(assembler, range.substring(dots + 2));
+            final Location loc = parseLocation(assembler, in.substring(0, eq));
+            if (Math.max(from, to) > (loc.isWord ? 65535 : 255))
+            {
+                throw new AssemblerException(null, "Sweep input out of range: '" + in + "'");
+            }
+            sweep.addInput(loc.location, loc.isWord, from, to);
+        }
+        final List<Location> outputs = new ArrayList<Location>();
+        for (final String out : split(config.sweepOutputs))
+        {
+            final Location loc = parseLocation(assembler, out);
+            if (loc.location < 0)
+            {
+                throw new AssemblerException(null, "Sweep outputs must be memory locations: '" + out + "'");
+            }
+            outputs.add(loc);
+        }
+        if (!config.sweepCheck.isEmpty())
+        {
+            sweep.setCheck(new ExpressionCheck(config, config.sweepCheck, sweep.getInputCount(), outputs));
+        }
+        sweep.setMaxCycles(config.sweepMaxCycles);
+        sweep.setThreads(config.sweepThreads);
+
+        Con.info(" Calling $%04x for %d input combination(s)", callAddress, sweep.getCombinations());
+        final long start = System.nanoTime();
+        final InputSweep.Result result = sweep.run();
+        Con.info(" Took %.3f s", (System.nanoTime() - start) / 1e9);
+        result.report();
+        return result.isSuccess();
+    }
+
+    private static List<String> split(final String list)
+    {
+        final List<String> ret = new ArrayList<String>();
+        for (final String s : list.split(","))
+        {
+            if (!s.trim().isEmpty())
+            {
+                ret.add(s.trim());
+            }
+        }
+        return ret;
+    }
+
+    private static Location parseLocation(final Assembler assembler, final String str) throws AssemblerException
+    {
+        final String s = str.trim().toUpperCase();
+        if (s.equals("A"))
+        {
+            return new Location(InputSweep.REG_A, false);
+        }
+        if (s.equals("X"))
+        {
+            return new Location(InputSweep.REG_X, false);
+        }
+        if (s.equals("Y"))
+        {
+            return new Location(InputSweep.REG_Y, false);
+        }
+        final boolean isWord = s.endsWith(".W");
+        return new Location(U.parseAddress(assembler, isWord ? s.substring(0, s.length() - 2) : s), isWord);
+    }
+
+    private static class Location
+    {
+        final int     location;
+        final boolean isWord;
+
+        public Location(final int location, final boolean isWord)
+        {
+            this.location = location;
+            this.isWord = isWord;
+        }
+    }
+
+    /**
+     * Evaluates an assembler expression, every thread gets its own evaluation
+     * runtime.
+     */
+    private static class ExpressionCheck implements InputSweep.Check
+    {
+        private final List<Action>             expression;
+        private final int                      inputCount;
+        private final List<Location>           outputs;
+        private final ThreadLocal<EvalRuntime> runtimes = new ThreadLocal<EvalRuntime>();
+
+        public ExpressionCheck(final Config config, final String expression, final int inputCount,
+                final List<Location> outputs) throws AssemblerException
+        {
+            this.inputCount = inputCount;
+            this.outputs = outputs;
+            final Tokenizer tokenizer = new Tokenizer(config, "<sweep-check>");
+            try
+            {
+                tokenizer.open(new ByteArrayInputStream(("SWEEP_CHECK = " + expression + "\n").getBytes("UTF-8")));
+                final List<Action> actions = Parser.parse(tokenizer);
+                if (actions.isEmpty() || !(actions.get(actions.size() - 1) instanceof SetVariableAction))
+                {
+                    throw new AssemblerException(null, "Invalid sweep check expression '" + expression + "'");
+                }
+                this.expression = actions.subList(0, actions.size() - 1);
+            }
+            catch (final TokenizerException e)
+            {
+                throw new AssemblerException(null, "Invalid sweep check expression '" + expression + "'", e);
+            }
+            catch (final UnsupportedEncodingException e)
+            {
+                throw new AssemblerException(null, "Invalid sweep check expression '" + expression + "'", e);
+            }
+            finally
+            {
+                tokenizer.close();
+            }
+        }
+
+        @Override
+        public boolean check(final long[] inputs, final Machine machine)
+        {
+            EvalRuntime rt = this.runtimes.get();
+            if (rt == null)
+            {
+                rt = new EvalRuntime(this.inputCount, this.outputs.size());
+                this.runtimes.set(rt);
+            }
+            final SymbolTable symbols = rt.assembler.getSymbols();
+            for (int i = 0; i < rt.inputs.length; i++)
+            {
+                symbols.set(rt.inputs[i], inputs[i]);
+            }
+            symbols.set(rt.a, machine.getCpu().getA());
+            symbols.set(rt.x, machine.getCpu().getX());
+            symbols.set(rt.y, machine.getCpu().getY());
+            symbols.set(rt.sr, machine.getCpu().getSR());
+            for (int i = 0; i < rt.outputs.length; i++)
+            {
+                final Location loc = this.outputs.get(i);
+                long value = machine.readRam(loc.location);
+                if (loc.isWord)
+                {
+                    value |= machine.readRam(loc.location + 1) << 8;
+                }
+                symbols.set(rt.outputs[i], value);
+            }
+            try
+            {
+                return rt.assembler.evalExpression(this.expression) != 0;
+            }
+            catch (final AssemblerException e)
+            {
+                return false;
+            }
+            catch (final ArithmeticException e)
+            {
+                return false;
+            }
+        }
+    }
+
+    private static class EvalRuntime
+    {
+        final Assembler assembler;
+        final int[]     inputs;
+        final int       a;
+        final int       x;
+        final int       y;
+        final int       sr;
+        final int[]     outputs;
+
+        public EvalRuntime(final int inputCount, final int outputCount)
+        {
+            final Config config = new Config();
+            config.parserThreads = 1;
+            this.assembler = new Assembler(config);
+            final SymbolTable symbols = this.assembler.getSymbols();
+            this.inputs = new int[inputCount];
+            for (int i = 0; i < inputCount; i++)
+            {
+                this.inputs[i] = symbols.intern("IN" + (i + 1), false, -1, false);
+            }
+            this.a = symbols.intern("A", false, -1, false);
+            this.x = symbols.intern("X", false, -1, false);
+            this.y = symbols.intern("Y", false, -1, false);
+            this.sr = symbols.intern("SR", false, -1, false);
+            this.outputs = new int[outputCount];
+            for (int i = 0; i < outputCount; i++)
+            {
+                this.outputs[i] = symbols.intern("OUT" + (i + 1), false, -1, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Slot indexed storage for variables and labels.
+ * <p>
+ * Every (mangled) symbol name gets interned into a dense slot once during pass
+ * 3, values live in a {@code long[]}, flags in {@link BitSet}s. Local symbols
+ * remember the slot of the parent label they were declared under, the macro
+ * scope flag marks macro labels and locals living below them.
+ * </p>
+ */
+public class SymbolTable
+{
+    private final HashMap<String, Integer> slots       = new HashMap<String, Integer>();
+    private String[]                       names       = new String[64];
+    private long[]                         values      = new long[64];
+    private int[]                          parents     = new int[64];
+    private final BitSet                   initialized = new BitSet();
+    private final BitSet                   wasRead     = new BitSet();
+    private final BitSet                   labels      = new BitSet();
+    private final BitSet                   macroScope  = new BitSet();
+    private int                            size        = 0;
+
+    public void clear()
+    {
+        this.slots.clear();
+        Arrays.fill(this.names, 0, this.size, null);
+        this.initialized.clear();
+        this.wasRead.clear();
+        this.labels.clear();
+        this.macroScope.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Replaces the contents of this table by a copy of the given one.
+     */
+    public void copyFrom(final SymbolTable other)
+    {
+        this.clear();
+        this.slots.putAll(other.slots);
+        this.names = other.names.clone();
+        this.values = other.values.clone();
+        this.parents = other.parents.clone();
+        this.initialized.or(other.initialized);
+        this.wasRead.or(other.wasRead);
+        this.labels.or(other.labels);
+        this.macroScope.or(other.macroScope);
+        this.size = other.size;
+    }
+
+    /**
+     * Interns the given (mangled) name.
+     *
+     * @param name
+     *            The symbol name
+     * @param isLabel
+     *            {@code true} for labels
+     * @param parent
+     *            Parent label slot for local symbols, {@code -1} for global ones
+     * @param isMacroScope
+     *            {@code true} for macro labels and their locals
+     * @return The slot
+     */
+    public int intern(final String name, final boolean isLabel, final int parent, final boolean isMacroScope)
+    {
+        final Integer slot = this.slots.get(name);
+        if (slot != null)
+        {
+            return slot.intValue();
+        }
+        if (this.size == this.values.length)
+        {
+            final int len = this.size * 2;
+            this.names = Arrays.copyOf(this.names, len);
+            this.values = Arrays.copyOf(this.values, len);
+            this.parents = Arrays.copyOf(this.parents, len);
+        }
+        final int s = this.size++;
+        this.slots.put(name, Integer.valueOf(s));
+        this.names[s] = name;
+        this.values[s] = 0;
+        this.parents[s] = parent;
+        this.labels.set(s, isLabel);
+        this.macroScope.set(s, isMacroScope);
+        return s;
+    }
+
+    public int indexOf(final String name)
+    {
+        final Integer slot = this.slots.get(name);
+        return slot != null ? slot.intValue() : -1;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public int getLabelCount()
+    {
+        return this.labels.cardinality();
+    }
+
+    public String getName(final int slot)
+    {
+        return this.names[slot];
+    }
+
+    public int getParent(final int slot)
+    {
+        return this.parents[slot];
+    }
+
+    public boolean isLabel(final int slot)
+    {
+        return this.labels.get(slot);
+    }
+
+    public boolean isMacroScope(final int slot)
+    {
+        return this.macroScope.get(slot);
+    }
+
+    public boolean isInitialized(final int slot)
+    {
+        return this.initialized.get(slot);
+    }
+
+    public boolean wasRead(final int slot)
+    {
+        return this.wasRead.get(slot);
+    }
+
+    public long get(final int slot)
+    {
+        this.wasRead.set(slot);
+        return this.values[slot];
+    }
+
+    public void set(final int slot, final long value)
+    {
+        this.values[slot] = value;
+        this.initialized.set(slot);
+    }
+
+    public long[] copyValues()
+    {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    public BitSet copyInitialized()
+    {
+        return (BitSet)this.initialized.clone();
+    }
+
+    /**
+     * Returns all slots (starting at {@code from}) whose value or initialized
+     * state differs from the given copies.
+     */
+    public List<Integer> getChanged(final long[] oldValues, final BitSet oldInitialized, final int from)
+    {
+        final ArrayList<Integer> changed = new ArrayList<Integer>();
+        for (int slot = from; slot < this.size; slot++)
+        {
+            if (this.values[slot] != oldValues[slot] || this.initialized.get(slot) != oldInitialized.get(slot))
+            {
+                changed.add(Integer.valueOf(slot));
+            }
+        }
+        return changed;
+    }
+
+    public void reset(final int slot)
+    {
+        this.values[slot] = 0;
+        this.initialized.clear(slot);
+        this.wasRead.clear(slot);
+    }
+}
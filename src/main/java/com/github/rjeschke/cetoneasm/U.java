@@ -85,6 +85,45 @@ public final class U
         return filename.substring(0, idx) + with;
     }
 
+    /**
+     * Parses an emulation address given on the command line, either a number
+     * ({@code $c000}, {@code 0xc000} or decimal) or the name of a label or
+     * variable.
+     */
+    public static int parseAddress(final Assembler assembler, final String str) throws AssemblerException
+    {
+        final String s = str.trim();
+        long value;
+        try
+        {
+            if (s.startsWith("$"))
+            {
+                value = Long.parseLong(s.substring(1), 16);
+            }
+            else if (s.startsWith("0x") || s.startsWith("0X"))
+            {
+                value = Long.parseLong(s.substring(2), 16);
+            }
+            else if (!s.isEmpty() && Character.isDigit(s.charAt(0)))
+            {
+                value = Long.parseLong(s);
+            }
+            else
+            {
+                value = assembler.getVariableValue(s.toUpperCase());
+            }
+        }
+        catch (final NumberFormatException e)
+        {
+            throw new AssemblerException(null, "Invalid address '" + str + "'");
+        }
+        if (value < 0 || value > 65535)
+        {
+            throw new AssemblerException(null, "Address out of range: '" + str + "'");
+        }
+        return (int)value;
+    }
+
     public static int readWord(final byte[] buffer, final int offset)
     {
         return (buffer[offset] & 255) | ((buffer[(offset + 1) & 65535] & 255) << 8);
@@ -31,6 +31,24 @@ public enum UnaryOperator
         return this.priority;
     }
 
+    public long apply(final long a)
+    {
+        switch (this)
+        {
+        case HIGH:
+            return (a >> 8) & 255;
+        case LOW:
+            return a & 255;
+        case NOT:
+            return a == 0 ? 1 : 0;
+        case NEG:
+            return ~a;
+        case MINUS:
+            return -a;
+        }
+        return 0;
+    }
+
     public static UnaryOperator fromToken(final Token token)
     {
         switch (token.getType())
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds several variants of one program (e.g. PAL/NTSC, with and without
+ * music) from a single parse.
+ * <p>
+ * Variants are given as {@code name:defines} separated by {@code ;}, the
+ * defines work like {@code -D}. The sources get parsed and run through passes 1
+ * to 3 once, every variant then continues on a
+ * {@link Assembler#fork(Config, Log) fork} of this state: optimization (which
+ * depends on the defines), lowering and the assembly passes of all variants
+ * run in parallel.
+ * </p>
+ */
+public class Variants
+{
+    /**
+     * @return The variants given by the {@code --variants} syntax.
+     */
+    public static List<Variant> parse(final String variants) throws AssemblerException
+    {
+        final List<Variant> ret = new ArrayList<Variant>();
+        final HashSet<String> names = new HashSet<String>();
+        for (final String v : variants.split(";"))
+        {
+            if (v.trim().isEmpty())
+            {
+                continue;
+            }
+            final int colon = v.indexOf(':');
+            final String name = (colon < 0 ? v : v.substring(0, colon)).trim();
+            if (!name.matches("[A-Za-z0-9_.\\-]+"))
+            {
+                throw new AssemblerException(null, "Invalid variant name '" + name + "'");
+            }
+            if (!names.add(name.toLowerCase()))
+            {
+                throw new AssemblerException(null, "Duplicate variant '" + name + "'");
+            }
+            ret.add(new Variant(name, colon < 0 ? "" : v.substring(colon + 1)));
+        }
+        return ret;
+    }
+
+    /**
+     * Compiles and links all variants of the given assembler.
+     *
+     * @param prepared
+     *            An assembler after {@link Assembler#prepare(List)}
+     * @param defines
+     *            Defines for all variants (like {@code -D}), the defines of a
+     *            variant get assigned after these
+     * @param threads
+     *            Number of threads, 0 = one per CPU
+     * @return The results in order of the given variants
+     */
+    public static List<Build.Result> run(final Config config, final Assembler prepared, final String defines,
+            final List<Variant> variants, final int threads)
+    {
+        final int t = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(t, variants.size())));
+        try
+        {
+            final List<ForkJoinTask<Build.Result>> tasks = new ArrayList<ForkJoinTask<Build.Result>>();
+            for (final Variant variant : variants)
+            {
+                tasks.add(pool.submit(new Callable<Build.Result>()
+                {
+                    @Override
+                    public Build.Result call()
+                    {
+                        return Build.fork(config, prepared, defines + "," + variant.defines);
+                    }
+                }));
+            }
+            final List<Build.Result> results = new ArrayList<Build.Result>();
+            for (final ForkJoinTask<Build.Result> task : tasks)
+            {
+                results.add(task.join());
+            }
+            return results;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    public static class Variant
+    {
+        private final String name;
+        private final String defines;
+
+        public Variant(final String name, final String defines)
+        {
+            this.name = name;
+            this.defines = defines;
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * @return The defines in {@code -D} syntax.
+         */
+        public String getDefines()
+        {
+            return this.defines;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements {@code --watch}: assembles, waits for changes of any source or
+ * binary file used by the build and assembles again.
+ * <p>
+ * Bursts of changes (editors saving several files, or writing a file in
+ * multiple steps) are collected until nothing changed for
+ * {@link #DEBOUNCE_MS}. Parsed source files are kept in a
+ * {@link ParseCache.Memory}, so only changed files get parsed again.
+ * </p>
+ */
+public class Watcher
+{
+    private final static long             DEBOUNCE_MS = 100;
+    private final String[]                args;
+    private final ParseCache.Memory       memory      = new ParseCache.Memory();
+    private final WatchService            service;
+    private final HashMap<Path, WatchKey> directories = new HashMap<Path, WatchKey>();
+    private final HashSet<Path>           files       = new HashSet<Path>();
+
+    private Watcher(final String[] args, final WatchService service)
+    {
+        this.args = args;
+        this.service = service;
+    }
+
+    /**
+     * Runs builds for the given command line (without {@code --watch}) until
+     * interrupted.
+     *
+     * @return The exit code if watching failed
+     */
+    public static int watch(final String[] args)
+    {
+        final ArrayList<String> forward = new ArrayList<String>();
+        for (final String arg : args)
+        {
+            if (!arg.equals("--watch"))
+            {
+                forward.add(arg);
+            }
+        }
+        try
+        {
+            final WatchService service = FileSystems.getDefault().newWatchService();
+            try
+            {
+                new Watcher(forward.toArray(new String[forward.size()]), service).run();
+            }
+            finally
+            {
+                service.close();
+            }
+        }
+        catch (final IOException e)
+        {
+            Con.error("Watching files failed: %s", e.getMessage());
+            return 13;
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    private void run() throws IOException, InterruptedException
+    {
+        long firstChange = 0;
+        long lastChange = 0;
+        for (;;)
+        {
+            final ArrayList<String> inputs = new ArrayList<String>();
+            Main.build(this.args, null, this.memory, null, inputs);
+            if (firstChange != 0)
+            {
+                final long now = System.nanoTime();
+                Con.info("Time to output: %d ms after the first change (%d ms rebuild)",
+                        (now - firstChange) / 1000000, (now - lastChange) / 1000000);
+            }
+            this.register(inputs);
+            Con.info("Watching %d file(s) for changes", this.files.size());
+
+            final TreeSet<Path> changed = new TreeSet<Path>();
+            while (changed.isEmpty())
+            {
+                final WatchKey key = this.service.take();
+                firstChange = System.nanoTime();
+                this.collect(key, changed);
+            }
+            WatchKey key;
+            while ((key = this.service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null)
+            {
+                this.collect(key, changed);
+            }
+            lastChange = System.nanoTime();
+            for (final Path path : changed)
+            {
+                Con.info("Changed: %s", path);
+            }
+        }
+    }
+
+    /**
+     * Watches the directories of the given files (and only those).
+     */
+    private void register(final ArrayList<String> inputs) throws IOException
+    {
+        this.files.clear();
+        final HashSet<Path> dirs = new HashSet<Path>();
+        for (final String input : inputs)
+        {
+            final Path path = Paths.get(input).toAbsolutePath().normalize();
+            this.files.add(path);
+            dirs.add(path.getParent());
+        }
+        for (final Iterator<Map.Entry<Path, WatchKey>> i = this.directories.entrySet().iterator(); i.hasNext();)
+        {
+            final Map.Entry<Path, WatchKey> e = i.next();
+            if (!dirs.contains(e.getKey()) || !e.getValue().isValid())
+            {
+                e.getValue().cancel();
+                i.remove();
+            }
+        }
+        for (final Path dir : dirs)
+        {
+            if (!this.directories.containsKey(dir))
+            {
+                try
+                {
+                    this.directories.put(dir, dir.register(this.service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+                }
+                catch (final IOException e)
+                {
+                    Con.warn("Can not watch directory '%s': %s", dir, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void collect(final WatchKey key, final TreeSet<Path> changed)
+    {
+        final Path dir = (Path)key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                // Events got lost, better rebuild
+                changed.add(dir);
+            }
+            else
+            {
+                final Path path = dir.resolve((Path)event.context());
+                if (this.files.contains(path))
+                {
+                    changed.add(path);
+                }
+            }
+        }
+        key.reset();
+    }
+}
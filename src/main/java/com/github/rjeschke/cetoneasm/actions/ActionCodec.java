@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm.actions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.BinaryOperator;
+import com.github.rjeschke.cetoneasm.CounterState;
+import com.github.rjeschke.cetoneasm.FileLocation;
+import com.github.rjeschke.cetoneasm.Opcodes;
+import com.github.rjeschke.cetoneasm.UnaryOperator;
+import com.github.rjeschke.cetoneasm.actions.AssembleOpcodeAction.WidthType;
+
+/**
+ * Compact binary (de)serialization of parsed action lists.
+ * <p>
+ * Strings (names, file names) get pooled, numbers are written as variable
+ * length integers. Jump and counter ids get renumbered (using
+ * {@link IdRemapper}) when reading, like freshly parsed lists they still need
+ * to be remapped into the assembler's ids.
+ * </p>
+ */
+public class ActionCodec
+{
+    private final static int                  ASSEMBLE_OPCODE  = 0;
+    private final static int                  BINARY_INCLUDE   = 1;
+    private final static int                  BINARY_OPERATOR  = 2;
+    private final static int                  CALL_MACRO       = 3;
+    private final static int                  CONDITIONAL_JUMP = 4;
+    private final static int                  COUNTER_COMPARE  = 5;
+    private final static int                  COUNTER_DEC      = 6;
+    private final static int                  COUNTER_SET      = 7;
+    private final static int                  DEFINE_MACRO     = 8;
+    private final static int                  GET_VARIABLE     = 9;
+    private final static int                  INCLUDE          = 10;
+    private final static int                  JUMP_ID          = 11;
+    private final static int                  JUMP_TO_ID       = 12;
+    private final static int                  LOAD_NUMBER      = 13;
+    private final static int                  MESSAGE          = 14;
+    private final static int                  META_GOTO        = 15;
+    private final static int                  META_LABEL       = 16;
+    private final static int                  SET_LABEL        = 17;
+    private final static int                  SET_VARIABLE     = 18;
+    private final static int                  STORE_DATA       = 19;
+    private final static int                  STORE_STRING     = 20;
+    private final static int                  UNARY_OPERATOR   = 21;
+    private final static int                  WRITE_STRING     = 22;
+
+    private final static BinaryOperator[]     BINARY_OPERATORS = BinaryOperator.values();
+    private final static UnaryOperator[]      UNARY_OPERATORS  = UnaryOperator.values();
+    private final static WidthType[]          WIDTH_TYPES      = WidthType.values();
+    private final static MessageAction.Type[] MESSAGE_TYPES    = MessageAction.Type.values();
+
+    private final HashMap<String, Integer>    stringMap        = new HashMap<String, Integer>();
+    private final ArrayList<String>           strings          = new ArrayList<String>();
+    private final IdRemapper                  ids              = new IdRemapper(new CounterState());
+
+    private ActionCodec()
+    {
+        // private
+    }
+
+    public static void write(final DataOutputStream out, final List<Action> actions) throws IOException
+    {
+        new ActionCodec().writeList(out, actions);
+    }
+
+    public static List<Action> read(final DataInputStream in) throws IOException
+    {
+        return new ActionCodec().readList(in);
+    }
+
+    private static void writeVarInt(final DataOutputStream out, final long value) throws IOException
+    {
+        // zig-zag, 7 bits per byte
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7fL) != 0)
+        {
+            out.writeByte((int)(v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int)v);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException
+    {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final int b = in.readUnsignedByte();
+            v |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException
+    {
+        return (int)readVarLong(in);
+    }
+
+    private void writeString(final DataOutputStream out, final String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeVarInt(out, 0);
+            return;
+        }
+        final Integer idx = this.stringMap.get(value);
+        if (idx != null)
+        {
+            writeVarInt(out, idx.intValue() + 2);
+        }
+        else
+        {
+            this.stringMap.put(value, Integer.valueOf(this.stringMap.size()));
+            writeVarInt(out, 1);
+            out.writeUTF(value);
+        }
+    }
+
+    private String readString(final DataInputStream in) throws IOException
+    {
+        final int idx = readVarInt(in);
+        switch (idx)
+        {
+        case 0:
+            return null;
+        case 1:
+        {
+            final String value = in.readUTF();
+            this.strings.add(value);
+            return value;
+        }
+        default:
+            if (idx - 2 >= this.strings.size())
+            {
+                throw new IOException("Corrupt string pool index");
+            }
+            return this.strings.get(idx - 2);
+        }
+    }
+
+    private void writeStrings(final DataOutputStream out, final List<String> values) throws IOException
+    {
+        writeVarInt(out, values.size());
+        for (final String s : values)
+        {
+            this.writeString(out, s);
+        }
+    }
+
+    private List<String> readStrings(final DataInputStream in) throws IOException
+    {
+        final int size = readVarInt(in);
+        final ArrayList<String> ret = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+        {
+            ret.add(this.readString(in));
+        }
+        return ret;
+    }
+
+    private void writeList(final DataOutputStream out, final List<Action> actions) throws IOException
+    {
+        writeVarInt(out, actions.size());
+        for (final Action a : actions)
+        {
+            this.writeAction(out, a);
+        }
+    }
+
+    private List<Action> readList(final DataInputStream in) throws IOException
+    {
+        final int size = readVarInt(in);
+        final ArrayList<Action> ret = new ArrayList<Action>(size);
+        for (int i = 0; i < size; i++)
+        {
+            ret.add(this.readAction(in));
+        }
+        return ret;
+    }
+
+    private void writeLists(final DataOutputStream out, final List<List<Action>> lists) throws IOException
+    {
+        writeVarInt(out, lists.size());
+        for (final List<Action> actions : lists)
+        {
+            this.writeList(out, actions);
+        }
+    }
+
+    private List<List<Action>> readLists(final DataInputStream in) throws IOException
+    {
+        final int size = readVarInt(in);
+        final ArrayList<List<Action>> ret = new ArrayList<List<Action>>(size);
+        for (int i = 0; i < size; i++)
+        {
+            ret.add(this.readList(in));
+        }
+        return ret;
+    }
+
+    private void writeAction(final DataOutputStream out, final Action action) throws IOException
+    {
+        final int type = typeOf(action);
+        out.writeByte(type);
+        final FileLocation location = action.getLocation();
+        this.writeString(out, location != null ? location.filename : null);
+        writeVarInt(out, location != null ? location.line : 0);
+
+        switch (type)
+        {
+        case ASSEMBLE_OPCODE:
+        {
+            final AssembleOpcodeAction a = (AssembleOpcodeAction)action;
+            this.writeString(out, a.mnemonic);
+            writeVarInt(out, a.opcode != null ? a.opcode.value : -1);
+            writeVarInt(out, a.widthType != null ? a.widthType.ordinal() : -1);
+            break;
+        }
+        case BINARY_INCLUDE:
+            this.writeString(out, ((BinaryIncludeAction)action).filename);
+            break;
+        case BINARY_OPERATOR:
+            writeVarInt(out, ((BinaryOperatorAction)action).operator.ordinal());
+            break;
+        case CALL_MACRO:
+        {
+            final CallMacroAction a = (CallMacroAction)action;
+            this.writeString(out, a.getName());
+            this.writeLists(out, a.getArguments());
+            break;
+        }
+        case CONDITIONAL_JUMP:
+            writeVarInt(out, ((ConditionalJumpAction)action).getID());
+            break;
+        case COUNTER_COMPARE:
+            writeVarInt(out, ((CounterCompareAction)action).getCID());
+            writeVarInt(out, ((CounterCompareAction)action).getJID());
+            break;
+        case COUNTER_DEC:
+            writeVarInt(out, ((CounterDecrementAction)action).getCID());
+            writeVarInt(out, ((CounterDecrementAction)action).getJID());
+            break;
+        case COUNTER_SET:
+            writeVarInt(out, ((CounterSetAction)action).getID());
+            break;
+        case DEFINE_MACRO:
+        {
+            final DefineMacroAction a = (DefineMacroAction)action;
+            this.writeString(out, a.getName());
+            this.writeStrings(out, a.arguments);
+            this.writeList(out, a.actions);
+            break;
+        }
+        case GET_VARIABLE:
+            this.writeString(out, ((GetVariableAction)action).getVariableName());
+            break;
+        case INCLUDE:
+            this.writeString(out, ((IncludeAction)action).getFileName());
+            break;
+        case JUMP_ID:
+            writeVarInt(out, ((JumpIdAction)action).getID());
+            break;
+        case JUMP_TO_ID:
+            writeVarInt(out, ((JumpToIdAction)action).getID());
+            break;
+        case LOAD_NUMBER:
+            writeVarInt(out, ((LoadNumberAction)action).getValue());
+            break;
+        case MESSAGE:
+            writeVarInt(out, ((MessageAction)action).type.ordinal());
+            this.writeLists(out, ((MessageAction)action).arguments);
+            break;
+        case META_GOTO:
+            this.writeString(out, ((MetaGotoAction)action).getName());
+            break;
+        case META_LABEL:
+            this.writeString(out, ((MetaLabelAction)action).getName());
+            break;
+        case SET_LABEL:
+            this.writeString(out, ((SetLabelAction)action).getLabelName());
+            out.writeBoolean(((SetLabelAction)action).isMacroLabel);
+            break;
+        case SET_VARIABLE:
+            this.writeString(out, ((SetVariableAction)action).getVariableName());
+            break;
+        case STORE_DATA:
+            out.writeBoolean(((StoreDataAction)action).storeWord);
+            out.writeBoolean(((StoreDataAction)action).isCode);
+            break;
+        case STORE_STRING:
+            this.writeString(out, ((StoreStringAction)action).getValue());
+            break;
+        case UNARY_OPERATOR:
+            writeVarInt(out, ((UnaryOperatorAction)action).operator.ordinal());
+            break;
+        case WRITE_STRING:
+        {
+            final WriteStringAction a = (WriteStringAction)action;
+            this.writeString(out, a.value);
+            out.writeBoolean(a.isWords);
+            out.writeBoolean(a.isScreen);
+            break;
+        }
+        }
+    }
+
+    private Action readAction(final DataInputStream in) throws IOException
+    {
+        final int type = in.readUnsignedByte();
+        final String filename = this.readString(in);
+        final int line = readVarInt(in);
+        final FileLocation location = filename != null ? new FileLocation(filename, line) : null;
+
+        switch (type)
+        {
+        case ASSEMBLE_OPCODE:
+        {
+            final String mnemonic = this.readString(in);
+            final int opcode = readVarInt(in);
+            final int widthType = readVarInt(in);
+            return new AssembleOpcodeAction(location, mnemonic, opcode < 0 ? null : Opcodes.BY_CODE[opcode & 255],
+                    widthType < 0 ? null : WIDTH_TYPES[widthType]);
+        }
+        case BINARY_INCLUDE:
+            return new BinaryIncludeAction(location, this.readString(in));
+        case BINARY_OPERATOR:
+            return new BinaryOperatorAction(location, BINARY_OPERATORS[readVarInt(in)]);
+        case CALL_MACRO:
+        {
+            final String name = this.readString(in);
+            return new CallMacroAction(location, name, this.readLists(in));
+        }
+        case CONDITIONAL_JUMP:
+            return new ConditionalJumpAction(location, this.ids.jumpId(readVarInt(in)));
+        case COUNTER_COMPARE:
+        {
+            final int cid = this.ids.counterId(readVarInt(in));
+            return new CounterCompareAction(location, cid, this.ids.jumpId(readVarInt(in)));
+        }
+        case COUNTER_DEC:
+        {
+            final int cid = this.ids.counterId(readVarInt(in));
+            return new CounterDecrementAction(location, cid, this.ids.jumpId(readVarInt(in)));
+        }
+        case COUNTER_SET:
+            return new CounterSetAction(location, this.ids.counterId(readVarInt(in)));
+        case DEFINE_MACRO:
+        {
+            final String name = this.readString(in);
+            final List<String> arguments = this.readStrings(in);
+            return new DefineMacroAction(location, name, arguments, this.readList(in), false);
+        }
+        case GET_VARIABLE:
+            return new GetVariableAction(location, this.readString(in));
+        case INCLUDE:
+            return new IncludeAction(location, this.readString(in));
+        case JUMP_ID:
+            return new JumpIdAction(location, this.ids.jumpId(readVarInt(in)));
+        case JUMP_TO_ID:
+            return new JumpToIdAction(location, this.ids.jumpId(readVarInt(in)));
+        case LOAD_NUMBER:
+            return new LoadNumberAction(location, readVarLong(in));
+        case MESSAGE:
+        {
+            final MessageAction.Type mtype = MESSAGE_TYPES[readVarInt(in)];
+            return new MessageAction(location, mtype, this.readLists(in));
+        }
+        case META_GOTO:
+            return new MetaGotoAction(location, this.readString(in));
+        case META_LABEL:
+            return new MetaLabelAction(location, this.readString(in));
+        case SET_LABEL:
+        {
+            final String name = this.readString(in);
+            return new SetLabelAction(location, name, in.readBoolean());
+        }
+        case SET_VARIABLE:
+            return new SetVariableAction(location, this.readString(in));
+        case STORE_DATA:
+        {
+            final boolean storeWord = in.readBoolean();
+            return new StoreDataAction(location, storeWord, in.readBoolean());
+        }
+        case STORE_STRING:
+            return new StoreStringAction(location, this.readString(in));
+        case UNARY_OPERATOR:
+            return new UnaryOperatorAction(location, UNARY_OPERATORS[readVarInt(in)]);
+        case WRITE_STRING:
+        {
+            final String value = this.readString(in);
+            final boolean isWords = in.readBoolean();
+            return new WriteStringAction(location, value, isWords, in.readBoolean());
+        }
+        default:
+            throw new IOException("Unknown action type " + type);
+        }
+    }
+
+    private static int typeOf(final Action action) throws IOException
+    {
+        if (action instanceof AssembleOpcodeAction)
+        {
+            return ASSEMBLE_OPCODE;
+        }
+        if (action instanceof BinaryIncludeAction)
+        {
+            return BINARY_INCLUDE;
+        }
+        if (action instanceof BinaryOperatorAction)
+        {
+            return BINARY_OPERATOR;
+        }
+        if (action instanceof CallMacroAction)
+        {
+            return CALL_MACRO;
+        }
+        if (action instanceof ConditionalJumpAction)
+        {
+            return CONDITIONAL_JUMP;
+        }
+        if (action instanceof CounterCompareAction)
+        {
+            return COUNTER_COMPARE;
+        }
+        if (action instanceof CounterDecrementAction)
+        {
+            return COUNTER_DEC;
+        }
+        if (action instanceof CounterSetAction)
+        {
+            return COUNTER_SET;
+        }
+        if (action instanceof DefineMacroAction)
+        {
+            return DEFINE_MACRO;
+        }
+        if (action instanceof GetVariableAction)
+        {
+            return GET_VARIABLE;
+        }
+        if (action instanceof IncludeAction)
+        {
+            return INCLUDE;
+        }
+        if (action instanceof JumpIdAction)
+        {
+            return JUMP_ID;
+        }
+        if (action instanceof JumpToIdAction)
+        {
+            return JUMP_TO_ID;
+        }
+        if (action instanceof LoadNumberAction)
+        {
+            return LOAD_NUMBER;
+        }
+        if (action instanceof MessageAction)
+        {
+            return MESSAGE;
+        }
+        if (action instanceof MetaGotoAction)
+        {
+            return META_GOTO;
+        }
+        if (action instanceof MetaLabelAction)
+        {
+            return META_LABEL;
+        }
+        if (action instanceof SetLabelAction)
+        {
+            return SET_LABEL;
+        }
+        if (action instanceof SetVariableAction)
+        {
+            return SET_VARIABLE;
+        }
+        if (action instanceof StoreDataAction)
+        {
+            return STORE_DATA;
+        }
+        if (action instanceof StoreStringAction)
+        {
+            return STORE_STRING;
+        }
+        if (action instanceof UnaryOperatorAction)
+        {
+            return UNARY_OPERATOR;
+        }
+        if (action instanceof WriteStringAction)
+        {
+            return WRITE_STRING;
+        }
+        throw new IOException("Can not serialize " + action.getClass().getSimpleName());
+    }
+}
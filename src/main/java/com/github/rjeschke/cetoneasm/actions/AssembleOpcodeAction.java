@@ -19,9 +19,11 @@ package com.github.rjeschke.cetoneasm.actions;
 import java.util.HashMap;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.AddressingMode;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 import com.github.rjeschke.cetoneasm.Opcodes;
 import com.github.rjeschke.cetoneasm.Opcodes.Opcode;
@@ -35,11 +37,11 @@ public class AssembleOpcodeAction extends Action
         ABSOLUTE_Y
     }
 
-    private final String    mnemonic;
-    private final Opcode    opcode;
-    private final WidthType widthType;
+    final String    mnemonic;
+    final Opcode    opcode;
+    final WidthType widthType;
 
-    private AssembleOpcodeAction(final FileLocation location, final String mnemonic, final Opcode opcode,
+    AssembleOpcodeAction(final FileLocation location, final String mnemonic, final Opcode opcode,
             final WidthType widthtype)
     {
         super(location);
@@ -128,6 +130,59 @@ public class AssembleOpcodeAction extends Action
         }
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        if (this.opcode != null)
+        {
+            switch (this.opcode.adressingMode)
+            {
+            case IMPLIED:
+                compiler.emit(Bytecode.OPC_IMPLIED, this.opcode.value);
+                break;
+            case ABSOLUTE:
+            case ABSOLUTE_X:
+            case ABSOLUTE_Y:
+            case INDIRECT:
+                compiler.emit(Bytecode.OPC_WORD, this.opcode.value);
+                break;
+            case IMMEDIATE:
+            case ZEROPAGE:
+            case ZEROPAGE_X:
+            case ZEROPAGE_Y:
+            case INDEXED_INDIRECT:
+            case INDIRECT_INDEXED:
+                compiler.emit(Bytecode.OPC_BYTE, this.opcode.value);
+                break;
+            case RELATIVE:
+                compiler.emit(Bytecode.OPC_REL, this.opcode.value);
+                break;
+            default:
+                compiler.emitAction(this);
+                break;
+            }
+        }
+        else
+        {
+            final HashMap<AddressingMode, Opcode> map = Opcodes.BY_NAME_MAPPED.get(this.mnemonic);
+            switch (this.widthType)
+            {
+            case ABSOLUTE:
+                compiler.emit(Bytecode.OPC_SIZED, map.get(AddressingMode.ZEROPAGE).value,
+                        map.get(AddressingMode.ABSOLUTE).value);
+                break;
+            case ABSOLUTE_X:
+                compiler.emit(Bytecode.OPC_SIZED, map.get(AddressingMode.ZEROPAGE_X).value,
+                        map.get(AddressingMode.ABSOLUTE_X).value);
+                break;
+            case ABSOLUTE_Y:
+                compiler.emit(Bytecode.OPC_SIZED, map.get(AddressingMode.ZEROPAGE_Y).value,
+                        map.get(AddressingMode.ABSOLUTE_Y).value);
+                break;
+            }
+        }
+    }
+
     @Override
     public String toString()
     {
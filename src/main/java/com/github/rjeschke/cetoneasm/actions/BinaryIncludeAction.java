@@ -16,9 +16,8 @@
 
 package com.github.rjeschke.cetoneasm.actions;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.github.rjeschke.cetoneasm.Action;
 import com.github.rjeschke.cetoneasm.Assembler;
@@ -27,8 +26,7 @@ import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class BinaryIncludeAction extends Action
 {
-    private final String filename;
-    private byte[]       data = null;
+    final String filename;
 
     public BinaryIncludeAction(final FileLocation location, final String filename)
     {
@@ -36,69 +34,28 @@ public class BinaryIncludeAction extends Action
         this.filename = filename;
     }
 
-    private void resolve(final Assembler assembler) throws AssemblerException
+    @Override
+    public void run(final Assembler assembler) throws AssemblerException
     {
-        if (this.data == null)
-        {
-            final int length = (int)assembler.pop();
-            final int skip = (int)assembler.pop();
+        // Always pop skip and length, even if the file was already read
+        final int length = (int)assembler.pop();
+        final int skip = (int)assembler.pop();
 
-            final String resolved = assembler.resolveFilename(this.filename, false);
-
-            if (resolved == null)
-            {
-                this.error("Can not find binary file '" + this.filename + "'");
-            }
-
-            try
-            {
-                final FileInputStream input = new FileInputStream(resolved);
-                try
-                {
-                    final byte[] buf = new byte[512];
-                    int toSkip = skip;
-                    while (toSkip > 0)
-                    {
-                        final int r = input.read(buf, 0, Math.min(buf.length, toSkip));
-                        if (r < 0)
-                        {
-                            break;
-                        }
-                        toSkip -= r;
-                    }
-                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                    int todo = length < 0 ? Integer.MAX_VALUE : length;
-                    while (todo > 0)
-                    {
-                        final int r = input.read(buf, 0, Math.min(todo, buf.length));
-                        if (r == -1)
-                        {
-                            break;
-                        }
-                        out.write(buf, 0, r);
-                        todo -= r;
-                    }
-                    this.data = out.toByteArray();
-                }
-                finally
-                {
-                    input.close();
-                }
-            }
-            catch (final IOException e)
-            {
-                this.error("IOException: " + e.getMessage());
-            }
+        final String resolved = assembler.getBinaryCache().resolve(assembler, this.filename);
+        if (resolved == null)
+        {
+            this.error("Can not find binary file '" + this.filename + "'");
         }
-    }
 
-    @Override
-    public void run(final Assembler assembler) throws AssemblerException
-    {
-        this.resolve(assembler);
-        for (int i = 0; i < this.data.length; i++)
+        ByteBuffer data = null;
+        try
+        {
+            data = assembler.getBinaryCache().get(resolved, skip, length);
+        }
+        catch (final IOException e)
         {
-            assembler.emmitDataByte(this.data[i] & 255);
+            this.error("IOException: " + e.getMessage());
         }
+        assembler.emitDataBlock(data);
     }
 }
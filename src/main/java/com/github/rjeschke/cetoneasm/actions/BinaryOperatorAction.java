@@ -17,14 +17,16 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.BinaryOperator;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 import com.github.rjeschke.cetoneasm.Assembler;
 
 public class BinaryOperatorAction extends Action
 {
-    private final BinaryOperator operator;
+    final BinaryOperator operator;
 
     public BinaryOperatorAction(final FileLocation location, final BinaryOperator operator)
     {
@@ -37,56 +39,18 @@ public class BinaryOperatorAction extends Action
     {
         final long b = assembler.pop();
         final long a = assembler.pop();
-        long c = 0;
-        switch (this.operator)
-        {
-        case ADD:
-            c = a + b;
-            break;
-        case SUB:
-            c = a - b;
-            break;
-        case MUL:
-            c = a * b;
-            break;
-        case DIV:
-            c = a / b;
-            break;
-        case AND:
-            c = a & b;
-            break;
-        case OR:
-            c = a | b;
-            break;
-        case XOR:
-            c = a ^ b;
-            break;
-        case SHIFT_LEFT:
-            c = a << b;
-            break;
-        case SHIFT_RIGHT:
-            c = a >> b;
-            break;
-        case EQUAL:
-            c = a == b ? 1 : 0;
-            break;
-        case NOT_EQUAL:
-            c = a != b ? 1 : 0;
-            break;
-        case LESS_THAN:
-            c = a < b ? 1 : 0;
-            break;
-        case LESS_EQUAL:
-            c = a <= b ? 1 : 0;
-            break;
-        case GREATER_THAN:
-            c = a > b ? 1 : 0;
-            break;
-        case GREATER_EQUAL:
-            c = a >= b ? 1 : 0;
-            break;
-        }
-        assembler.push(c);
+        assembler.push(this.operator.apply(a, b));
+    }
+
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emit(Bytecode.BINARY, this.operator.ordinal());
+    }
+
+    public BinaryOperator getOperator()
+    {
+        return this.operator;
     }
 
     @Override
@@ -17,8 +17,10 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class ConditionalJumpAction extends Action
@@ -40,6 +42,12 @@ public class ConditionalJumpAction extends Action
         }
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitJump(Bytecode.JZ, this.jumpId);
+    }
+
     public int getID()
     {
         return this.jumpId;
@@ -17,8 +17,10 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class CounterCompareAction extends Action
@@ -42,6 +44,12 @@ public class CounterCompareAction extends Action
         }
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitCounterJump(Bytecode.CJLE, this.id, this.jumpId);
+    }
+
     public int getCID()
     {
         return this.id;
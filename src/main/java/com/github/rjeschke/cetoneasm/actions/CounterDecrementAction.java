@@ -17,8 +17,10 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class CounterDecrementAction extends Action
@@ -40,6 +42,12 @@ public class CounterDecrementAction extends Action
         assembler.setJump(this.jumpId);
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitCounterJump(Bytecode.CDEC, this.id, this.jumpId);
+    }
+
     public int getCID()
     {
         return this.id;
@@ -17,8 +17,10 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class CounterSetAction extends Action
@@ -37,6 +39,12 @@ public class CounterSetAction extends Action
         assembler.setCounter(this.id, (int)assembler.pop());
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emit(Bytecode.CSET, this.id);
+    }
+
     public int getID()
     {
         return this.id;
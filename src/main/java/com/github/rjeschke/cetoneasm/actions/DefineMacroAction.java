@@ -17,9 +17,11 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.github.rjeschke.cetoneasm.Action;
 import com.github.rjeschke.cetoneasm.AssemblerException;
@@ -27,23 +29,46 @@ import com.github.rjeschke.cetoneasm.CounterState;
 import com.github.rjeschke.cetoneasm.FileLocation;
 import com.github.rjeschke.cetoneasm.MetaAction;
 
+/**
+ * A {@code .MACRO} definition.
+ * <p>
+ * The (mangled) body is immutable and shared by all calls of the macro, see
+ * {@link ExpandMacroAction}. Local names of the body are addressed through a
+ * per call frame, indexed by {@link #getFrameIndex(String)}.
+ * </p>
+ */
 public class DefineMacroAction extends MetaAction
 {
-    private final String           name;
-    private final List<String>     arguments;
-    private final List<Action>     actions;
-    private final HashSet<Integer> jumpIds    = new HashSet<Integer>();
-    private final HashSet<Integer> counterIds = new HashSet<Integer>();
+    private final String                   name;
+    final List<String>                     arguments;
+    final List<Action>                     actions;
+    private final HashSet<Integer>         jumpIds     = new HashSet<Integer>();
+    private final HashSet<Integer>         counterIds  = new HashSet<Integer>();
+    private final ArrayList<String>        frameNames  = new ArrayList<String>();
+    private final HashMap<String, Integer> frameIndex  = new HashMap<String, Integer>();
+    private final HashSet<String>          localWrites = new HashSet<String>();
+    private boolean                        shareable   = true;
 
     public DefineMacroAction(final FileLocation location, final String name, final List<String> arguments,
             final List<Action> actions)
+    {
+        this(location, name, arguments, actions, true);
+    }
+
+    /**
+     * @param mangle
+     *            {@code false} if the given arguments and actions are already
+     *            mangled (e.g. when loaded from the parse cache)
+     */
+    DefineMacroAction(final FileLocation location, final String name, final List<String> arguments,
+            final List<Action> actions, final boolean mangle)
     {
         super(location);
         this.name = name;
         this.arguments = arguments;
         this.actions = actions;
 
-        this.prepare();
+        this.prepare(mangle);
     }
 
     private static void addDefines(final Action a, final HashSet<String> def)
@@ -100,17 +125,23 @@ public class DefineMacroAction extends MetaAction
         }
     }
 
-    private void prepare()
+    private void prepare(final boolean doMangle)
     {
         final HashSet<String> def = new HashSet<String>(this.arguments);
-        for (final Action a : this.actions)
+        if (doMangle)
         {
-            addDefines(a, def);
+            for (final Action a : this.actions)
+            {
+                addDefines(a, def);
+            }
         }
 
         for (final Action a : this.actions)
         {
-            mangle(a, def);
+            if (doMangle)
+            {
+                mangle(a, def);
+            }
 
             if (a instanceof JumpIdAction)
             {
@@ -120,15 +151,49 @@ public class DefineMacroAction extends MetaAction
             {
                 this.counterIds.add(((CounterSetAction)a).getID());
             }
+            else if (a instanceof MetaLabelAction || a instanceof MetaGotoAction)
+            {
+                // .LABEL is not mangled and .GOTO may leave the body
+                this.shareable = false;
+            }
+            else if (a instanceof SetVariableAction)
+            {
+                this.addFrameName(((SetVariableAction)a).getVariableName());
+                this.localWrites.add(((SetVariableAction)a).getVariableName());
+            }
+            else if (a instanceof SetLabelAction)
+            {
+                this.addFrameName(((SetLabelAction)a).getLabelName());
+            }
+            else if (a instanceof GetVariableAction)
+            {
+                this.addFrameName(((GetVariableAction)a).getVariableName());
+            }
         }
 
-        for (int i = 0; i < this.arguments.size(); i++)
+        if (doMangle)
         {
-            this.arguments.set(i, "__" + this.arguments.get(i));
+            for (int i = 0; i < this.arguments.size(); i++)
+            {
+                this.arguments.set(i, "__" + this.arguments.get(i));
+            }
         }
     }
 
-    public List<Action> getMangledActions(final List<List<Action>> args, final long id, final FileLocation caller)
+    private void addFrameName(final String n)
+    {
+        if (n.startsWith("_") && !this.frameIndex.containsKey(n))
+        {
+            this.frameIndex.put(n, Integer.valueOf(this.frameNames.size()));
+            this.frameNames.add(n);
+        }
+    }
+
+    /**
+     * Creates the actions every call starts with: the macro's parent label
+     * and the argument assignments.
+     */
+    public List<Action> getCallActions(final List<List<Action>> args, final long id, final FileLocation caller)
             throws AssemblerException
     {
         final ArrayList<Action> ret = new ArrayList<Action>();
@@ -148,17 +213,29 @@ public class DefineMacroAction extends MetaAction
             ret.add(new SetVariableAction(this.getLocation(), this.arguments.get(i)));
         }
 
+        return ret;
+    }
+
+    /**
+     * Creates a private copy of the body with fresh jump and counter IDs,
+     * used for macros that are not {@link #isShareable() shareable}.
+     */
+    public List<Action> getMangledActions(final List<List<Action>> args, final long id, final FileLocation caller,
+            final CounterState counters) throws AssemblerException
+    {
+        final List<Action> ret = this.getCallActions(args, id, caller);
+
         final HashMap<Integer, Integer> cidMap = new HashMap<Integer, Integer>();
         final HashMap<Integer, Integer> jidMap = new HashMap<Integer, Integer>();
 
         for (final Integer i : this.counterIds)
         {
-            cidMap.put(i, CounterState.get().newId());
+            cidMap.put(i, counters.newId());
         }
 
         for (final Integer i : this.jumpIds)
         {
-            jidMap.put(i, CounterState.get().newJumpId());
+            jidMap.put(i, counters.newJumpId());
         }
 
         final ArrayList<Action> as = new ArrayList<Action>(this.actions);
@@ -207,4 +284,44 @@ public class DefineMacroAction extends MetaAction
     {
         return this.name;
     }
+
+    /**
+     * @return {@code true} if all calls can share the body, i.e. it contains
+     *         no {@code .LABEL} or {@code .GOTO}.
+     */
+    public boolean isShareable()
+    {
+        return this.shareable;
+    }
+
+    public List<Action> getActions()
+    {
+        return Collections.unmodifiableList(this.actions);
+    }
+
+    /**
+     * @return The local (i.e. starting with {@code _}) names accessed by the
+     *         body, in frame order.
+     */
+    public List<String> getFrameNames()
+    {
+        return Collections.unmodifiableList(this.frameNames);
+    }
+
+    /**
+     * @return The frame index of the given local name or -1.
+     */
+    public int getFrameIndex(final String n)
+    {
+        final Integer idx = this.frameIndex.get(n);
+        return idx == null ? -1 : idx.intValue();
+    }
+
+    /**
+     * @return The names of all variables assigned in the body.
+     */
+    public Set<String> getLocalWrites()
+    {
+        return Collections.unmodifiableSet(this.localWrites);
+    }
 }
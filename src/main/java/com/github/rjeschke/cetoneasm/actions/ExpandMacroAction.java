@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm.actions;
+
+import com.github.rjeschke.cetoneasm.ActionCompiler;
+import com.github.rjeschke.cetoneasm.FileLocation;
+import com.github.rjeschke.cetoneasm.MetaAction;
+
+/**
+ * Runs the shared body of a {@link DefineMacroAction}, replaces a
+ * {@link CallMacroAction} after pass 2 (following the macro's parent label and
+ * argument assignments).
+ */
+public class ExpandMacroAction extends MetaAction
+{
+    private final DefineMacroAction macro;
+    private final int               entryId;
+
+    /**
+     * @param entryId
+     *            The jump ID the shared body starts at
+     */
+    public ExpandMacroAction(final FileLocation location, final DefineMacroAction macro, final int entryId)
+    {
+        super(location);
+        this.macro = macro;
+        this.entryId = entryId;
+    }
+
+    public DefineMacroAction getMacro()
+    {
+        return this.macro;
+    }
+
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitMacroCall(this.macro, this.entryId);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "expand:" + this.macro.getName();
+    }
+}
@@ -17,6 +17,7 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.FileLocation;
@@ -34,7 +35,13 @@ public class GetVariableAction extends Action
     @Override
     public void run(final Assembler assembler) throws AssemblerException
     {
-        assembler.push(assembler.getVariable(this.variableName).get());
+        assembler.push(assembler.getVariableValue(this.variableName));
+    }
+
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitGet(this.variableName);
     }
 
     public void makeLocal()
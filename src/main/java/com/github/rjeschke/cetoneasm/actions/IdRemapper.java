@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm.actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.CounterState;
+
+/**
+ * Remaps jump and counter ids to fresh ids of the given {@link CounterState}.
+ * <p>
+ * Used for parsed action lists (which use ids of their own), fresh ids get
+ * allocated in order of first appearance so the result is deterministic.
+ * </p>
+ */
+public class IdRemapper
+{
+    private final CounterState              counters;
+    private final HashMap<Integer, Integer> jumpIds    = new HashMap<Integer, Integer>();
+    private final HashMap<Integer, Integer> counterIds = new HashMap<Integer, Integer>();
+
+    public IdRemapper(final CounterState counters)
+    {
+        this.counters = counters;
+    }
+
+    public static List<Action> remap(final List<Action> actions, final CounterState counters)
+    {
+        return new IdRemapper(counters).remapList(actions);
+    }
+
+    int jumpId(final int id)
+    {
+        final Integer key = Integer.valueOf(id);
+        Integer mapped = this.jumpIds.get(key);
+        if (mapped == null)
+        {
+            mapped = Integer.valueOf(this.counters.newJumpId());
+            this.jumpIds.put(key, mapped);
+        }
+        return mapped.intValue();
+    }
+
+    int counterId(final int id)
+    {
+        final Integer key = Integer.valueOf(id);
+        Integer mapped = this.counterIds.get(key);
+        if (mapped == null)
+        {
+            mapped = Integer.valueOf(this.counters.newId());
+            this.counterIds.put(key, mapped);
+        }
+        return mapped.intValue();
+    }
+
+    private List<Action> remapList(final List<Action> actions)
+    {
+        final ArrayList<Action> ret = new ArrayList<Action>(actions.size());
+        for (final Action a : actions)
+        {
+            ret.add(this.remap(a));
+        }
+        return ret;
+    }
+
+    private Action remap(final Action a)
+    {
+        if (a instanceof JumpIdAction)
+        {
+            final JumpIdAction b = (JumpIdAction)a;
+            return b.mangle(this.jumpId(b.getID()));
+        }
+        if (a instanceof JumpToIdAction)
+        {
+            final JumpToIdAction b = (JumpToIdAction)a;
+            return b.mangle(this.jumpId(b.getID()));
+        }
+        if (a instanceof ConditionalJumpAction)
+        {
+            final ConditionalJumpAction b = (ConditionalJumpAction)a;
+            return b.mangle(this.jumpId(b.getID()));
+        }
+        if (a instanceof CounterSetAction)
+        {
+            final CounterSetAction b = (CounterSetAction)a;
+            return b.mangle(this.counterId(b.getID()));
+        }
+        if (a instanceof CounterCompareAction)
+        {
+            final CounterCompareAction b = (CounterCompareAction)a;
+            final int cid = this.counterId(b.getCID());
+            return b.mangle(cid, this.jumpId(b.getJID()));
+        }
+        if (a instanceof CounterDecrementAction)
+        {
+            final CounterDecrementAction b = (CounterDecrementAction)a;
+            final int cid = this.counterId(b.getCID());
+            return b.mangle(cid, this.jumpId(b.getJID()));
+        }
+        if (a instanceof DefineMacroAction)
+        {
+            final DefineMacroAction b = (DefineMacroAction)a;
+            return new DefineMacroAction(b.getLocation(), b.getName(), b.arguments, this.remapList(b.actions), false);
+        }
+        return a;
+    }
+}
@@ -24,8 +24,6 @@ import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.FileLocation;
 import com.github.rjeschke.cetoneasm.MetaAction;
-import com.github.rjeschke.cetoneasm.Parser;
-import com.github.rjeschke.cetoneasm.Tokenizer;
 import com.github.rjeschke.cetoneasm.TokenizerException;
 
 public class IncludeAction extends MetaAction
@@ -45,19 +43,14 @@ public class IncludeAction extends MetaAction
 
     public List<Action> doInclude(final Assembler assembler, final String resolved) throws AssemblerException
     {
-        final Tokenizer tok = new Tokenizer(assembler.getConfig(), resolved);
         try
         {
-            return Parser.parse(tok.open());
+            return assembler.getParseScheduler().parse(resolved);
         }
         catch (final TokenizerException e)
         {
             this.error("Include file parsing failed", e);
         }
-        finally
-        {
-            tok.close();
-        }
         // We never reach here
         return new ArrayList<Action>();
     }
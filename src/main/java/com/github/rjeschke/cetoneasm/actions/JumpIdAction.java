@@ -24,13 +24,13 @@ public class JumpIdAction extends MetaAction
 {
     private final int id;
 
-    public JumpIdAction(final FileLocation location)
+    public JumpIdAction(final FileLocation location, final CounterState counters)
     {
         super(location);
-        this.id = CounterState.get().newJumpId();
+        this.id = counters.newJumpId();
     }
 
-    private JumpIdAction(final FileLocation location, final int jid)
+    JumpIdAction(final FileLocation location, final int jid)
     {
         super(location);
         this.id = jid;
@@ -17,8 +17,10 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class JumpToIdAction extends Action
@@ -37,6 +39,12 @@ public class JumpToIdAction extends Action
         assembler.setJump(this.jumpId);
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitJump(Bytecode.JMP, this.jumpId);
+    }
+
     public int getID()
     {
         return this.jumpId;
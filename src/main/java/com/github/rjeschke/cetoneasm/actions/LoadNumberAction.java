@@ -17,6 +17,7 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.FileLocation;
 import com.github.rjeschke.cetoneasm.Assembler;
@@ -37,6 +38,12 @@ public class LoadNumberAction extends Action
         assembler.push(this.value);
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitLoad(this.value);
+    }
+
     public long getValue()
     {
         return this.value;
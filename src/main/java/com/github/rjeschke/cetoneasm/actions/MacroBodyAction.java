@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm.actions;
+
+import com.github.rjeschke.cetoneasm.ActionCompiler;
+import com.github.rjeschke.cetoneasm.MetaAction;
+
+/**
+ * Marks the start of a shared macro body, all bodies get appended to the
+ * action list after the main code.
+ */
+public class MacroBodyAction extends MetaAction
+{
+    private final DefineMacroAction macro;
+
+    public MacroBodyAction(final DefineMacroAction macro)
+    {
+        super(macro.getLocation());
+        this.macro = macro;
+    }
+
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.beginMacroBody(this.macro);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "macro-body:" + this.macro.getName();
+    }
+}
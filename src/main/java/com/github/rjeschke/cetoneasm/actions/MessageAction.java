@@ -28,7 +28,7 @@ import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class MessageAction extends Action
 {
-    private final Type       type;
+    final Type               type;
     final List<List<Action>> arguments;
     final List<Action>       flattened;
 
@@ -47,7 +47,7 @@ public class MessageAction extends Action
     @Override
     public void run(final Assembler assembler) throws AssemblerException
     {
-        if (assembler.isFinalPass())
+        if (assembler.isCheckedPass())
         {
             String output = "";
             if (this.type.isFormatted())
@@ -98,15 +98,15 @@ public class MessageAction extends Action
             {
             case INFO:
             case INFOF:
-                Con.info(this.getLocation() + ": " + output);
+                assembler.addMessage(Con.Type.INFO, this.getLocation(), output);
                 break;
             case WARN:
             case WARNF:
-                Con.warn(this.getLocation() + ": " + output);
+                assembler.addMessage(Con.Type.WARNING, this.getLocation(), output);
                 break;
             case ERROR:
             case ERRORF:
-                this.error(output);
+                assembler.addMessage(Con.Type.ERROR, this.getLocation(), output);
                 break;
             }
         }
@@ -17,14 +17,15 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class SetLabelAction extends Action
 {
-    private String        labelName;
-    private final boolean isMacroLabel;
+    private String labelName;
+    final boolean  isMacroLabel;
 
     public SetLabelAction(final FileLocation location, final String labelName)
     {
@@ -52,6 +53,12 @@ public class SetLabelAction extends Action
         }
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitLabel(this.labelName, this.isMacroLabel);
+    }
+
     public String getLabelName()
     {
         return this.labelName;
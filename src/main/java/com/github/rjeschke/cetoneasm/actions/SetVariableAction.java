@@ -17,6 +17,7 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.FileLocation;
@@ -37,6 +38,12 @@ public class SetVariableAction extends Action
         assembler.setVariableValue(this.variableName, assembler.pop());
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitSet(this.variableName);
+    }
+
     public String getVariableName()
     {
         return this.variableName;
@@ -17,14 +17,16 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class StoreDataAction extends Action
 {
-    private final boolean storeWord;
-    private final boolean isCode;
+    final boolean storeWord;
+    final boolean isCode;
 
     public StoreDataAction(final FileLocation location, final boolean storeWord, final boolean isCode)
     {
@@ -54,6 +56,19 @@ public class StoreDataAction extends Action
         }
     }
 
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        if (this.isCode && !this.storeWord)
+        {
+            compiler.emit(Bytecode.CODE_BYTE);
+        }
+        else
+        {
+            compiler.emitData(this.storeWord);
+        }
+    }
+
     @Override
     public String toString()
     {
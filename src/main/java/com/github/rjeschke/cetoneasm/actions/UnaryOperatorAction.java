@@ -17,14 +17,16 @@
 package com.github.rjeschke.cetoneasm.actions;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
+import com.github.rjeschke.cetoneasm.Bytecode;
 import com.github.rjeschke.cetoneasm.FileLocation;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.UnaryOperator;
 
 public class UnaryOperatorAction extends Action
 {
-    private final UnaryOperator operator;
+    final UnaryOperator operator;
 
     public UnaryOperatorAction(final FileLocation location, final UnaryOperator operator)
     {
@@ -36,26 +38,18 @@ public class UnaryOperatorAction extends Action
     public void run(final Assembler assembler) throws AssemblerException
     {
         final long a = assembler.pop();
-        long c = 0;
-        switch (this.operator)
-        {
-        case HIGH:
-            c = (a >> 8) & 255;
-            break;
-        case LOW:
-            c = a & 255;
-            break;
-        case NOT:
-            c = a == 0 ? 1 : 0;
-            break;
-        case NEG:
-            c = ~a;
-            break;
-        case MINUS:
-            c = -a;
-            break;
-        }
-        assembler.push(c);
+        assembler.push(this.operator.apply(a));
+    }
+
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emit(Bytecode.UNARY, this.operator.ordinal());
+    }
+
+    public UnaryOperator getOperator()
+    {
+        return this.operator;
     }
 
     @Override
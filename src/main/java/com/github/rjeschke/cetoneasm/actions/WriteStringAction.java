@@ -19,15 +19,18 @@ package com.github.rjeschke.cetoneasm.actions;
 import java.io.UnsupportedEncodingException;
 
 import com.github.rjeschke.cetoneasm.Action;
+import com.github.rjeschke.cetoneasm.ActionCompiler;
 import com.github.rjeschke.cetoneasm.Assembler;
 import com.github.rjeschke.cetoneasm.AssemblerException;
 import com.github.rjeschke.cetoneasm.FileLocation;
 
 public class WriteStringAction extends Action
 {
-    private final String  value;
+    final String          value;
     private final byte[]  bytes;
-    private final boolean isWords;
+    private final byte[]  data;
+    final boolean         isWords;
+    final boolean         isScreen;
 
     public WriteStringAction(final FileLocation location, final String value, final boolean isWords,
             final boolean isScreen)
@@ -35,6 +38,7 @@ public class WriteStringAction extends Action
         super(location);
         this.value = value;
         this.isWords = isWords;
+        this.isScreen = isScreen;
 
         try
         {
@@ -51,6 +55,19 @@ public class WriteStringAction extends Action
         {
             throw new RuntimeException("WTF", e);
         }
+
+        if (isWords)
+        {
+            this.data = new byte[this.bytes.length * 2];
+            for (int i = 0; i < this.bytes.length; i++)
+            {
+                this.data[i * 2] = this.bytes[i];
+            }
+        }
+        else
+        {
+            this.data = this.bytes;
+        }
     }
 
     public String getValue()
@@ -61,20 +78,13 @@ public class WriteStringAction extends Action
     @Override
     public void run(final Assembler assembler) throws AssemblerException
     {
-        if (this.isWords)
-        {
-            for (int i = 0; i < this.bytes.length; i++)
-            {
-                assembler.emmitDataWord(this.bytes[i] & 255);
-            }
-        }
-        else
-        {
-            for (int i = 0; i < this.bytes.length; i++)
-            {
-                assembler.emmitDataByte(this.bytes[i] & 255);
-            }
-        }
+        assembler.emitDataBlock(this.data, 0, this.data.length);
+    }
+
+    @Override
+    public void compile(final ActionCompiler compiler)
+    {
+        compiler.emitDataBlock(this.data);
     }
 
     @Override
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Caches pre-decoded straight-line code (basic blocks) for the fast
+ * emulation mode.
+ * <p>
+ * A block starts at a PC and ends with the first instruction that changes
+ * control flow (branches, JMP, JSR, RTS), or before the first instruction the
+ * block executor does not handle (BRK, RTI, KIL, ...), those always get
+ * executed by the cycle-exact core. Blocks are invalidated as soon as a byte
+ * they cover gets written to, so self modifying code stays correct.
+ * </p>
+ */
+public class BlockCache
+{
+    private final static int          MAX_INSTRUCTIONS = 64;
+    private final byte[]              ram;
+    private final IoHandler[]         ioPages;
+    private final Block[]             blocks           = new Block[65536];
+    private final int[]               cover            = new int[65536];
+    private final ArrayList<Block>[]  pages;
+    private int                       translated       = 0;
+    private int                       invalidated      = 0;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public BlockCache(final byte[] ram, final IoHandler[] ioPages)
+    {
+        this.ram = ram;
+        this.ioPages = ioPages;
+        this.pages = new ArrayList[256];
+        for (int i = 0; i < this.pages.length; i++)
+        {
+            this.pages[i] = new ArrayList<Block>();
+        }
+    }
+
+    /**
+     * Returns the block starting at {@code pc}, translating it if necessary.
+     * The block is empty if the instruction at {@code pc} can not be
+     * translated.
+     */
+    public Block get(final int pc)
+    {
+        final Block block = this.blocks[pc];
+        return block != null ? block : this.translate(pc);
+    }
+
+    private Block translate(final int pc)
+    {
+        final int[] opcodes = new int[MAX_INSTRUCTIONS];
+        final int[] operands = new int[MAX_INSTRUCTIONS];
+        final int[] next = new int[MAX_INSTRUCTIONS];
+        final int[] cycles = new int[MAX_INSTRUCTIONS];
+        int addr = pc;
+        int count = 0;
+        int sum = 0;
+        while (count < MAX_INSTRUCTIONS)
+        {
+            // Code in mapped pages always runs on the core
+            if (this.ioPages[addr >> 8] != null)
+            {
+                break;
+            }
+            final int opcode = this.ram[addr] & 255;
+            final int length = MOS6510.getTranslatedLength(opcode);
+            // The byte after the instruction gets (dummy) read, too
+            if (length == 0 || addr + length >= 65536 || this.ioPages[(addr + length) >> 8] != null)
+            {
+                break;
+            }
+            opcodes[count] = opcode;
+            if (length == 2)
+            {
+                operands[count] = this.ram[addr + 1] & 255;
+            }
+            else if (length == 3)
+            {
+                operands[count] = (this.ram[addr + 1] & 255) | ((this.ram[addr + 2] & 255) << 8);
+            }
+            addr += length;
+            sum += MOS6510.getTranslatedCycles(opcode);
+            next[count] = addr;
+            cycles[count] = sum;
+            count++;
+            if (MOS6510.isBlockExit(opcode))
+            {
+                break;
+            }
+        }
+
+        // Empty blocks cover their first byte, so they get dropped if the
+        // opcode changes
+        final Block block = new Block(pc, Math.max(addr, pc + 1), count, Arrays.copyOf(opcodes, count),
+                Arrays.copyOf(operands, count), Arrays.copyOf(next, count), Arrays.copyOf(cycles, count));
+        this.blocks[pc] = block;
+        for (int i = block.start; i < block.end; i++)
+        {
+            this.cover[i]++;
+        }
+        for (int page = block.start >> 8; page <= (block.end - 1) >> 8; page++)
+        {
+            this.pages[page].add(block);
+        }
+        if (count > 0)
+        {
+            this.translated++;
+        }
+        return block;
+    }
+
+    /**
+     * Must be called on every write to RAM.
+     */
+    public void written(final int address)
+    {
+        if (this.cover[address] != 0)
+        {
+            this.invalidate(address);
+        }
+    }
+
+    /**
+     * Drops all blocks touching the given page, must be called when the page
+     * gets (un)mapped.
+     */
+    public void invalidatePage(final int page)
+    {
+        this.invalidate(page << 8, (page << 8) + 256);
+    }
+
+    private void invalidate(final int address)
+    {
+        this.invalidate(address, address + 1);
+    }
+
+    private void invalidate(final int from, final int to)
+    {
+        final ArrayList<Block> page = this.pages[from >> 8];
+        for (int i = page.size() - 1; i >= 0; i--)
+        {
+            final Block block = page.get(i);
+            if (from < block.end && to > block.start)
+            {
+                block.valid = false;
+                this.blocks[block.start] = null;
+                for (int a = block.start; a < block.end; a++)
+                {
+                    this.cover[a]--;
+                }
+                for (int p = block.start >> 8; p <= (block.end - 1) >> 8; p++)
+                {
+                    this.pages[p].remove(block);
+                }
+                if (block.count > 0)
+                {
+                    this.invalidated++;
+                }
+            }
+        }
+    }
+
+    public int getTranslatedCount()
+    {
+        return this.translated;
+    }
+
+    public int getInvalidatedCount()
+    {
+        return this.invalidated;
+    }
+
+    /**
+     * A translated block, executed by {@link MOS6510#execute(Block)}.
+     */
+    public static class Block
+    {
+        final int     start;
+        final int     end;
+        final int     count;
+        final int[]   opcodes;
+        final int[]   operands;
+        /** PC after each instruction */
+        final int[]   next;
+        /** Summed base cycles up to (and including) each instruction */
+        final int[]   cycles;
+        boolean       valid = true;
+
+        Block(final int start, final int end, final int count, final int[] opcodes, final int[] operands,
+                final int[] next, final int[] cycles)
+        {
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.opcodes = opcodes;
+            this.operands = operands;
+            this.next = next;
+            this.cycles = cycles;
+        }
+
+        public boolean isEmpty()
+        {
+            return this.count == 0;
+        }
+    }
+}
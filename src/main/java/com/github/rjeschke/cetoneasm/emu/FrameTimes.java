@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.util.Arrays;
+
+import com.github.rjeschke.cetoneasm.Con;
+
+/**
+ * Per frame clock cycle statistics, as recorded by
+ * {@link Machine#executeFrames(int, int, int, int, boolean)}.
+ */
+public class FrameTimes
+{
+    private final long[]        times;
+    private final long[]        sorted;
+    private final VideoStandard standard;
+
+    public FrameTimes(final long[] times, final VideoStandard standard)
+    {
+        this.times = times;
+        this.sorted = times.clone();
+        Arrays.sort(this.sorted);
+        this.standard = standard;
+    }
+
+    public int getFrameCount()
+    {
+        return this.times.length;
+    }
+
+    /**
+     * @return Index of the (first) frame with the most clock cycles, -1 if
+     *         there are no frames.
+     */
+    public int getWorstFrame()
+    {
+        int worst = -1;
+        for (int i = 0; i < this.times.length; i++)
+        {
+            if (worst < 0 || this.times[i] > this.times[worst])
+            {
+                worst = i;
+            }
+        }
+        return worst;
+    }
+
+    public long getMax()
+    {
+        return this.sorted.length == 0 ? 0 : this.sorted[this.sorted.length - 1];
+    }
+
+    /**
+     * @return The given percentile (nearest rank).
+     */
+    public long getPercentile(final int percent)
+    {
+        if (this.sorted.length == 0)
+        {
+            return 0;
+        }
+        final int rank = (int)Math.ceil(percent / 100. * this.sorted.length);
+        return this.sorted[Math.max(0, Math.min(this.sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * @return The number of frames using more than {@code budget} clock
+     *         cycles.
+     */
+    public int countOver(final long budget)
+    {
+        int count = 0;
+        for (final long t : this.times)
+        {
+            if (t > budget)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void report()
+    {
+        if (this.times.length == 0)
+        {
+            Con.warn(" No frames executed");
+            return;
+        }
+        long sum = 0;
+        for (final long t : this.times)
+        {
+            sum += t;
+        }
+        final int worst = this.getWorstFrame();
+        Con.info(" %d frame(s) (%s), clock cycles per frame min/avg/max: %d/%.1f/%d", this.times.length,
+                this.standard, this.sorted[0], (double)sum / this.times.length, this.getMax());
+        Con.info(" Percentiles: 50%%: %d, 90%%: %d, 99%%: %d clock cycles", this.getPercentile(50),
+                this.getPercentile(90), this.getPercentile(99));
+        Con.info(" Worst frame: #%d, %d clock cycles (%.1f raster lines, %.1f%% of a frame)", worst,
+                this.times[worst], (double)this.times[worst] / this.standard.cyclesPerLine,
+                100. * this.times[worst] / this.standard.getCyclesPerFrame());
+    }
+}
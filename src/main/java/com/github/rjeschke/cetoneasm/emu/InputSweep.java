@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.rjeschke.cetoneasm.Con;
+
+/**
+ * Runs a subroutine for every combination of values of a set of inputs
+ * (registers or memory), checks each result and records best/worst case
+ * clock cycles.
+ * <p>
+ * The input space gets split across a {@link ForkJoinPool}, every task uses
+ * its own {@link Machine}, RAM is restored to the loaded program before each
+ * run.
+ * </p>
+ */
+public class InputSweep
+{
+    public final static int   REG_A        = -1;
+    public final static int   REG_X        = -2;
+    public final static int   REG_Y        = -3;
+    private final static int  MAX_FAILURES = 10;
+    private final byte[]      image;
+    private final int         callAddress;
+    private final List<Input> inputs       = new ArrayList<Input>();
+    private Check             check        = null;
+    private long              maxCycles    = 1000000;
+    private int               threads      = 0;
+
+    /**
+     * Checks the outcome of a single run, must be thread safe.
+     */
+    public interface Check
+    {
+        /**
+         * @param inputs
+         *            The input values, in order of {@link InputSweep#addInput}
+         * @param machine
+         *            The machine after the subroutine returned
+         * @return {@code true} if the result is correct.
+         */
+        public boolean check(long[] inputs, Machine machine);
+    }
+
+    public InputSweep(final byte[] prg, final int callAddress)
+    {
+        final Machine machine = new Machine();
+        machine.loadPrg(prg);
+        this.image = machine.copyRam();
+        this.callAddress = callAddress;
+    }
+
+    /**
+     * Adds an input, {@code location} is either one of {@link #REG_A},
+     * {@link #REG_X}, {@link #REG_Y} or a memory address (a little endian
+     * word if {@code isWord} is set).
+     */
+    public void addInput(final int location, final boolean isWord, final long from, final long to)
+    {
+        this.inputs.add(new Input(location, isWord, Math.min(from, to), Math.max(from, to)));
+    }
+
+    public void setCheck(final Check check)
+    {
+        this.check = check;
+    }
+
+    /**
+     * Runs taking longer are aborted and counted as timeouts.
+     */
+    public void setMaxCycles(final long maxCycles)
+    {
+        this.maxCycles = maxCycles;
+    }
+
+    /**
+     * @param threads
+     *            Number of threads, 0 = one per CPU.
+     */
+    public void setThreads(final int threads)
+    {
+        this.threads = threads;
+    }
+
+    public int getInputCount()
+    {
+        return this.inputs.size();
+    }
+
+    public long getCombinations()
+    {
+        long count = 1;
+        for (final Input in : this.inputs)
+        {
+            count *= in.to - in.from + 1;
+        }
+        return count;
+    }
+
+    public Result run()
+    {
+        final long count = this.getCombinations();
+        final int t = this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = new ForkJoinPool(t);
+        try
+        {
+            return pool.invoke(new SweepTask(0, count, Math.max(256, count / (t * 8))));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private void decode(final long index, final long[] values)
+    {
+        long rest = index;
+        for (int i = values.length - 1; i >= 0; i--)
+        {
+            final Input in = this.inputs.get(i);
+            final long range = in.to - in.from + 1;
+            values[i] = in.from + rest % range;
+            rest /= range;
+        }
+    }
+
+    private Result runRange(final long from, final long to)
+    {
+        final Result result = new Result();
+        final Machine machine = new Machine();
+        final long[] values = new long[this.inputs.size()];
+        for (long index = from; index < to; index++)
+        {
+            this.decode(index, values);
+            machine.restoreRam(this.image);
+            machine.reset();
+            final MOS6510 cpu = machine.getCpu();
+            for (int i = 0; i < values.length; i++)
+            {
+                final Input in = this.inputs.get(i);
+                final int value = (int)values[i];
+                switch (in.location)
+                {
+                case REG_A:
+                    cpu.setA(value);
+                    break;
+                case REG_X:
+                    cpu.setX(value);
+                    break;
+                case REG_Y:
+                    cpu.setY(value);
+                    break;
+                default:
+                    machine.writeRam(in.location, value);
+                    if (in.isWord)
+                    {
+                        machine.writeRam(in.location + 1, value >> 8);
+                    }
+                    break;
+                }
+            }
+            final long cycles = machine.callSubroutine(this.callAddress, this.maxCycles);
+            if (cycles < 0)
+            {
+                result.timeouts++;
+                result.addFailure(values);
+                continue;
+            }
+            if (this.check != null && !this.check.check(values, machine))
+            {
+                result.failures++;
+                result.addFailure(values);
+            }
+            result.add(cycles, values);
+        }
+        return result;
+    }
+
+    private static class Input
+    {
+        final int     location;
+        final boolean isWord;
+        final long    from;
+        final long    to;
+
+        public Input(final int location, final boolean isWord, final long from, final long to)
+        {
+            this.location = location;
+            this.isWord = isWord;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String toString()
+        {
+            switch (this.location)
+            {
+            case REG_A:
+                return "A";
+            case REG_X:
+                return "X";
+            case REG_Y:
+                return "Y";
+            default:
+                return String.format(this.isWord ? "$%04x.W" : "$%04x", this.location);
+            }
+        }
+    }
+
+    private class SweepTask extends RecursiveTask<Result>
+    {
+        private static final long serialVersionUID = 1L;
+        private final long        from;
+        private final long        to;
+        private final long        grain;
+
+        public SweepTask(final long from, final long to, final long grain)
+        {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Result compute()
+        {
+            if (this.to - this.from <= this.grain)
+            {
+                return InputSweep.this.runRange(this.from, this.to);
+            }
+            final long mid = (this.from + this.to) >>> 1;
+            final SweepTask left = new SweepTask(this.from, mid, this.grain);
+            left.fork();
+            final Result right = new SweepTask(mid, this.to, this.grain).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Outcome of a sweep. Best/worst inputs are the first ones (in input
+     * order) that produced the respective cycle count.
+     */
+    public class Result
+    {
+        private long               runs        = 0;
+        private long               failures    = 0;
+        private long               timeouts    = 0;
+        private long               totalCycles = 0;
+        private long               best        = Long.MAX_VALUE;
+        private long[]             bestInputs;
+        private long               worst       = -1;
+        private long[]             worstInputs;
+        private final List<long[]> failed      = new ArrayList<long[]>();
+
+        void add(final long cycles, final long[] values)
+        {
+            this.runs++;
+            this.totalCycles += cycles;
+            if (cycles < this.best)
+            {
+                this.best = cycles;
+                this.bestInputs = values.clone();
+            }
+            if (cycles > this.worst)
+            {
+                this.worst = cycles;
+                this.worstInputs = values.clone();
+            }
+        }
+
+        void addFailure(final long[] values)
+        {
+            if (this.failed.size() < MAX_FAILURES)
+            {
+                this.failed.add(values.clone());
+            }
+        }
+
+        /**
+         * Merges {@code other}, which must cover the inputs following this
+         * one's.
+         */
+        Result merge(final Result other)
+        {
+            this.runs += other.runs;
+            this.failures += other.failures;
+            this.timeouts += other.timeouts;
+            this.totalCycles += other.totalCycles;
+            if (other.best < this.best)
+            {
+                this.best = other.best;
+                this.bestInputs = other.bestInputs;
+            }
+            if (other.worst > this.worst)
+            {
+                this.worst = other.worst;
+                this.worstInputs = other.worstInputs;
+            }
+            for (final long[] f : other.failed)
+            {
+                this.addFailure(f);
+            }
+            return this;
+        }
+
+        public long getFailures()
+        {
+            return this.failures;
+        }
+
+        public long getTimeouts()
+        {
+            return this.timeouts;
+        }
+
+        public long getBestCycles()
+        {
+            return this.best;
+        }
+
+        public long getWorstCycles()
+        {
+            return this.worst;
+        }
+
+        public boolean isSuccess()
+        {
+            return this.failures == 0 && this.timeouts == 0;
+        }
+
+        private String format(final long[] values)
+        {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < values.length; i++)
+            {
+                if (i > 0)
+                {
+                    sb.append(", ");
+                }
+                sb.append(InputSweep.this.inputs.get(i));
+                sb.append('=');
+                sb.append(values[i]);
+            }
+            return sb.toString();
+        }
+
+        public void report()
+        {
+            Con.info(" %d run(s), %d failed, %d timed out (> %d clock cycles)", this.runs + this.timeouts,
+                    this.failures, this.timeouts, InputSweep.this.maxCycles);
+            if (this.runs > 0)
+            {
+                Con.info(" Clock cycles min/avg/max: %d/%.1f/%d", this.best, (double)this.totalCycles / this.runs,
+                        this.worst);
+                Con.info(" Best case:  %s", this.format(this.bestInputs));
+                Con.info(" Worst case: %s", this.format(this.worstInputs));
+            }
+            for (final long[] f : this.failed)
+            {
+                Con.error(" Failed: %s", this.format(f));
+            }
+            if (this.failures + this.timeouts > this.failed.size())
+            {
+                Con.error(" ... and %d more", this.failures + this.timeouts - this.failed.size());
+            }
+        }
+    }
+}
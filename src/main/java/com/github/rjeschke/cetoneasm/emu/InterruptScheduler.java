@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import com.github.rjeschke.cetoneasm.Con;
+
+/**
+ * Cycle driven IRQ/NMI sources for the {@link Machine}.
+ * <p>
+ * Supports a periodic raster IRQ (every n raster lines), a free running CIA
+ * timer IRQ and a one-shot NMI. Interrupt lines are held until the CPU starts
+ * the interrupt sequence (i.e. handlers don't need to acknowledge), events
+ * occurring while a line is still held get counted as lost.
+ * </p>
+ * <p>
+ * Entry latency is measured from the assertion of the line to the first
+ * opcode fetch of the handler (so it includes the 7 cycles of the interrupt
+ * sequence), handler time from the start of the sequence to the end of the
+ * matching RTI.
+ * </p>
+ */
+public class InterruptScheduler
+{
+    private final static int MAX_NESTING     = 16;
+    private final int        cyclesPerLine;
+    private final int        linesPerFrame;
+    private int              rasterPeriod    = 0;
+    private int              timerPeriod     = 0;
+    private long             nmiAt           = -1;
+    private long             nextRaster;
+    private long             nextTimer;
+    private boolean          irqLine         = false;
+    private long             irqSince;
+    private boolean          nmiLine         = false;
+    private long             nmiSince;
+    private final Latency    irqLatency      = new Latency();
+    private final Latency    nmiLatency      = new Latency();
+    private int              lost            = 0;
+    private final long[]     entries         = new long[MAX_NESTING];
+    private int              depth           = 0;
+    private long             handlerCycles   = 0;
+    private long             frame           = -1;
+    private long             frameCycles     = 0;
+    private long             maxFrameCycles  = 0;
+
+    public InterruptScheduler(final VideoStandard standard)
+    {
+        this.cyclesPerLine = standard.cyclesPerLine;
+        this.linesPerFrame = standard.linesPerFrame;
+    }
+
+    /**
+     * Triggers an IRQ every {@code lines} raster lines, 0 disables it.
+     */
+    public void setRasterIrq(final int lines)
+    {
+        this.rasterPeriod = Math.max(0, lines) * this.cyclesPerLine;
+        this.nextRaster = this.rasterPeriod;
+    }
+
+    /**
+     * Triggers an IRQ on every underflow of a (continuous) timer with the
+     * given latch value, i.e. every {@code latch + 1} cycles, 0 disables it.
+     */
+    public void setTimerIrq(final int latch)
+    {
+        this.timerPeriod = latch > 0 ? latch + 1 : 0;
+        this.nextTimer = this.timerPeriod;
+    }
+
+    /**
+     * Triggers a single NMI at the given clock cycle, a negative value
+     * disables it.
+     */
+    public void setNmi(final long cycle)
+    {
+        this.nmiAt = cycle;
+    }
+
+    public int getCyclesPerFrame()
+    {
+        return this.cyclesPerLine * this.linesPerFrame;
+    }
+
+    public boolean irq(final long now)
+    {
+        if (this.rasterPeriod > 0)
+        {
+            while (now >= this.nextRaster)
+            {
+                this.raiseIrq(this.nextRaster);
+                this.nextRaster += this.rasterPeriod;
+            }
+        }
+        if (this.timerPeriod > 0)
+        {
+            while (now >= this.nextTimer)
+            {
+                this.raiseIrq(this.nextTimer);
+                this.nextTimer += this.timerPeriod;
+            }
+        }
+        return this.irqLine;
+    }
+
+    private void raiseIrq(final long at)
+    {
+        if (this.irqLine)
+        {
+            this.lost++;
+        }
+        else
+        {
+            this.irqLine = true;
+            this.irqSince = at;
+        }
+    }
+
+    public boolean nmi(final long now)
+    {
+        if (this.nmiAt >= 0 && now >= this.nmiAt)
+        {
+            this.nmiLine = true;
+            this.nmiSince = this.nmiAt;
+            this.nmiAt = -1;
+        }
+        return this.nmiLine;
+    }
+
+    /**
+     * Called when the CPU starts an interrupt sequence at cycle {@code now}.
+     */
+    public void taken(final boolean isNmi, final long now)
+    {
+        if (isNmi)
+        {
+            this.nmiLine = false;
+            this.nmiLatency.add(now + 7 - this.nmiSince);
+        }
+        else
+        {
+            this.irqLine = false;
+            this.irqLatency.add(now + 7 - this.irqSince);
+        }
+        if (this.depth < MAX_NESTING)
+        {
+            this.entries[this.depth] = now;
+        }
+        this.depth++;
+    }
+
+    /**
+     * Called in the last cycle of RTI.
+     */
+    public void returned(final long now)
+    {
+        if (this.depth == 0)
+        {
+            return;
+        }
+        this.depth--;
+        if (this.depth == 0)
+        {
+            // Nested handlers are already included in the outermost one
+            final long entry = this.entries[0];
+            final long cycles = now + 1 - entry;
+            this.handlerCycles += cycles;
+            final long f = entry / this.getCyclesPerFrame();
+            if (f != this.frame)
+            {
+                this.frame = f;
+                this.frameCycles = 0;
+            }
+            this.frameCycles += cycles;
+            this.maxFrameCycles = Math.max(this.maxFrameCycles, this.frameCycles);
+        }
+    }
+
+    /**
+     * Logs the statistics for an emulation run of {@code cycles} clock
+     * cycles.
+     */
+    public void report(final long cycles)
+    {
+        final long frames = Math.max(1, (cycles + this.getCyclesPerFrame() - 1) / this.getCyclesPerFrame());
+        Con.info("  %d IRQ(s) taken, %d lost, entry latency min/avg/max: %s cycles", this.irqLatency.count,
+                this.lost, this.irqLatency);
+        if (this.nmiLatency.count > 0)
+        {
+            Con.info("  %d NMI(s) taken, entry latency min/avg/max: %s cycles", this.nmiLatency.count,
+                    this.nmiLatency);
+        }
+        Con.info("  Handler time: %d clock cycles, avg %.1f/max %d per frame (%d frame(s) of %d cycles)",
+                this.handlerCycles, (double)this.handlerCycles / frames, this.maxFrameCycles, frames,
+                this.getCyclesPerFrame());
+    }
+
+    private static class Latency
+    {
+        int  count = 0;
+        long min   = Long.MAX_VALUE;
+        long max   = 0;
+        long sum   = 0;
+
+        void add(final long latency)
+        {
+            this.count++;
+            this.min = Math.min(this.min, latency);
+            this.max = Math.max(this.max, latency);
+            this.sum += latency;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.count == 0 ? "-/-/-" : String.format("%d/%.1f/%d", this.min, (double)this.sum / this.count,
+                    this.max);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+/**
+ * A device mapped into one or more pages of the {@link Machine}'s address
+ * space, e.g. I/O registers or banked ROM. Addresses are full 16 bit
+ * addresses.
+ */
+public interface IoHandler
+{
+    public int read(int address);
+
+    public void write(int address, int value);
+}
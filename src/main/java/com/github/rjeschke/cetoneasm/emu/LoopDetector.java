@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.github.rjeschke.cetoneasm.Con;
+import com.github.rjeschke.cetoneasm.FileLocation;
+
+/**
+ * Detects endless loops by comparing the machine state after backward jumps
+ * with a checkpoint (Brent's cycle detection, the checkpoint distance doubles
+ * up to {@link #MAX_DISTANCE} backward jumps).
+ * <p>
+ * The machine state is the CPU state plus RAM, RAM gets compared by keeping
+ * the checkpoint values of all bytes written since the checkpoint. If both
+ * are equal the program will repeat itself forever. This only holds without
+ * interrupts and I/O handlers, {@link Machine} does not use the detector if
+ * either is present.
+ * </p>
+ */
+public class LoopDetector
+{
+    private final static int  MAX_DISTANCE = 1 << 20;
+    private final static int  MAX_WRITTEN  = 1024;
+    private byte[]            ram          = null;
+    private final byte[]      saved        = new byte[65536];
+    private final boolean[]   written      = new boolean[65536];
+    private final int[]       writeList    = new int[MAX_WRITTEN];
+    private int               writeCount   = 0;
+    private boolean           overflow     = false;
+    private final int[]       state        = new int[8];
+    private boolean           hasState     = false;
+    private long              stateClocks  = 0;
+    private int               lastPc       = -1;
+    private int               distance     = 1;
+    private int               steps        = 0;
+    private int               loopStart    = -1;
+    private int               loopEnd      = -1;
+    private long              loopCycles   = 0;
+
+    /**
+     * Starts a new run on the given RAM.
+     */
+    void start(final byte[] ram)
+    {
+        this.ram = ram;
+        this.clearWritten();
+        this.hasState = false;
+        this.lastPc = -1;
+        this.distance = 1;
+        this.steps = 0;
+        this.loopStart = this.loopEnd = -1;
+    }
+
+    /**
+     * Must be called before each write to RAM.
+     */
+    void writing(final int address)
+    {
+        if (!this.written[address])
+        {
+            if (this.writeCount == MAX_WRITTEN)
+            {
+                this.overflow = true;
+                return;
+            }
+            this.written[address] = true;
+            this.saved[address] = this.ram[address];
+            this.writeList[this.writeCount++] = address;
+        }
+    }
+
+    /**
+     * Must be called between instructions.
+     *
+     * @return {@code true} if the CPU is stuck in an endless loop.
+     */
+    boolean check(final MOS6510 cpu)
+    {
+        final int pc = cpu.getPC();
+        final int last = this.lastPc;
+        this.lastPc = pc;
+        if (pc > last)
+        {
+            return false;
+        }
+        if (this.hasState && this.isSameState(cpu) && this.isSameRam())
+        {
+            this.loopStart = this.loopEnd = cpu.getCycle() == 0 ? pc : cpu.getOpcodePC();
+            this.loopCycles = cpu.getClocks() - this.stateClocks;
+            return true;
+        }
+        if (++this.steps >= this.distance)
+        {
+            this.saveState(cpu);
+            this.steps = 0;
+            this.distance = Math.min(this.distance << 1, MAX_DISTANCE);
+        }
+        return false;
+    }
+
+    private boolean isSameState(final MOS6510 cpu)
+    {
+        final int[] s = this.state;
+        return s[0] == cpu.getPC() && s[1] == cpu.getA() && s[2] == cpu.getX() && s[3] == cpu.getY()
+                && s[4] == cpu.getSP() && s[5] == cpu.getSR() && s[6] == cpu.getCycle() && s[7] == cpu.getOpcodePC();
+    }
+
+    private boolean isSameRam()
+    {
+        if (this.overflow)
+        {
+            return false;
+        }
+        for (int i = 0; i < this.writeCount; i++)
+        {
+            final int address = this.writeList[i];
+            if (this.ram[address] != this.saved[address])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void saveState(final MOS6510 cpu)
+    {
+        final int[] s = this.state;
+        s[0] = cpu.getPC();
+        s[1] = cpu.getA();
+        s[2] = cpu.getX();
+        s[3] = cpu.getY();
+        s[4] = cpu.getSP();
+        s[5] = cpu.getSR();
+        s[6] = cpu.getCycle();
+        s[7] = cpu.getOpcodePC();
+        this.stateClocks = cpu.getClocks();
+        this.hasState = true;
+        this.clearWritten();
+    }
+
+    private void clearWritten()
+    {
+        for (int i = 0; i < this.writeCount; i++)
+        {
+            this.written[this.writeList[i]] = false;
+        }
+        this.writeCount = 0;
+        this.overflow = false;
+    }
+
+    /**
+     * Executes one more iteration of the detected loop (clock by clock) to
+     * find its period and the addresses it spans.
+     * <p>
+     * The distance to the checkpoint is a multiple of the period, so the
+     * current state repeats within that many clock cycles.
+     * </p>
+     */
+    void measure(final MOS6510 cpu)
+    {
+        this.saveState(cpu);
+        final long start = cpu.getClocks();
+        final long end = start + this.loopCycles;
+        while (cpu.getClocks() < end)
+        {
+            cpu.clock();
+            this.addLoopAddress(cpu.getOpcodePC());
+            if (this.isSameState(cpu) && this.isSameRam())
+            {
+                this.loopCycles = cpu.getClocks() - start;
+                return;
+            }
+        }
+    }
+
+    private void addLoopAddress(final int pc)
+    {
+        this.loopStart = Math.min(this.loopStart, pc);
+        this.loopEnd = Math.max(this.loopEnd, pc);
+    }
+
+    public boolean isLoopDetected()
+    {
+        return this.loopStart >= 0;
+    }
+
+    /**
+     * @return The lowest opcode address of the detected loop or -1.
+     */
+    public int getLoopStart()
+    {
+        return this.loopStart;
+    }
+
+    /**
+     * @return The highest opcode address of the detected loop or -1.
+     */
+    public int getLoopEnd()
+    {
+        return this.loopEnd;
+    }
+
+    /**
+     * Logs the detected loop (if any).
+     *
+     * @param labels
+     *            Label addresses, e.g. from {@code Assembler.getLabelMap()}
+     * @param sourceMap
+     *            Source location of each opcode address, may be {@code null}
+     */
+    public void report(final Map<Integer, String> labels, final FileLocation[] sourceMap)
+    {
+        if (this.loopStart < 0)
+        {
+            return;
+        }
+        final TreeMap<Integer, String> sorted = new TreeMap<Integer, String>(labels);
+        Con.error(" Endless loop from $%04x to $%04x, machine state repeats every %d clock cycles", this.loopStart,
+                this.loopEnd, this.loopCycles);
+        Con.error("  from %s", describe(sorted, sourceMap, this.loopStart));
+        Con.error("  to   %s", describe(sorted, sourceMap, this.loopEnd));
+    }
+
+    private static String describe(final TreeMap<Integer, String> labels, final FileLocation[] sourceMap,
+            final int address)
+    {
+        final Entry<Integer, String> label = labels.floorEntry(Integer.valueOf(address));
+        final String name = label == null ? "<no label>"
+                : label.getKey().intValue() == address ? label.getValue()
+                        : label.getValue() + "+" + (address - label.getKey().intValue());
+        final FileLocation loc = sourceMap != null ? sourceMap[address] : null;
+        return loc != null ? name + ", " + loc : name;
+    }
+}
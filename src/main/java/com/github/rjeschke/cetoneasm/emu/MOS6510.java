@@ -378,7 +378,14 @@ public class MOS6510
     private int                    operand;
     private int                    decoding;
     private final Machine          machine;
+    private final IoHandler[]      io;
+    private byte[]                 ram         = null;
+    private BlockCache             blockCache  = null;
+    private LoopDetector           loops       = null;
     private int                    cycle;
+    private long                   clocks      = 0;
+    private int                    opcodePc    = 0;
+    private long                   executed    = 0;
     private AddrMode               addrMode;
     private Opcode                 opcode;
     private boolean                irq;
@@ -391,6 +398,7 @@ public class MOS6510
     public MOS6510(final Machine machine)
     {
         this.machine = machine;
+        this.io = machine.getIoPages();
     }
 
     public int getCycle()
@@ -398,6 +406,104 @@ public class MOS6510
         return this.cycle;
     }
 
+    /**
+     * @return The address of the opcode currently being executed.
+     */
+    public int getOpcodePC()
+    {
+        return this.opcodePc;
+    }
+
+    /**
+     * @return The number of opcodes fetched by the cycle core.
+     */
+    public long getInstructionCount()
+    {
+        return this.executed;
+    }
+
+    /**
+     * @return The number of clock cycles executed since the last reset.
+     */
+    public long getClocks()
+    {
+        return this.clocks;
+    }
+
+    /**
+     * Sets the RAM array for direct (untraced) memory access, bypassing
+     * {@link Machine#read} and {@link Machine#write} for all pages without an
+     * {@link IoHandler}. {@code null} switches back to the machine.
+     */
+    public void setDirectRam(final byte[] ram)
+    {
+        this.ram = ram;
+    }
+
+    /**
+     * Sets the block cache to notify about (direct) RAM writes.
+     */
+    public void setBlockCache(final BlockCache blockCache)
+    {
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * Sets the loop detector to notify about (direct) RAM writes.
+     */
+    void setLoopDetector(final LoopDetector loops)
+    {
+        this.loops = loops;
+    }
+
+    /**
+     * @return {@code true} if an IRQ or NMI is about to be handled.
+     */
+    public boolean isInterruptPending()
+    {
+        return this.nmi || this.irq;
+    }
+
+    private int readMem(final int address)
+    {
+        if (this.ram != null)
+        {
+            final int addr = address & 0xffff;
+            final IoHandler handler = this.io[addr >> 8];
+            return handler == null ? this.ram[addr] & 0xff : handler.read(addr) & 0xff;
+        }
+        return this.machine.read(address);
+    }
+
+    private void writeMem(final int address, final int value)
+    {
+        if (this.ram != null)
+        {
+            final int addr = address & 0xffff;
+            final IoHandler handler = this.io[addr >> 8];
+            if (handler != null)
+            {
+                handler.write(addr, value & 0xff);
+            }
+            else
+            {
+                if (this.loops != null)
+                {
+                    this.loops.writing(addr);
+                }
+                this.ram[addr] = (byte)value;
+                if (this.blockCache != null)
+                {
+                    this.blockCache.written(addr);
+                }
+            }
+        }
+        else
+        {
+            this.machine.write(address, value);
+        }
+    }
+
     public boolean isReading()
     {
         return this.read;
@@ -449,10 +555,11 @@ public class MOS6510
     {
         this.a = this.x = this.y = 0;
         this.cycle = 0;
+        this.clocks = 0;
         this.sp = 0xfd;
         this.sr = 0x20 | FLAG_B | FLAG_I;
-        this.pcl = this.machine.read(0xfffc);
-        this.pch = this.machine.read(0xfffd);
+        this.pcl = this.readMem(0xfffc);
+        this.pch = this.readMem(0xfffd);
         this.nmi = this.nmiLatch = false;
         this.irq = this.irqLatch = false;
         this.read = true;
@@ -463,6 +570,46 @@ public class MOS6510
         this.a = this.x = this.y = val & 0xff;
     }
 
+    public int getA()
+    {
+        return this.a;
+    }
+
+    public void setA(final int value)
+    {
+        this.a = value & 0xff;
+    }
+
+    public int getX()
+    {
+        return this.x;
+    }
+
+    public void setX(final int value)
+    {
+        this.x = value & 0xff;
+    }
+
+    public int getY()
+    {
+        return this.y;
+    }
+
+    public void setY(final int value)
+    {
+        this.y = value & 0xff;
+    }
+
+    public int getSR()
+    {
+        return this.sr;
+    }
+
+    public int getSP()
+    {
+        return this.sp;
+    }
+
     public void jsr(final int dest, final int src)
     {
         this.cycle = 0;
@@ -475,7 +622,7 @@ public class MOS6510
 
     private void push(final int value)
     {
-        this.machine.write(0x100 | this.sp, value & 0xff);
+        this.writeMem(0x100 | this.sp, value & 0xff);
         this.decSP();
     }
 
@@ -532,1121 +679,65 @@ public class MOS6510
 
     private void fetchOpcode()
     {
-        this.decoding = this.machine.read(this.getPC());
+        this.decoding = this.readMem(this.getPC());
         this.incPC();
     }
 
     private void fetchOperand()
     {
-        this.operand = this.machine.read(this.getPC());
+        this.operand = this.readMem(this.getPC());
         this.incPC();
     }
 
     private void fetchAddrl()
     {
-        this.addrl = this.machine.read(this.getPC());
-        this.addrh = 0;
-        this.addrc = false;
-        this.incPC();
-    }
-
-    private void fetchAddrh()
-    {
-        this.addrh = this.machine.read(this.getPC());
-        this.incPC();
-    }
-
-    private void wasteRead()
-    {
-        this.machine.read(this.getPC());
-    }
-
-    private void initOpcode()
-    {
-        this.read = true;
-        this.cycle = 1;
-
-        if (this.nmi)
-        {
-            this.nmi = false;
-            this.opcode = Opcode.NMI;
-            this.addrMode = AddrMode.NMI;
-            this.cycle = 1;
-            return;
-        }
-
-        if (this.irq && (this.sr & FLAG_I) == 0)
-        {
-            this.irq = false;
-            this.opcode = Opcode.IRQ;
-            this.addrMode = AddrMode.IRQ;
-            this.cycle = 1;
-            return;
-        }
-
-        this.fetchOpcode();
-        // this.opcode = OPCODES[this.decoding];
-        // this.addrMode = ADDR_MODES[this.decoding];
-        // /*
-        switch (this.decoding)
-        {
-        case 0x00: // BRK
-            this.opcode = Opcode.BRK;
-            this.addrMode = AddrMode.BRK;
-            break;
-        case 0x01: // ORA ($xx,X)
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0x02: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x03: // SLO ($xx,X)
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ZPIX_RMW;
-            break;
-        case 0x04: // NOP $xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x05: // ORA $xx
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x06: // ASL $xx
-            this.opcode = Opcode.ASL;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-        case 0x07: // SLO $xx
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-
-        case 0x08: // PHP
-            this.opcode = Opcode.PHP;
-            this.addrMode = AddrMode.PUSH;
-            break;
-        case 0x09: // ORA #$xx
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x0a: // ASL A
-            this.opcode = Opcode.ASL;
-            this.addrMode = AddrMode.ACCU;
-            break;
-        case 0x0b: // ANC #$xx
-            this.opcode = Opcode.ANC;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x0c: // NOP $xxxx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0x0d: // ORA $xxxx
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0x0e: // ASL $xxxx
-            this.opcode = Opcode.ASL;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-        case 0x0f: // SLO $xxxx
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-
-        case 0x10: // BPL
-            this.opcode = Opcode.BPL;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0x11: // ORA ($xx),Y
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0x12: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x13: // SLO ($xx),Y
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ZPIY_RMW;
-            break;
-        case 0x14: // NOP $xx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x15: // ORA $xx,X
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x16: // ASL $xx,X
-            this.opcode = Opcode.ASL;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-        case 0x17: // SLO $xx,X
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-
-        case 0x18: // CLC
-            this.opcode = Opcode.CLC;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x19: // ORA $xxxx,Y
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0x1a: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x1b: // SLO $xxxx,Y
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ABSY_RMW;
-            break;
-        case 0x1c: // NOP $xxxx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x1d: // ORA $xxxx,X
-            this.opcode = Opcode.ORA;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x1e: // ASL $xxxx,X
-            this.opcode = Opcode.ASL;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-        case 0x1f: // SLO $xxxx,X
-            this.opcode = Opcode.SLO;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-
-        case 0x20: // JSR $xxxx
-            this.opcode = Opcode.JSR;
-            this.addrMode = AddrMode.JSR;
-            break;
-        case 0x21: // AND ($xx,X)
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0x22: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x23: // RLA ($xx,X)
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ZPIX_RMW;
-            break;
-        case 0x24: // BIT $xx
-            this.opcode = Opcode.BIT;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x25: // AND $xx
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x26: // ROL $xx
-            this.opcode = Opcode.ROL;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-        case 0x27: // RLA $xx
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-
-        case 0x28: // PLP
-            this.opcode = Opcode.PLP;
-            this.addrMode = AddrMode.POP;
-            break;
-        case 0x29: // AND #$xx
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x2a: // ROL A
-            this.opcode = Opcode.ROL;
-            this.addrMode = AddrMode.ACCU;
-            break;
-        case 0x2b: // ANC #$xx
-            this.opcode = Opcode.ANC;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x2c: // BIT $xxxx
-            this.opcode = Opcode.BIT;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0x2d: // AND $xxxx
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0x2e: // ROL $xxxx
-            this.opcode = Opcode.ROL;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-        case 0x2f: // RLA $xxxx
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-
-        case 0x30: // BMI
-            this.opcode = Opcode.BMI;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0x31: // AND ($xx),Y
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0x32: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x33: // RLA ($xx),Y
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ZPIY_RMW;
-            break;
-        case 0x34: // NOP $xx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x35: // AND $xx,X
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x36: // ROL $xx,X
-            this.opcode = Opcode.ROL;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-        case 0x37: // RLA $xx,X
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-
-        case 0x38: // SEC
-            this.opcode = Opcode.SEC;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x39: // AND $xxxx,Y
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0x3a: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x3b: // RLA $xxxx,Y
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ABSY_RMW;
-            break;
-        case 0x3c: // NOP $xxxx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x3d: // AND $xxxx,X
-            this.opcode = Opcode.AND;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x3e: // ROL $xxxx,X
-            this.opcode = Opcode.ROL;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-        case 0x3f: // RLA $xxxx,X
-            this.opcode = Opcode.RLA;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-
-        case 0x40: // RTI
-            this.opcode = Opcode.RTI;
-            this.addrMode = AddrMode.RTI;
-            break;
-        case 0x41: // EOR ($xx,X)
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0x42: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x43: // SRE ($xx,X)
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ZPIX_RMW;
-            break;
-        case 0x44: // NOP $xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x45: // EOR $xx
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x46: // LSR $xx
-            this.opcode = Opcode.LSR;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-        case 0x47: // SRE $xx
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-
-        case 0x48: // PHA
-            this.opcode = Opcode.PHA;
-            this.addrMode = AddrMode.PUSH;
-            break;
-        case 0x49: // EOR #$xx
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x4a: // LSR A
-            this.opcode = Opcode.LSR;
-            this.addrMode = AddrMode.ACCU;
-            break;
-        case 0x4b: // ALR #$xx
-            this.opcode = Opcode.ALR;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x4c: // JMP $xxxx
-            this.opcode = Opcode.JMP;
-            this.addrMode = AddrMode.ABS_JMP;
-            break;
-        case 0x4d: // EOR $xxxx
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0x4e: // LSR $xxxx
-            this.opcode = Opcode.LSR;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-        case 0x4f: // SRE $xxxx
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-
-        case 0x50: // BVC
-            this.opcode = Opcode.BVC;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0x51: // EOR ($xx),Y
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0x52: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x53: // SRE ($xx),Y
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ZPIY_RMW;
-            break;
-        case 0x54: // NOP $xx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x55: // EOR $xx,X
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x56: // LSR $xx,X
-            this.opcode = Opcode.LSR;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-        case 0x57: // SRE $xx,X
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-
-        case 0x58: // CLI
-            this.opcode = Opcode.CLI;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x59: // EOR $xxxx,Y
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0x5a: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x5b: // SRE $xxxx,Y
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ABSY_RMW;
-            break;
-        case 0x5c: // NOP $xxxx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x5d: // EOR $xxxx,X
-            this.opcode = Opcode.EOR;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x5e: // LSR $xxxx,X
-            this.opcode = Opcode.LSR;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-        case 0x5f: // SRE $xxxx,X
-            this.opcode = Opcode.SRE;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-
-        case 0x60: // RTS
-            this.opcode = Opcode.RTS;
-            this.addrMode = AddrMode.RTS;
-            break;
-        case 0x61: // ADC ($xx,X)
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0x62: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x63: // RRA ($xx,X)
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ZPIX_RMW;
-            break;
-        case 0x64: // NOP $xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x65: // ADC $xx
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0x66: // ROR $xx
-            this.opcode = Opcode.ROR;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-        case 0x67: // RRA $xx
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-
-        case 0x68: // PLA
-            this.opcode = Opcode.PLA;
-            this.addrMode = AddrMode.POP;
-            break;
-        case 0x69: // ADC #$xx
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x6a: // ROR A
-            this.opcode = Opcode.ROR;
-            this.addrMode = AddrMode.ACCU;
-            break;
-        case 0x6b: // ARR #$xx
-            this.opcode = Opcode.ARR;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x6c: // JMP ($xxxx)
-            this.opcode = Opcode.JMP;
-            this.addrMode = AddrMode.ABS_IND;
-            break;
-        case 0x6d: // ADC $xxxx
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0x6e: // ROR $xxxx
-            this.opcode = Opcode.ROR;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-        case 0x6f: // RRA $xxxx
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-
-        case 0x70: // BVS
-            this.opcode = Opcode.BVS;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0x71: // ADC ($xx),Y
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0x72: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x73: // RRA ($xx),Y
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ZPIY_RMW;
-            break;
-        case 0x74: // NOP $xx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x75: // ADC $xx,X
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0x76: // ROR $xx,X
-            this.opcode = Opcode.ROR;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-        case 0x77: // RRA $xx,X
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-
-        case 0x78: // SEI
-            this.opcode = Opcode.SEI;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x79: // ADC $xxxx,Y
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0x7a: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x7b: // RRA $xxxx,Y
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ABSY_RMW;
-            break;
-        case 0x7c: // NOP $xxxx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x7d: // ADC $xxxx,X
-            this.opcode = Opcode.ADC;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0x7e: // ROR $xxxx,X
-            this.opcode = Opcode.ROR;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-        case 0x7f: // RRA $xxxx,X
-            this.opcode = Opcode.RRA;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-
-        case 0x80: // NOP #$xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x81: // STA ($xx,X)
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ZPIX_WRITE;
-            break;
-        case 0x82: // NOP #$xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x83: // SAX ($xx,X)
-            this.opcode = Opcode.SAX;
-            this.addrMode = AddrMode.ZPIX_WRITE;
-            break;
-        case 0x84: // STY $xx
-            this.opcode = Opcode.STY;
-            this.addrMode = AddrMode.ZP_WRITE;
-            break;
-        case 0x85: // STA $xx
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ZP_WRITE;
-            break;
-        case 0x86: // STX $xx
-            this.opcode = Opcode.STX;
-            this.addrMode = AddrMode.ZP_WRITE;
-            break;
-        case 0x87: // SAX $xx
-            this.opcode = Opcode.SAX;
-            this.addrMode = AddrMode.ZP_WRITE;
-            break;
-
-        case 0x88: // DEY
-            this.opcode = Opcode.DEY;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x89: // NOP #$xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x8a: // TXA
-            this.opcode = Opcode.TXA;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x8b: // XAA #$xx
-            this.opcode = Opcode.XAA;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0x8c: // STY $xxxxx
-            this.opcode = Opcode.STY;
-            this.addrMode = AddrMode.ABS_WRITE;
-            break;
-        case 0x8d: // STA $xxxxx
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ABS_WRITE;
-            break;
-        case 0x8e: // STX $xxxxx
-            this.opcode = Opcode.STX;
-            this.addrMode = AddrMode.ABS_WRITE;
-            break;
-        case 0x8f: // SAX $xxxxx
-            this.opcode = Opcode.SAX;
-            this.addrMode = AddrMode.ABS_WRITE;
-            break;
-
-        case 0x90: // BCC
-            this.opcode = Opcode.BCC;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0x91: // STA ($xx),Y
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ZPIY_WRITE;
-            break;
-        case 0x92: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0x93: // AHX ($xx),Y
-            this.opcode = Opcode.AHX;
-            this.addrMode = AddrMode.ZPIY_WRITE;
-            break;
-        case 0x94: // STY $xx,X
-            this.opcode = Opcode.STY;
-            this.addrMode = AddrMode.ZPX_WRITE;
-            break;
-        case 0x95: // STA $xx,X
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ZPX_WRITE;
-            break;
-        case 0x96: // STX $xx,Y
-            this.opcode = Opcode.STX;
-            this.addrMode = AddrMode.ZPY_WRITE;
-            break;
-        case 0x97: // SAX $xx,Y
-            this.opcode = Opcode.SAX;
-            this.addrMode = AddrMode.ZPY_WRITE;
-            break;
-
-        case 0x98: // TYA
-            this.opcode = Opcode.TYA;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x99: // STA $xxxx,Y
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ABSY_WRITE;
-            break;
-        case 0x9a: // TXS
-            this.opcode = Opcode.TXS;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0x9b: // TAS $xxxx,Y
-            this.opcode = Opcode.TAS;
-            this.addrMode = AddrMode.ABSY_WRITE;
-            break;
-        case 0x9c: // SHY $xxxx,X
-            this.opcode = Opcode.SHY;
-            this.addrMode = AddrMode.ABSX_WRITE;
-            break;
-        case 0x9d: // STA $xxxx,X
-            this.opcode = Opcode.STA;
-            this.addrMode = AddrMode.ABSX_WRITE;
-            break;
-        case 0x9e: // SHX $xxxx,Y
-            this.opcode = Opcode.SHX;
-            this.addrMode = AddrMode.ABSY_WRITE;
-            break;
-        case 0x9f: // AHX $xxxx,Y
-            this.opcode = Opcode.AHX;
-            this.addrMode = AddrMode.ABSY_WRITE;
-            break;
-
-        case 0xa0: // LDY #$xx
-            this.opcode = Opcode.LDY;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xa1: // LDA ($xx,X)
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0xa2: // LDX #$xx
-            this.opcode = Opcode.LDX;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xa3: // LAX ($xx,X)
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0xa4: // LDY $xx
-            this.opcode = Opcode.LDY;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xa5: // LDA $xx
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xa6: // LDX $xx
-            this.opcode = Opcode.LDX;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xa7: // LAX $xx
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-
-        case 0xa8: // TAY
-            this.opcode = Opcode.TAY;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xa9: // LDA #$xx
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xaa: // TAX
-            this.opcode = Opcode.TAX;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xab: // LAX #$xx
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xac: // LDY $xxxxx
-            this.opcode = Opcode.LDY;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xad: // LDA $xxxxx
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xae: // LDX $xxxxx
-            this.opcode = Opcode.LDX;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xaf: // LAX $xxxxx
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-
-        case 0xb0: // BCS
-            this.opcode = Opcode.BCS;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0xb1: // LDA ($xx),Y
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0xb2: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0xb3: // LAX ($xx),Y
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0xb4: // LDY $xx,X
-            this.opcode = Opcode.LDY;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0xb5: // LDA $xx,X
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0xb6: // LDX $xx,Y
-            this.opcode = Opcode.LDX;
-            this.addrMode = AddrMode.ZPY_READ;
-            break;
-        case 0xb7: // LAX $xx,Y
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.ZPY_READ;
-            break;
-
-        case 0xb8: // CLV
-            this.opcode = Opcode.CLV;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xb9: // LDA $xxxx,Y
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0xba: // TSX
-            this.opcode = Opcode.TSX;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xbb: // LAS $xxxx,Y
-            this.opcode = Opcode.LAS;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0xbc: // LDY $xxxx,X
-            this.opcode = Opcode.LDY;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0xbd: // LDA $xxxx,X
-            this.opcode = Opcode.LDA;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0xbe: // LDX $xxxx,Y
-            this.opcode = Opcode.LDX;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0xbf: // LAX $xxxx,Y
-            this.opcode = Opcode.LAX;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-
-        case 0xc0: // CPY #$xx
-            this.opcode = Opcode.CPY;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xc1: // CMP ($xx,X)
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0xc2: // NOP #$xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xc3: // DCP ($xx,X)
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ZPIX_RMW;
-            break;
-        case 0xc4: // CPY $xx
-            this.opcode = Opcode.CPY;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xc5: // CMP $xx
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xc6: // DEC $xx
-            this.opcode = Opcode.DEC;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-        case 0xc7: // DCP $xx
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-
-        case 0xc8: // INY
-            this.opcode = Opcode.INY;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xc9: // CMP #$xx
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xca: // DEX
-            this.opcode = Opcode.DEX;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xcb: // AXS #$xx
-            this.opcode = Opcode.AXS;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xcc: // CPY $xxxxx
-            this.opcode = Opcode.CPY;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xcd: // CMP $xxxxx
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xce: // DEC $xxxxx
-            this.opcode = Opcode.DEC;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-        case 0xcf: // DCP $xxxxx
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-
-        case 0xd0: // BNE
-            this.opcode = Opcode.BNE;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0xd1: // CMP ($xx),Y
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0xd2: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0xd3: // DCP ($xx),Y
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ZPIY_RMW;
-            break;
-        case 0xd4: // NOP $xx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0xd5: // CMP $xx,X
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0xd6: // DEC $xx,X
-            this.opcode = Opcode.DEC;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-        case 0xd7: // DCP $xx,X
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-
-        case 0xd8: // CLD
-            this.opcode = Opcode.CLD;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xd9: // CMP $xxxx,Y
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0xda: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xdb: // DCP $xxxx,Y
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ABSY_RMW;
-            break;
-        case 0xdc: // NOP $xxxx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0xdd: // CMP $xxxx,X
-            this.opcode = Opcode.CMP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0xde: // DEC $xxxx,X
-            this.opcode = Opcode.DEC;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-        case 0xdf: // DCP $xxxx,X
-            this.opcode = Opcode.DCP;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
+        this.addrl = this.readMem(this.getPC());
+        this.addrh = 0;
+        this.addrc = false;
+        this.incPC();
+    }
 
-        case 0xe0: // CPX #$xx
-            this.opcode = Opcode.CPX;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xe1: // SBC ($xx,X)
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ZPIX_READ;
-            break;
-        case 0xe2: // NOP #$xx
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xe3: // ISC ($xx,X)
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ZPIX_RMW;
-            break;
-        case 0xe4: // CPX $xx
-            this.opcode = Opcode.CPX;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xe5: // SBC $xx
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ZP_READ;
-            break;
-        case 0xe6: // INC $xx
-            this.opcode = Opcode.INC;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
-        case 0xe7: // ISC $xx
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ZP_RMW;
-            break;
+    private void fetchAddrh()
+    {
+        this.addrh = this.readMem(this.getPC());
+        this.incPC();
+    }
 
-        case 0xe8: // INX
-            this.opcode = Opcode.INX;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xe9: // SBC #$xx
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xea: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xeb: // SBC #$xx
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.IMMEDIATE;
-            break;
-        case 0xec: // CPX $xxxxx
-            this.opcode = Opcode.CPX;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xed: // SBC $xxxxx
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ABS_READ;
-            break;
-        case 0xee: // INC $xxxxx
-            this.opcode = Opcode.INC;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
-        case 0xef: // ISC $xxxxx
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ABS_RMW;
-            break;
+    private void wasteRead()
+    {
+        this.readMem(this.getPC());
+    }
 
-        case 0xf0: // BEQ
-            this.opcode = Opcode.BEQ;
-            this.addrMode = AddrMode.REL;
-            break;
-        case 0xf1: // SBC ($xx),Y
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ZPIY_READ;
-            break;
-        case 0xf2: // KIL
-            this.opcode = Opcode.KIL;
-            this.addrMode = AddrMode.KIL;
-            break;
-        case 0xf3: // ISC ($xx),Y
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ZPIY_RMW;
-            break;
-        case 0xf4: // NOP $xx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0xf5: // SBC $xx,X
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ZPX_READ;
-            break;
-        case 0xf6: // INC $xx,X
-            this.opcode = Opcode.INC;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
-        case 0xf7: // ISC $xx,X
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ZPX_RMW;
-            break;
+    private void initOpcode()
+    {
+        this.read = true;
+        this.cycle = 1;
 
-        case 0xf8: // SED
-            this.opcode = Opcode.SED;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xf9: // SBC $xxxx,Y
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ABSY_READ;
-            break;
-        case 0xfa: // NOP
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.NONE;
-            break;
-        case 0xfb: // ISC $xxxx,Y
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ABSY_RMW;
-            break;
-        case 0xfc: // NOP $xxxx,X
-            this.opcode = Opcode.NOP;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0xfd: // SBC $xxxx,X
-            this.opcode = Opcode.SBC;
-            this.addrMode = AddrMode.ABSX_READ;
-            break;
-        case 0xfe: // INC $xxxx,X
-            this.opcode = Opcode.INC;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
-        case 0xff: // ISC $xxxx,X
-            this.opcode = Opcode.ISC;
-            this.addrMode = AddrMode.ABSX_RMW;
-            break;
+        if (this.nmi)
+        {
+            this.nmi = false;
+            this.machine.interruptTaken(true);
+            this.opcode = Opcode.NMI;
+            this.addrMode = AddrMode.NMI;
+            this.cycle = 1;
+            return;
+        }
+
+        if (this.irq && (this.sr & FLAG_I) == 0)
+        {
+            this.irq = false;
+            this.machine.interruptTaken(false);
+            this.opcode = Opcode.IRQ;
+            this.addrMode = AddrMode.IRQ;
+            this.cycle = 1;
+            return;
         }
-        // */
+
+        this.opcodePc = this.getPC();
+        this.executed++;
+        this.fetchOpcode();
+        this.opcode = OPCODES[this.decoding];
+        this.addrMode = ADDR_MODES[this.decoding];
         if (this.debug)
         {
             this.disCurrent();
@@ -2148,7 +1239,7 @@ public class MOS6510
         case PUSH:
             this.read = false;
             this.doOp();
-            this.machine.write(0x100 | this.sp, this.operand);
+            this.writeMem(0x100 | this.sp, this.operand);
             this.decSP();
             this.doIRQs();
             this.cycle = 0;
@@ -2161,7 +1252,7 @@ public class MOS6510
         case IRQ:
         case BRK:
             this.read = false;
-            this.machine.write(0x100 | this.sp, this.pch);
+            this.writeMem(0x100 | this.sp, this.pch);
             this.decSP();
             this.cycle++;
             break;
@@ -2200,19 +1291,19 @@ public class MOS6510
             this.cycle++;
             break;
         case ZP_READ:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZP_RMW:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.cycle++;
             break;
         case ZP_WRITE:
             this.read = false;
             this.doOp();
-            this.machine.write(this.addrl, this.operand);
+            this.writeMem(this.addrl, this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
@@ -2221,23 +1312,23 @@ public class MOS6510
         case ZPIX_READ:
         case ZPIX_RMW:
         case ZPIX_WRITE:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.addrl = (this.addrl + this.x) & 0xff;
             this.cycle++;
             break;
         case ZPX_WRITE:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.addrl = (this.addrl + this.x) & 0xff;
             this.cycle++;
             break;
         case ZPY_READ:
         case ZPY_RMW:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.addrl = (this.addrl + this.y) & 0xff;
             this.cycle++;
             break;
         case ZPY_WRITE:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.addrl = (this.addrl + this.y) & 0xff;
             this.cycle++;
             break;
@@ -2245,7 +1336,7 @@ public class MOS6510
         case ZPIY_RMW:
         case ZPIY_WRITE:
             this.operand = this.addrl;
-            this.addrl = this.machine.read(this.operand);
+            this.addrl = this.readMem(this.operand);
             this.cycle++;
             break;
         }
@@ -2282,17 +1373,17 @@ public class MOS6510
             }
             break;
         case RTS:
-            this.pcl = this.machine.read(0x100 | this.sp);
+            this.pcl = this.readMem(0x100 | this.sp);
             this.incSP();
             this.cycle++;
             break;
         case RTI:
-            this.sr = this.machine.read(0x100 | this.sp) | 0x20;
+            this.sr = this.readMem(0x100 | this.sp) | 0x20;
             this.incSP();
             this.cycle++;
             break;
         case POP:
-            this.operand = this.machine.read(0x100 | this.sp);
+            this.operand = this.readMem(0x100 | this.sp);
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
@@ -2301,36 +1392,36 @@ public class MOS6510
         case IRQ:
         case BRK:
             this.read = false;
-            this.machine.write(0x100 | this.sp, this.pcl);
+            this.writeMem(0x100 | this.sp, this.pcl);
             this.decSP();
             this.cycle++;
             break;
         case JSR:
             this.read = false;
-            this.machine.write(0x100 | this.sp, this.pch);
+            this.writeMem(0x100 | this.sp, this.pch);
             this.decSP();
             this.cycle++;
             break;
         case ABS_READ:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
             break;
         case ABS_RMW:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.cycle++;
             break;
         case ABS_WRITE:
             this.read = false;
             this.doOp();
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         case ABSX_READ:
         case ABSY_READ:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             if (this.fixAddr())
             {
                 this.cycle++;
@@ -2344,44 +1435,44 @@ public class MOS6510
             break;
         case ABSX_RMW:
         case ABSY_RMW:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.fixAddr();
             this.cycle++;
             break;
         case ABSX_WRITE:
         case ABSY_WRITE:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.fixAddr();
             this.cycle++;
             break;
         case ABS_IND:
-            this.pcl = this.machine.read(this.getAddr());
+            this.pcl = this.readMem(this.getAddr());
             this.addrl = (this.addrl + 1) & 0xff;
             this.cycle++;
             break;
         case ZP_RMW:
             this.read = false;
-            this.machine.write(this.addrl, this.operand);
+            this.writeMem(this.addrl, this.operand);
             this.cycle++;
             break;
 
         case ZPX_READ:
         case ZPY_READ:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZPX_RMW:
         case ZPY_RMW:
-            this.operand = this.machine.read(this.addrl);
+            this.operand = this.readMem(this.addrl);
             this.cycle++;
             break;
         case ZPX_WRITE:
         case ZPY_WRITE:
             this.read = false;
             this.doOp();
-            this.machine.write(this.addrl, this.operand);
+            this.writeMem(this.addrl, this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
@@ -2389,13 +1480,13 @@ public class MOS6510
         case ZPIX_RMW:
         case ZPIX_WRITE:
             this.operand = this.addrl;
-            this.addrl = this.machine.read(this.operand);
+            this.addrl = this.readMem(this.operand);
             this.cycle++;
             break;
         case ZPIY_READ:
         case ZPIY_RMW:
         case ZPIY_WRITE:
-            this.addrh = this.machine.read((this.operand + 1) & 0xff);
+            this.addrh = this.readMem((this.operand + 1) & 0xff);
             this.addAddr(this.y);
             this.cycle++;
             break;
@@ -2428,11 +1519,11 @@ public class MOS6510
             break;
 
         case RTS:
-            this.pch = this.machine.read(0x100 | this.sp);
+            this.pch = this.readMem(0x100 | this.sp);
             this.cycle++;
             break;
         case RTI:
-            this.pcl = this.machine.read(0x100 | this.sp);
+            this.pcl = this.readMem(0x100 | this.sp);
             this.incSP();
             this.cycle++;
             break;
@@ -2441,7 +1532,7 @@ public class MOS6510
         case IRQ:
             this.read = false;
             this.sr &= ~FLAG_B;
-            this.machine.write(0x100 | this.sp, this.sr);
+            this.writeMem(0x100 | this.sp, this.sr);
             this.sr |= FLAG_I;
             this.decSP();
             this.cycle++;
@@ -2449,25 +1540,25 @@ public class MOS6510
         case BRK:
             this.read = false;
             this.sr |= FLAG_B;
-            this.machine.write(0x100 | this.sp, this.sr);
+            this.writeMem(0x100 | this.sp, this.sr);
             this.sr |= FLAG_I;
             this.decSP();
             this.cycle++;
             break;
         case JSR:
             this.read = false;
-            this.machine.write(0x100 | this.sp, this.pcl);
+            this.writeMem(0x100 | this.sp, this.pcl);
             this.decSP();
             this.cycle++;
             break;
         case ABS_RMW:
             this.read = false;
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.cycle++;
             break;
         case ABSX_READ:
         case ABSY_READ:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
@@ -2476,44 +1567,44 @@ public class MOS6510
         case ABSY_WRITE:
             this.read = false;
             this.doOp();
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         case ABSX_RMW:
         case ABSY_RMW:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.cycle++;
             break;
         case ABS_IND:
-            this.pch = this.machine.read(this.getAddr());
+            this.pch = this.readMem(this.getAddr());
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZP_RMW:
             this.read = false;
             this.doOp();
-            this.machine.write(this.addrl, this.operand);
+            this.writeMem(this.addrl, this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZPX_RMW:
         case ZPY_RMW:
             this.read = false;
-            this.machine.write(this.addrl, this.operand);
+            this.writeMem(this.addrl, this.operand);
             this.cycle++;
             break;
         case ZPIX_READ:
         case ZPIX_RMW:
-            this.addrh = this.machine.read((this.operand + 1) & 0xff);
+            this.addrh = this.readMem((this.operand + 1) & 0xff);
             this.cycle++;
             break;
         case ZPIX_WRITE:
-            this.addrh = this.machine.read((this.operand + 1) & 0xff);
+            this.addrh = this.readMem((this.operand + 1) & 0xff);
             this.cycle++;
             break;
         case ZPIY_READ:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             if (this.fixAddr())
             {
                 this.cycle++;
@@ -2526,12 +1617,12 @@ public class MOS6510
             }
             break;
         case ZPIY_RMW:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.fixAddr();
             this.cycle++;
             break;
         case ZPIY_WRITE:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.fixAddr();
             this.cycle++;
             break;
@@ -2575,18 +1666,19 @@ public class MOS6510
             this.cycle = 0;
             break;
         case RTI:
-            this.pch = this.machine.read(0x100 | this.sp);
+            this.pch = this.readMem(0x100 | this.sp);
+            this.machine.interruptReturned();
             this.doIRQs();
             this.cycle = 0;
             break;
 
         case NMI:
-            this.pcl = this.machine.read(0xfffa);
+            this.pcl = this.readMem(0xfffa);
             this.cycle++;
             break;
         case IRQ:
         case BRK:
-            this.pcl = this.machine.read(0xfffe);
+            this.pcl = this.readMem(0xfffe);
             this.cycle++;
             break;
         case JSR:
@@ -2599,14 +1691,14 @@ public class MOS6510
         case ABS_RMW:
             this.read = false;
             this.doOp();
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         case ABSX_RMW:
         case ABSY_RMW:
             this.read = false;
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.cycle++;
             break;
         case ZPX_RMW:
@@ -2615,29 +1707,29 @@ public class MOS6510
         case ZPIY_WRITE:
             this.read = false;
             this.doOp();
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZPIX_READ:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZPIX_RMW:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.cycle++;
             break;
 
         case ZPIY_READ:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.doOp();
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZPIY_RMW:
-            this.operand = this.machine.read(this.getAddr());
+            this.operand = this.readMem(this.getAddr());
             this.cycle++;
             break;
         }
@@ -2685,13 +1777,13 @@ public class MOS6510
             break;
 
         case NMI:
-            this.pch = this.machine.read(0xfffb);
+            this.pch = this.readMem(0xfffb);
             this.doIRQs();
             this.cycle = 0;
             break;
         case IRQ:
         case BRK:
-            this.pch = this.machine.read(0xffff);
+            this.pch = this.readMem(0xffff);
             this.doIRQs();
             this.cycle = 0;
             break;
@@ -2699,14 +1791,14 @@ public class MOS6510
         case ABSY_RMW:
             this.read = false;
             this.doOp();
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         case ZPIX_RMW:
         case ZPIY_RMW:
             this.read = false;
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.cycle++;
             break;
         }
@@ -2762,13 +1854,437 @@ public class MOS6510
         case ZPIY_RMW:
             this.read = false;
             this.doOp();
-            this.machine.write(this.getAddr(), this.operand);
+            this.writeMem(this.getAddr(), this.operand);
             this.doIRQs();
             this.cycle = 0;
             break;
         }
     }
 
+    /**
+     * @return The length of the given opcode if it can be executed in a
+     *         translated block, {@code 0} otherwise.
+     */
+    static int getTranslatedLength(final int opcode)
+    {
+        switch (OPCODES[opcode])
+        {
+        case AHX:
+        case SHX:
+        case SHY:
+        case TAS:
+            // These depend on the addressing state of the cycle core
+            return 0;
+        default:
+            break;
+        }
+        switch (ADDR_MODES[opcode])
+        {
+        case NONE:
+        case ACCU:
+        case PUSH:
+        case POP:
+        case RTS:
+            return 1;
+        case REL:
+        case IMMEDIATE:
+        case ZP_READ:
+        case ZP_WRITE:
+        case ZP_RMW:
+        case ZPX_READ:
+        case ZPX_WRITE:
+        case ZPX_RMW:
+        case ZPY_READ:
+        case ZPY_WRITE:
+        case ZPY_RMW:
+        case ZPIX_READ:
+        case ZPIX_WRITE:
+        case ZPIX_RMW:
+        case ZPIY_READ:
+        case ZPIY_WRITE:
+        case ZPIY_RMW:
+            return 2;
+        case ABS_READ:
+        case ABS_WRITE:
+        case ABS_RMW:
+        case ABSX_READ:
+        case ABSX_WRITE:
+        case ABSX_RMW:
+        case ABSY_READ:
+        case ABSY_WRITE:
+        case ABSY_RMW:
+        case ABS_JMP:
+        case ABS_IND:
+        case JSR:
+            return 3;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * @return {@code true} if the given translatable opcode changes control
+     *         flow, i.e. is the last one of a block.
+     */
+    static boolean isBlockExit(final int opcode)
+    {
+        switch (ADDR_MODES[opcode])
+        {
+        case REL:
+        case ABS_JMP:
+        case ABS_IND:
+        case JSR:
+        case RTS:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return The base cycle count (without page crossing) of the given
+     *         translatable opcode.
+     */
+    static int getTranslatedCycles(final int opcode)
+    {
+        switch (ADDR_MODES[opcode])
+        {
+        case NONE:
+        case ACCU:
+        case IMMEDIATE:
+        case REL:
+            return 2;
+        case ZP_READ:
+        case ZP_WRITE:
+        case PUSH:
+        case ABS_JMP:
+            return 3;
+        case ZPX_READ:
+        case ZPX_WRITE:
+        case ZPY_READ:
+        case ZPY_WRITE:
+        case ABS_READ:
+        case ABS_WRITE:
+        case ABSX_READ:
+        case ABSY_READ:
+        case POP:
+            return 4;
+        case ZP_RMW:
+        case ABSX_WRITE:
+        case ABSY_WRITE:
+        case ZPIY_READ:
+        case ABS_IND:
+            return 5;
+        case ZPX_RMW:
+        case ZPY_RMW:
+        case ABS_RMW:
+        case JSR:
+        case RTS:
+        case ZPIX_READ:
+        case ZPIX_WRITE:
+        case ZPIY_WRITE:
+            return 6;
+        case ABSX_RMW:
+        case ABSY_RMW:
+            return 7;
+        case ZPIX_RMW:
+        case ZPIY_RMW:
+            return 8;
+        default:
+            return 0;
+        }
+    }
+
+    private int readPointer(final int zp)
+    {
+        return this.readMem(zp) | (this.readMem((zp + 1) & 0xff) << 8);
+    }
+
+    private boolean isBranchTaken()
+    {
+        switch (this.opcode)
+        {
+        case BPL:
+            return (this.sr & FLAG_N) == 0;
+        case BMI:
+            return (this.sr & FLAG_N) != 0;
+        case BVC:
+            return (this.sr & FLAG_V) == 0;
+        case BVS:
+            return (this.sr & FLAG_V) != 0;
+        case BCC:
+            return (this.sr & FLAG_C) == 0;
+        case BCS:
+            return (this.sr & FLAG_C) != 0;
+        case BNE:
+            return (this.sr & FLAG_Z) == 0;
+        default:
+            return (this.sr & FLAG_Z) != 0;
+        }
+    }
+
+    private boolean isIo(final int address)
+    {
+        return this.io[(address & 0xffff) >> 8] != null;
+    }
+
+    /**
+     * @return {@code true} if the given translatable opcode might access
+     *         (including dummy accesses) a page with an {@link IoHandler}.
+     */
+    private boolean touchesIo(final AddrMode mode, final int arg)
+    {
+        switch (mode)
+        {
+        case ZP_READ:
+        case ZP_WRITE:
+        case ZP_RMW:
+        case ZPX_READ:
+        case ZPX_WRITE:
+        case ZPX_RMW:
+        case ZPY_READ:
+        case ZPY_WRITE:
+        case ZPY_RMW:
+            return this.isIo(0);
+        case ZPIX_READ:
+        case ZPIX_WRITE:
+        case ZPIX_RMW:
+            return this.isIo(0) || this.isIo(this.readPointer((arg + this.x) & 0xff));
+        case ZPIY_READ:
+        case ZPIY_WRITE:
+        case ZPIY_RMW:
+        {
+            if (this.isIo(0))
+            {
+                return true;
+            }
+            final int base = this.readPointer(arg);
+            return this.isIo(base) || this.isIo(base + this.y);
+        }
+        case ABS_READ:
+        case ABS_WRITE:
+        case ABS_RMW:
+        case ABS_IND:
+            return this.isIo(arg);
+        case ABSX_READ:
+        case ABSX_WRITE:
+        case ABSX_RMW:
+            return this.isIo(arg) || this.isIo(arg + this.x);
+        case ABSY_READ:
+        case ABSY_WRITE:
+        case ABSY_RMW:
+            return this.isIo(arg) || this.isIo(arg + this.y);
+        case PUSH:
+        case POP:
+        case JSR:
+        case RTS:
+            return this.isIo(0x100);
+        default:
+            // Only accesses the code pages, which are never mapped
+            return false;
+        }
+    }
+
+    /**
+     * Executes a translated block at once, without looking at interrupts.
+     * Execution stops early if the block gets invalidated by one of its own
+     * writes. It also stops before an instruction that might access a page
+     * with an {@link IoHandler}, as translated code skips the dummy reads and
+     * writes of the cycle core. The CPU must be at an instruction boundary.
+     *
+     * @return The number of clock cycles used, {@code 0} if the first
+     *         instruction must be executed by the cycle core.
+     */
+    public int execute(final BlockCache.Block block)
+    {
+        int extra = 0;
+        int i = 0;
+        while (i < block.count)
+        {
+            final int opc = block.opcodes[i];
+            final int arg = block.operands[i];
+            final int pc = block.next[i];
+            if (this.touchesIo(ADDR_MODES[opc], arg))
+            {
+                this.jmp(i == 0 ? block.start : block.next[i - 1]);
+                break;
+            }
+            this.decoding = opc;
+            this.opcode = OPCODES[opc];
+            this.addrMode = ADDR_MODES[opc];
+            this.pcl = pc & 0xff;
+            this.pch = pc >> 8;
+
+            int address = 0;
+            switch (this.addrMode)
+            {
+            case ZP_READ:
+            case ZP_WRITE:
+            case ZP_RMW:
+            case ABS_READ:
+            case ABS_WRITE:
+            case ABS_RMW:
+                address = arg;
+                break;
+            case ZPX_READ:
+            case ZPX_WRITE:
+            case ZPX_RMW:
+                address = (arg + this.x) & 0xff;
+                break;
+            case ZPY_READ:
+            case ZPY_WRITE:
+            case ZPY_RMW:
+                address = (arg + this.y) & 0xff;
+                break;
+            case ABSX_READ:
+            case ABSX_WRITE:
+            case ABSX_RMW:
+                address = (arg + this.x) & 0xffff;
+                break;
+            case ABSY_READ:
+            case ABSY_WRITE:
+            case ABSY_RMW:
+                address = (arg + this.y) & 0xffff;
+                break;
+            case ZPIX_READ:
+            case ZPIX_WRITE:
+            case ZPIX_RMW:
+                address = this.readPointer((arg + this.x) & 0xff);
+                break;
+            case ZPIY_READ:
+            case ZPIY_WRITE:
+            case ZPIY_RMW:
+            {
+                final int base = this.readPointer(arg);
+                address = (base + this.y) & 0xffff;
+                if (this.addrMode == AddrMode.ZPIY_READ && ((base ^ address) & 0xff00) != 0)
+                {
+                    extra++;
+                }
+                break;
+            }
+            default:
+                break;
+            }
+
+            switch (this.addrMode)
+            {
+            case REL:
+                if (this.isBranchTaken())
+                {
+                    final int target = (pc + (byte)arg) & 0xffff;
+                    extra += ((pc ^ target) & 0xff00) != 0 ? 2 : 1;
+                    this.jmp(target);
+                }
+                break;
+            case ABS_JMP:
+                this.jmp(arg);
+                break;
+            case ABS_IND:
+                // No carry into the high byte, like the real thing
+                this.jmp(this.readMem(arg) | (this.readMem((arg & 0xff00) | ((arg + 1) & 0xff)) << 8));
+                break;
+            case JSR:
+                this.push((pc - 1) >> 8);
+                this.push(pc - 1);
+                this.jmp(arg);
+                break;
+            case RTS:
+                this.incSP();
+                this.pcl = this.readMem(0x100 | this.sp);
+                this.incSP();
+                this.pch = this.readMem(0x100 | this.sp);
+                this.incPC();
+                break;
+            case NONE:
+                this.doOp();
+                break;
+            case ACCU:
+                this.operand = this.a;
+                this.doOp();
+                this.a = this.operand;
+                break;
+            case IMMEDIATE:
+                this.operand = arg;
+                this.doOp();
+                break;
+            case PUSH:
+                this.doOp();
+                this.writeMem(0x100 | this.sp, this.operand);
+                this.decSP();
+                break;
+            case POP:
+                this.incSP();
+                this.operand = this.readMem(0x100 | this.sp);
+                this.doOp();
+                break;
+            case ABSX_READ:
+            case ABSY_READ:
+                if (((arg ^ address) & 0xff00) != 0)
+                {
+                    extra++;
+                }
+                this.operand = this.readMem(address);
+                this.doOp();
+                break;
+            case ZP_READ:
+            case ZPX_READ:
+            case ZPY_READ:
+            case ABS_READ:
+            case ZPIX_READ:
+            case ZPIY_READ:
+                this.operand = this.readMem(address);
+                this.doOp();
+                break;
+            case ZP_WRITE:
+            case ZPX_WRITE:
+            case ZPY_WRITE:
+            case ABS_WRITE:
+            case ABSX_WRITE:
+            case ABSY_WRITE:
+            case ZPIX_WRITE:
+            case ZPIY_WRITE:
+                this.doOp();
+                this.writeMem(address, this.operand);
+                break;
+            default:
+                // RMW
+                this.operand = this.readMem(address);
+                this.doOp();
+                this.writeMem(address, this.operand);
+                break;
+            }
+
+            i++;
+            if (!block.valid)
+            {
+                break;
+            }
+        }
+        this.cycle = 0;
+        final int cycles = i == 0 ? 0 : block.cycles[i - 1] + extra;
+        this.clocks += cycles;
+        return cycles;
+    }
+
+    /**
+     * Clocks the CPU until the current instruction is finished, but at most 8
+     * cycles (e.g. KIL never finishes).
+     *
+     * @return The number of cycles executed.
+     */
+    public int step()
+    {
+        int cycles = 0;
+        do
+        {
+            this.clock();
+            cycles++;
+        }
+        while (this.cycle != 0 && cycles < 8);
+        return cycles;
+    }
+
     public void clock()
     {
         if (this.cycle == 0)
@@ -2806,6 +2322,7 @@ public class MOS6510
             this.doCycle8();
             break;
         }
+        this.clocks++;
     }
 
     private enum AddrMode
@@ -2983,9 +2500,9 @@ public class MOS6510
             return;
         }
 
-        final int opc = this.machine.read(pc);
-        final int pb = this.machine.read((pc + 1) & 0xffff);
-        final int pw = pb | (this.machine.read((pc + 2) & 0xffff) << 8);
+        final int opc = this.readMem(pc);
+        final int pb = this.readMem((pc + 1) & 0xffff);
+        final int pw = pb | (this.readMem((pc + 2) & 0xffff) << 8);
         final int ba = pc + 2 + ((byte)pb);
 
         System.out.printf("S%3d C%3d %04X %02x : %02X %02X %02X %02X ", 0, 0, pc, opc, this.a, this.x, this.y, this.sp);
@@ -16,8 +16,10 @@
 
 package com.github.rjeschke.cetoneasm.emu;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import com.github.rjeschke.cetoneasm.Con;
-import com.github.rjeschke.cetoneasm.U;
 
 /**
  * This is a minimal, non-C64, testing environment to test-run algorithms and
@@ -25,12 +27,22 @@ import com.github.rjeschke.cetoneasm.U;
  */
 public class Machine
 {
+    /** Clock cycles between checks for RETURN in cycle-exact emulation */
+    private final static int    POLL_CYCLES  = 10000;
     private final byte[]        ram          = new byte[65536];
+    private final IoHandler[]   ioPages      = new IoHandler[256];
     private final MOS6510       cpu;
     private int                 cycle        = 0;
-    private final StringBuilder ioString     = new StringBuilder();
-    private boolean             verbose      = false;
-    private boolean             extraVerbose = false;
+    private TraceRecorder       trace        = null;
+    private BlockCache          blockCache   = null;
+    private InterruptScheduler  scheduler    = null;
+    private Profiler            profiler     = null;
+    private LoopDetector        loopDetector = null;
+    private LoopDetector        loops        = null;
+    private long                maxCycles    = 0;
+    private boolean             limitReached = false;
+    private boolean             interrupted  = false;
+    private long                blockCycles  = 0;
 
     public Machine()
     {
@@ -39,12 +51,80 @@ public class Machine
 
     public boolean irq()
     {
-        return false;
+        return this.scheduler != null && this.scheduler.irq(this.cpu.getClocks());
     }
 
     public boolean nmi()
     {
-        return false;
+        return this.scheduler != null && this.scheduler.nmi(this.cpu.getClocks());
+    }
+
+    /**
+     * Machines that may raise IRQs or NMIs must return {@code true} here, as
+     * translated blocks do not check for interrupts (so execution falls back
+     * to the cycle-exact core).
+     */
+    public boolean hasInterrupts()
+    {
+        return this.scheduler != null;
+    }
+
+    /**
+     * Sets a profiler for the fast emulation modes, which then run
+     * clock-wise on the cycle core (without translation).
+     */
+    public void setProfiler(final Profiler profiler)
+    {
+        this.profiler = profiler;
+    }
+
+    public void setInterruptScheduler(final InterruptScheduler scheduler)
+    {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets a detector which stops emulation as soon as the CPU is stuck in an
+     * endless loop. It is not used while IRQs/NMIs or I/O handlers are
+     * present, as those can end any loop.
+     */
+    public void setLoopDetector(final LoopDetector detector)
+    {
+        this.loopDetector = detector;
+    }
+
+    /**
+     * Stops each emulated call after the given number of clock cycles, 0 = no
+     * limit.
+     */
+    public void setMaxCycles(final long maxCycles)
+    {
+        this.maxCycles = maxCycles;
+    }
+
+    /**
+     * @return {@code true} if the last emulation was stopped because of
+     *         {@link #setMaxCycles(long)}.
+     */
+    public boolean isCycleLimitReached()
+    {
+        return this.limitReached;
+    }
+
+    void interruptTaken(final boolean isNmi)
+    {
+        if (this.scheduler != null)
+        {
+            this.scheduler.taken(isNmi, this.cpu.getClocks());
+        }
+    }
+
+    void interruptReturned()
+    {
+        if (this.scheduler != null)
+        {
+            this.scheduler.returned(this.cpu.getClocks());
+        }
     }
 
     public void reset()
@@ -52,6 +132,75 @@ public class Machine
         this.cpu.reset();
     }
 
+    /**
+     * Maps the given handler to all pages from {@code firstPage} to
+     * {@code lastPage} (inclusive). Accesses to these pages get dispatched to
+     * the handler instead of RAM, a {@code null} handler maps RAM back in.
+     */
+    public void map(final int firstPage, final int lastPage, final IoHandler handler)
+    {
+        for (int page = firstPage; page <= lastPage; page++)
+        {
+            this.ioPages[page & 255] = handler;
+            if (this.blockCache != null)
+            {
+                this.blockCache.invalidatePage(page & 255);
+            }
+        }
+    }
+
+    /**
+     * @return The page table, one entry per 256 byte page, {@code null}
+     *         entries are plain RAM.
+     */
+    IoHandler[] getIoPages()
+    {
+        return this.ioPages;
+    }
+
+    public MOS6510 getCpu()
+    {
+        return this.cpu;
+    }
+
+    /**
+     * @return A copy of the whole RAM.
+     */
+    public byte[] copyRam()
+    {
+        return this.ram.clone();
+    }
+
+    /**
+     * Overwrites the whole RAM with the given 64k image (e.g. from
+     * {@link #copyRam()}), translated blocks are not invalidated.
+     */
+    public void restoreRam(final byte[] image)
+    {
+        System.arraycopy(image, 0, this.ram, 0, this.ram.length);
+    }
+
+    /**
+     * Reads RAM, ignoring any mapped handler (e.g. for RAM below ROM).
+     */
+    public int readRam(final int address)
+    {
+        return this.ram[address & 65535] & 255;
+    }
+
+    /**
+     * Writes RAM, ignoring any mapped handler (e.g. for RAM below ROM).
+     */
+    public void writeRam(final int address, final int value)
+    {
+        final int addr = address & 65535;
+        this.ram[addr] = (byte)value;
+        if (this.blockCache != null)
+        {
+            this.blockCache.written(addr);
+        }
+    }
+
     public int loadPrg(final byte[] prg)
     {
         final int loadAddress = (prg[0] & 255) | ((prg[1] & 255) << 8);
@@ -86,77 +235,364 @@ public class Machine
     }
 
     public void execute(final int jsrAddress, final boolean verbose, final boolean extraVerbose)
+    {
+        if (!verbose)
+        {
+            this.execute(jsrAddress, null);
+            return;
+        }
+        // Small buffer, so the listing keeps up with the emulation
+        final TraceRecorder trace = new TraceRecorder(new TraceDecoder(extraVerbose, new TraceDecoder.Output()
+        {
+            @Override
+            public void line(final String line)
+            {
+                Con.info(line);
+            }
+        }), 4096);
+        this.run(jsrAddress, trace);
+        // Closing prints the last opcode line, which belongs before the timing
+        try
+        {
+            trace.close();
+        }
+        catch (final IOException e)
+        {
+            Con.error(" Trace failed: " + e.getMessage());
+        }
+        this.reportElapsed();
+    }
+
+    /**
+     * Executes the subroutine at {@code jsrAddress} on the cycle-exact core,
+     * recording every opcode and bus access into {@code trace} (if not
+     * {@code null}). The recorder gets flushed but not closed.
+     */
+    public void execute(final int jsrAddress, final TraceRecorder trace)
+    {
+        this.run(jsrAddress, trace);
+        this.reportElapsed();
+    }
+
+    private void run(final int jsrAddress, final TraceRecorder trace)
     {
         this.cpu.jsr(jsrAddress, 0);
         this.cycle = 0;
-        this.verbose = verbose;
-        this.extraVerbose = extraVerbose;
-        final StringBuilder line = new StringBuilder();
+        this.trace = trace;
+        this.limitReached = false;
+        final LoopDetector loops = this.startLoopDetection();
+
+        for (;;)
+        {
+            if (this.cpu.getCycle() == 0)
+            {
+                if (this.cpu.getPC() == 0)
+                {
+                    break;
+                }
+                if (trace != null)
+                {
+                    trace.opcode(this.cycle, this.cpu.getPC(), this.cpu, this.ram);
+                }
+            }
+            this.cpu.clock();
+            this.cycle++;
+            if (this.cycle % POLL_CYCLES == 0 && wasEnterPressed())
+            {
+                Con.warn(" Interrupted");
+                break;
+            }
+            if (loops != null && loops.check(this.cpu))
+            {
+                this.trace = null;
+                loops.measure(this.cpu);
+                break;
+            }
+            if (this.maxCycles > 0 && this.cycle >= this.maxCycles)
+            {
+                Con.warn(" Stopped after %d clock cycles", this.cycle);
+                this.limitReached = true;
+                break;
+            }
+        }
+        this.trace = null;
+        this.stopLoopDetection();
+        if (trace != null)
+        {
+            trace.flush();
+        }
+    }
 
-        if(verbose)
+    private void reportElapsed()
+    {
+        Con.info(" Elapsed time: %d clock cycles, %.3f ms (PAL)", this.cycle, 1000. * this.cycle / 985248.);
+        if (this.scheduler != null)
         {
-            Con.info("    clock  PC   A  X  Y SP NVxBDIZC bytes    opcode");
-            Con.info("--------------------------------------------------------");
+            this.scheduler.report(this.cycle);
         }
+    }
 
-        for (;;)
+    /**
+     * Executes the subroutine at {@code jsrAddress} without any tracing,
+     * instruction-wise and with direct RAM access. Checks for RETURN every
+     * {@code pollCycles} clock cycles. If {@code translate} is set,
+     * straight-line code gets executed from a {@link BlockCache}.
+     */
+    public void executeFast(final int jsrAddress, final int pollCycles, final boolean translate)
+    {
+        this.beginFast(translate);
+        final long start = System.nanoTime();
+        final long cycles;
+        try
         {
-            if (verbose && this.cpu.getCycle() == 0)
+            cycles = this.call(jsrAddress, pollCycles);
+        }
+        finally
+        {
+            this.endFast();
+        }
+        final double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        Con.info(" Elapsed time: %d clock cycles, %.3f ms (PAL)", cycles, 1000. * cycles / 985248.);
+        Con.info(" Emulation speed: %.0f clock cycles per host second (%.1fx PAL), %.3f s host time",
+                cycles / seconds, cycles / seconds / 985248., seconds);
+        this.reportFast(cycles);
+    }
+
+    /**
+     * Calls {@code initAddress} once and then {@code playAddress} for the
+     * given number of frames (like a music player would do from its frame
+     * IRQ), executing like {@link #executeFast(int, int, boolean)}.
+     *
+     * @return The clock cycles spent in each call of {@code playAddress},
+     *         shorter than {@code frames} if interrupted.
+     */
+    public long[] executeFrames(final int initAddress, final int playAddress, final int frames, final int pollCycles,
+            final boolean translate)
+    {
+        this.beginFast(translate);
+        final long[] times = new long[frames];
+        int frame = 0;
+        long cycles = 0;
+        try
+        {
+            final long init = this.call(initAddress, pollCycles);
+            cycles += init;
+            Con.info(" Init: %d clock cycles", init);
+            while (frame < frames && !this.interrupted)
             {
-                if (line.length() > 0)
+                times[frame] = this.call(playAddress, pollCycles);
+                cycles += times[frame];
+                if (!this.interrupted)
                 {
-                    if (this.ioString.length() > 0)
-                    {
-                        while (line.length() < 60)
-                        {
-                            line.append(' ');
-                        }
-                        line.append("; ");
-                        line.append(this.ioString);
-                    }
-                    Con.info(line.toString());
+                    frame++;
                 }
-                line.setLength(0);
-                this.ioString.setLength(0);
+            }
+        }
+        finally
+        {
+            this.endFast();
+        }
+        this.reportFast(cycles);
+        return frame < frames ? Arrays.copyOf(times, frame) : times;
+    }
 
-                line.append(String.format("%8d: %04X %s ", this.cycle, this.cpu.getPC(), this.cpu.getStatusLine()));
-                line.append(U.disassemble(this.ram, this.cpu.getPC()));
+    /**
+     * Runs the subroutine at {@code jsrAddress} like
+     * {@link #executeFast(int, int, boolean)}, but silently and without
+     * translation.
+     *
+     * @return The number of clock cycles executed or -1 if the subroutine did
+     *         not return within {@code maxCycles} clock cycles.
+     */
+    public long callSubroutine(final int jsrAddress, final long maxCycles)
+    {
+        this.cpu.jsr(jsrAddress, 0);
+        this.cpu.setDirectRam(this.ram);
+        try
+        {
+            long cycles = 0;
+            while (this.cpu.getCycle() != 0 || this.cpu.getPC() != 0)
+            {
+                if (cycles > maxCycles)
+                {
+                    return -1;
+                }
+                cycles += this.cpu.step();
             }
-            if (this.cpu.getCycle() == 0 && this.cpu.getPC() == 0)
+            return cycles;
+        }
+        finally
+        {
+            this.cpu.setDirectRam(null);
+        }
+    }
+
+    private void beginFast(final boolean translate)
+    {
+        this.cycle = 0;
+        this.trace = null;
+        this.limitReached = false;
+        this.interrupted = false;
+        this.blockCycles = 0;
+        this.cpu.setDirectRam(this.ram);
+        if (translate && this.profiler == null)
+        {
+            this.blockCache = new BlockCache(this.ram, this.ioPages);
+            this.cpu.setBlockCache(this.blockCache);
+        }
+    }
+
+    private void endFast()
+    {
+        this.cpu.setDirectRam(null);
+        this.cpu.setBlockCache(null);
+        this.stopLoopDetection();
+    }
+
+    /**
+     * @return The loop detector to use for the next call or {@code null}.
+     */
+    private LoopDetector startLoopDetection()
+    {
+        this.loops = null;
+        if (this.loopDetector != null && !this.hasInterrupts() && !this.hasIoHandlers())
+        {
+            this.loopDetector.start(this.ram);
+            this.loops = this.loopDetector;
+        }
+        this.cpu.setLoopDetector(this.loops);
+        return this.loops;
+    }
+
+    private void stopLoopDetection()
+    {
+        this.loops = null;
+        this.cpu.setLoopDetector(null);
+    }
+
+    private boolean hasIoHandlers()
+    {
+        for (final IoHandler handler : this.ioPages)
+        {
+            if (handler != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reportFast(final long cycles)
+    {
+        if (this.blockCache != null)
+        {
+            Con.info("  %d block(s) translated, %d invalidated, %.1f%% of clock cycles in translated blocks",
+                    this.blockCache.getTranslatedCount(), this.blockCache.getInvalidatedCount(),
+                    cycles == 0 ? 0. : 100. * this.blockCycles / cycles);
+            this.blockCache = null;
+        }
+        if (this.scheduler != null)
+        {
+            this.scheduler.report(cycles);
+        }
+    }
+
+    /**
+     * Runs the subroutine at {@code jsrAddress} until it returns (or RETURN
+     * was pressed).
+     *
+     * @return The number of clock cycles executed.
+     */
+    private long call(final int jsrAddress, final int pollCycles)
+    {
+        this.cpu.jsr(jsrAddress, 0);
+        final LoopDetector loops = this.startLoopDetection();
+        final int interval = Math.max(1, pollCycles);
+        long cycles = 0;
+        long nextPoll = interval;
+        while (this.cpu.getCycle() != 0 || this.cpu.getPC() != 0)
+        {
+            if (this.blockCache != null && this.cpu.getCycle() == 0 && !this.cpu.isInterruptPending()
+                    && !this.hasInterrupts())
+            {
+                final BlockCache.Block block = this.blockCache.get(this.cpu.getPC());
+                final int c = block.isEmpty() ? 0 : this.cpu.execute(block);
+                if (c != 0)
+                {
+                    cycles += c;
+                    this.blockCycles += c;
+                }
+                else
+                {
+                    cycles += this.cpu.step();
+                }
+            }
+            else if (this.profiler != null)
+            {
+                cycles += this.profiler.step(this.cpu);
+            }
+            else
+            {
+                cycles += this.cpu.step();
+            }
+            if (cycles >= nextPoll)
+            {
+                nextPoll = cycles + interval;
+                if (wasEnterPressed())
+                {
+                    Con.warn(" Interrupted");
+                    this.interrupted = true;
+                    break;
+                }
+            }
+            if (loops != null && loops.check(this.cpu))
             {
+                loops.measure(this.cpu);
+                this.interrupted = true;
                 break;
             }
-            this.cpu.clock();
-            if (wasEnterPressed())
+            if (this.maxCycles > 0 && cycles >= this.maxCycles)
             {
-                Con.warn(" Interrupted");
+                Con.warn(" Stopped after %d clock cycles", cycles);
+                this.limitReached = this.interrupted = true;
                 break;
             }
-            this.cycle++;
         }
-        Con.info(" Elapsed time: %d clock cycles, %.3f ms (PAL)", this.cycle, 1000. * this.cycle / 985248.);
+        return cycles;
     }
 
     public int read(final int address)
     {
         final int addr = address & 65535;
-        if (this.verbose)
+        final IoHandler handler = this.ioPages[addr >> 8];
+        final int value = handler == null ? this.ram[addr] & 255 : handler.read(addr) & 255;
+        if (this.trace != null)
         {
-            if (this.extraVerbose || addr != this.cpu.getPC())
-            {
-                this.ioString.append(String.format("R:%d:%04X:%02X ", this.cycle, addr, this.ram[addr] & 255));
-            }
+            this.trace.access(this.cycle, addr == this.cpu.getPC() ? TraceRecorder.READ_PC : TraceRecorder.READ, addr,
+                    value);
         }
-        return this.ram[addr] & 255;
+        return value;
     }
 
     public void write(final int address, final int value)
     {
         final int addr = address & 65535;
-        if (this.verbose)
+        if (this.trace != null)
         {
-            this.ioString.append(String.format("W:%d:%04X:%02X ", this.cycle, addr, value & 255));
+            this.trace.access(this.cycle, TraceRecorder.WRITE, addr, value);
+        }
+        final IoHandler handler = this.ioPages[addr >> 8];
+        if (handler != null)
+        {
+            handler.write(addr, value & 255);
+        }
+        else
+        {
+            if (this.loops != null)
+            {
+                this.loops.writing(addr);
+            }
+            this.writeRam(addr, value);
         }
-        this.ram[addr] = (byte)value;
     }
 }
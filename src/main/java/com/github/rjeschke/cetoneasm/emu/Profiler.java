@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.github.rjeschke.cetoneasm.Con;
+import com.github.rjeschke.cetoneasm.FileLocation;
+
+/**
+ * Accumulates clock cycles and executions per opcode address.
+ * <p>
+ * Every clock cycle is accounted to the opcode being executed at that time,
+ * so pipelined opcode fetches (e.g. after branches) end up at the right
+ * address. Interrupt sequences count for the interrupted opcode.
+ * </p>
+ */
+public class Profiler
+{
+    private final int[] cycles = new int[65536];
+    private final int[] counts = new int[65536];
+
+    /**
+     * Clocks the CPU like {@link MOS6510#step()}, recording each cycle.
+     */
+    int step(final MOS6510 cpu)
+    {
+        int n = 0;
+        do
+        {
+            final long executed = cpu.getInstructionCount();
+            cpu.clock();
+            final int pc = cpu.getOpcodePC();
+            this.cycles[pc]++;
+            if (cpu.getInstructionCount() != executed)
+            {
+                this.counts[pc]++;
+            }
+            n++;
+        }
+        while (cpu.getCycle() != 0 && n < 8);
+        return n;
+    }
+
+    public int getCycles(final int address)
+    {
+        return this.cycles[address & 65535];
+    }
+
+    public int getCount(final int address)
+    {
+        return this.counts[address & 65535];
+    }
+
+    /**
+     * Logs the {@code top} hot spots per label and per source line.
+     *
+     * @param labels
+     *            Label addresses, e.g. from {@code Assembler.getLabelMap()}
+     * @param sourceMap
+     *            Source location of each opcode address, may contain
+     *            {@code null}s
+     */
+    public void report(final Map<Integer, String> labels, final FileLocation[] sourceMap, final int top)
+    {
+        final TreeMap<Integer, String> sorted = new TreeMap<Integer, String>(labels);
+        final HashMap<String, long[]> byLabel = new HashMap<String, long[]>();
+        final HashMap<String, long[]> byLine = new HashMap<String, long[]>();
+        long total = 0;
+        for (int pc = 0; pc < 65536; pc++)
+        {
+            if (this.cycles[pc] == 0)
+            {
+                continue;
+            }
+            total += this.cycles[pc];
+            final Entry<Integer, String> label = sorted.floorEntry(Integer.valueOf(pc));
+            add(byLabel, label != null ? label.getValue() : "<no label>", this.cycles[pc], this.counts[pc]);
+            final FileLocation loc = sourceMap != null ? sourceMap[pc] : null;
+            add(byLine, loc != null ? loc.toString() : String.format("$%04x", pc), this.cycles[pc], this.counts[pc]);
+        }
+        Con.info(" Hot spots by label (clock cycles, share, executions):");
+        print(byLabel, total, top);
+        Con.info(" Hot spots by source line (clock cycles, share, executions):");
+        print(byLine, total, top);
+    }
+
+    private static void add(final HashMap<String, long[]> map, final String key, final int cycles, final int count)
+    {
+        long[] entry = map.get(key);
+        if (entry == null)
+        {
+            entry = new long[2];
+            map.put(key, entry);
+        }
+        entry[0] += cycles;
+        entry[1] += count;
+    }
+
+    private static void print(final HashMap<String, long[]> map, final long total, final int top)
+    {
+        final List<Entry<String, long[]>> entries = new ArrayList<Entry<String, long[]>>(map.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, long[]>>()
+        {
+            @Override
+            public int compare(final Entry<String, long[]> o1, final Entry<String, long[]> o2)
+            {
+                final int c = Long.compare(o2.getValue()[0], o1.getValue()[0]);
+                return c != 0 ? c : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        for (int i = 0; i < Math.min(top, entries.size()); i++)
+        {
+            final Entry<String, long[]> e = entries.get(i);
+            Con.info("  %10d %5.1f%% %10d  %s", e.getValue()[0], 100. * e.getValue()[0] / Math.max(1, total),
+                    e.getValue()[1], e.getKey());
+        }
+    }
+}
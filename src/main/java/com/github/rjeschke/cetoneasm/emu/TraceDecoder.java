@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+import com.github.rjeschke.cetoneasm.U;
+
+/**
+ * Renders a binary trace written by {@link TraceRecorder} as text, one line
+ * per executed opcode followed by its bus accesses. Trace data can be written
+ * in arbitrary chunks, so this can be used as the recorder's output channel
+ * to get the trace printed while emulating.
+ */
+public class TraceDecoder implements WritableByteChannel
+{
+    private final boolean       showPcReads;
+    private final Output        output;
+    private final ByteBuffer    pending = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[]        code    = new byte[65536];
+    private final StringBuilder line    = new StringBuilder();
+    private final StringBuilder io      = new StringBuilder();
+    private boolean             header  = false;
+    private boolean             open    = true;
+    private long                cycle   = 0;
+
+    public TraceDecoder(final boolean showPcReads, final Output output)
+    {
+        this.showPcReads = showPcReads;
+        this.output = output;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException
+    {
+        final int length = src.remaining();
+        final ByteBuffer in = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        // Complete a record split over two writes first
+        while (this.pending.position() > 0 && in.hasRemaining())
+        {
+            this.pending.put(in.get());
+            if (this.pending.position() == this.recordSize(this.pending.get(0)))
+            {
+                this.pending.flip();
+                this.decode(this.pending);
+                this.pending.clear();
+            }
+        }
+        while (in.hasRemaining())
+        {
+            final int size = this.recordSize(in.get(in.position()));
+            if (in.remaining() < size)
+            {
+                this.pending.put(in);
+                break;
+            }
+            this.decode(in);
+        }
+        src.position(src.position() + length);
+        return length;
+    }
+
+    private int recordSize(final byte type) throws IOException
+    {
+        if (!this.header)
+        {
+            return 8;
+        }
+        switch (type)
+        {
+        case TraceRecorder.OPCODE:
+            return 16;
+        case TraceRecorder.READ:
+        case TraceRecorder.READ_PC:
+        case TraceRecorder.WRITE:
+            return 8;
+        default:
+            throw new IOException("Corrupt trace, unknown record type " + type);
+        }
+    }
+
+    private void decode(final ByteBuffer in) throws IOException
+    {
+        if (!this.header)
+        {
+            if (in.getInt() != TraceRecorder.MAGIC)
+            {
+                throw new IOException("Not a trace file");
+            }
+            final int version = in.getShort() & 65535;
+            in.getShort();
+            if (version != TraceRecorder.VERSION)
+            {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            this.header = true;
+            this.output.line("    clock  PC   A  X  Y SP NVxBDIZC bytes    opcode");
+            this.output.line("--------------------------------------------------------");
+            return;
+        }
+        final int type = in.get();
+        if (type == TraceRecorder.OPCODE)
+        {
+            final int pc = in.getShort() & 65535;
+            final int a = in.get() & 255;
+            final int x = in.get() & 255;
+            final int y = in.get() & 255;
+            final int sp = in.get() & 255;
+            final int sr = in.get() & 255;
+            this.code[pc] = in.get();
+            this.code[(pc + 1) & 65535] = in.get();
+            this.code[(pc + 2) & 65535] = in.get();
+            in.get();
+            this.cycle += in.getInt() & 0xffffffffL;
+            this.flushLine();
+            this.line.append(String.format("%8d: %04X %02X %02X %02X %02X ", this.cycle, pc, a, x, y, sp));
+            for (int i = 7; i >= 0; i--)
+            {
+                this.line.append((sr & (1 << i)) != 0 ? '1' : '0');
+            }
+            this.line.append(' ');
+            this.line.append(U.disassemble(this.code, pc));
+        }
+        else
+        {
+            final int value = in.get() & 255;
+            final int address = in.getShort() & 65535;
+            this.cycle += in.getInt() & 0xffffffffL;
+            if (type == TraceRecorder.WRITE)
+            {
+                this.io.append(String.format("W:%d:%04X:%02X ", this.cycle, address, value));
+            }
+            else if (type == TraceRecorder.READ || this.showPcReads)
+            {
+                this.io.append(String.format("R:%d:%04X:%02X ", this.cycle, address, value));
+            }
+        }
+    }
+
+    private void flushLine()
+    {
+        if (this.line.length() > 0)
+        {
+            if (this.io.length() > 0)
+            {
+                while (this.line.length() < 60)
+                {
+                    this.line.append(' ');
+                }
+                this.line.append("; ");
+                this.line.append(this.io);
+            }
+            this.output.line(this.line.toString());
+        }
+        this.line.setLength(0);
+        this.io.setLength(0);
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.open;
+    }
+
+    /**
+     * Prints the last opcode line.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.open)
+        {
+            this.open = false;
+            this.flushLine();
+            if (this.pending.position() > 0)
+            {
+                throw new IOException("Truncated trace");
+            }
+        }
+    }
+
+    public interface Output
+    {
+        public void line(String line);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Records a binary execution trace through a preallocated buffer which gets
+ * flushed to a channel whenever it is full.
+ * <p>
+ * Format (little endian): an 8 byte header ({@code "CTRC"}, version, 0),
+ * followed by 16 byte opcode records (type, PC, A, X, Y, SP, SR, the three
+ * bytes at PC, padding, cycle delta) and 8 byte bus access records (type,
+ * value, address, cycle delta). Cycle deltas are relative to the previous
+ * record. See {@link TraceDecoder}.
+ * </p>
+ * <p>
+ * Recording never throws, the first I/O error stops recording and gets
+ * rethrown by {@link #close()}.
+ * </p>
+ */
+public class TraceRecorder implements Closeable
+{
+    public final static int           MAGIC        = 0x43525443;
+    public final static int           VERSION      = 1;
+    public final static int           OPCODE       = 1;
+    public final static int           READ         = 2;
+    /** Read at the current PC (opcode and operand fetches) */
+    public final static int           READ_PC      = 3;
+    public final static int           WRITE        = 4;
+    private final WritableByteChannel out;
+    private final ByteBuffer          buffer;
+    private long                      lastCycle    = 0;
+    private long                      records      = 0;
+    private long                      bytesWritten = 0;
+    private IOException               error        = null;
+
+    public TraceRecorder(final WritableByteChannel out, final int bufferSize)
+    {
+        this.out = out;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(64, bufferSize & ~15)).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.putInt(MAGIC);
+        this.buffer.putShort((short)VERSION);
+        this.buffer.putShort((short)0);
+    }
+
+    private int delta(final long cycle)
+    {
+        final long delta = cycle - this.lastCycle;
+        this.lastCycle = cycle;
+        this.records++;
+        return (int)delta;
+    }
+
+    public void opcode(final long cycle, final int pc, final MOS6510 cpu, final byte[] ram)
+    {
+        if (this.buffer.remaining() < 16)
+        {
+            this.flush();
+        }
+        final ByteBuffer b = this.buffer;
+        b.put((byte)OPCODE);
+        b.putShort((short)pc);
+        b.put((byte)cpu.getA());
+        b.put((byte)cpu.getX());
+        b.put((byte)cpu.getY());
+        b.put((byte)cpu.getSP());
+        b.put((byte)cpu.getSR());
+        b.put(ram[pc & 65535]);
+        b.put(ram[(pc + 1) & 65535]);
+        b.put(ram[(pc + 2) & 65535]);
+        b.put((byte)0);
+        b.putInt(this.delta(cycle));
+    }
+
+    public void access(final long cycle, final int type, final int address, final int value)
+    {
+        if (this.buffer.remaining() < 8)
+        {
+            this.flush();
+        }
+        final ByteBuffer b = this.buffer;
+        b.put((byte)type);
+        b.put((byte)value);
+        b.putShort((short)address);
+        b.putInt(this.delta(cycle));
+    }
+
+    public long getRecordCount()
+    {
+        return this.records;
+    }
+
+    public long getBytesWritten()
+    {
+        return this.bytesWritten + this.buffer.position();
+    }
+
+    public void flush()
+    {
+        this.buffer.flip();
+        try
+        {
+            while (this.error == null && this.buffer.hasRemaining())
+            {
+                this.bytesWritten += this.out.write(this.buffer);
+            }
+        }
+        catch (final IOException e)
+        {
+            this.error = e;
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.flush();
+        this.out.close();
+        if (this.error != null)
+        {
+            throw this.error;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.rjeschke.cetoneasm.emu;
+
+/**
+ * C64 frame timings.
+ */
+public enum VideoStandard
+{
+    PAL(63, 312, 985248),
+    NTSC(65, 263, 1022727);
+
+    public final int cyclesPerLine;
+    public final int linesPerFrame;
+    public final int clockRate;
+
+    private VideoStandard(final int cyclesPerLine, final int linesPerFrame, final int clockRate)
+    {
+        this.cyclesPerLine = cyclesPerLine;
+        this.linesPerFrame = linesPerFrame;
+        this.clockRate = clockRate;
+    }
+
+    public int getCyclesPerFrame()
+    {
+        return this.cyclesPerLine * this.linesPerFrame;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 René Jeschke <rene_jeschke@yahoo.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.rjeschke.cetoneasm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class AssemblerTest
+{
+    private static Build.Result assemble(final String name) throws IOException
+    {
+        final MemoryFileProvider files = new MemoryFileProvider();
+        files.put(name, readResource(name));
+        final Config config = new Config();
+        config.parserThreads = 1;
+        return Build.run(config, files, Arrays.asList(name));
+    }
+
+    private static byte[] readResource(final String name) throws IOException
+    {
+        final InputStream in = AssemblerTest.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Macro local counters (<code>CNT = CNT + 1</code>) change in every pass,
+     * this must not keep the assembler from converging.
+     */
+    @Test
+    public void testCounterConverges() throws IOException
+    {
+        final Build.Result result = assemble("counter.casm64");
+        assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+        final byte[] image = result.getImage();
+        assertNotNull(image);
+        assertEquals(0x00, image[0]);
+        assertEquals(0x10, image[1]);
+    }
+}